@@ -134,7 +134,7 @@ build {
       "sudo apt-get install -y software-properties-common",
       "sudo add-apt-repository -y ppa:openjdk-r/ppa",
       "sudo apt-get update",
-      "sudo apt-get install -y openjdk-17-jdk maven",
+      "sudo apt-get install -y openjdk-21-jdk maven",
       "sudo apt-get install -y wget unzip net-tools",
       "sudo apt-get install -y awscli",
       "sudo apt-get install -y collectd",
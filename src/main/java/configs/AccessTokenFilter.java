@@ -0,0 +1,93 @@
+package configs;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.RequestAttributeSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.timgroup.statsd.StatsDClient;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Accepts "Authorization: Bearer" access tokens on the /v1/user/self routes,
+ * and hands out a fresh token in the response headers after a successful
+ * HTTP Basic authentication.
+ */
+public class AccessTokenFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(AccessTokenFilter.class);
+
+    public static final String ACCESS_TOKEN_HEADER = "X-Access-Token";
+    public static final String ACCESS_TOKEN_EXPIRES_HEADER = "X-Access-Token-Expires-In";
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String BASIC_PREFIX = "Basic ";
+
+    private final AccessTokenService accessTokenService;
+    private final StatsDClient statsDClient;
+    // This filter is skipped on async dispatches; the saved context authenticates them
+    private final SecurityContextRepository securityContextRepository = new RequestAttributeSecurityContextRepository();
+
+    public AccessTokenFilter(AccessTokenService accessTokenService, StatsDClient statsDClient) {
+        this.accessTokenService = accessTokenService;
+        this.statsDClient = statsDClient;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/v1/user/self");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+
+        if (header != null && header.startsWith(BEARER_PREFIX)) {
+            try {
+                Claims claims = accessTokenService.verifyToken(header.substring(BEARER_PREFIX.length()).trim());
+                UserPrincipal principal = accessTokenService.toPrincipal(claims);
+                SecurityContext context = SecurityContextHolder.createEmptyContext();
+                context.setAuthentication(new UsernamePasswordAuthenticationToken(
+                    principal, null, principal.getAuthorities()));
+                SecurityContextHolder.setContext(context);
+                securityContextRepository.saveContext(context, request, response);
+                statsDClient.incrementCounter("auth.token.accepted");
+            } catch (JwtException | IllegalArgumentException e) {
+                logger.warn("Rejected access token: {}", e.getMessage());
+                statsDClient.incrementCounter("auth.token.rejected");
+                SecurityContextHolder.clearContext();
+                response.setStatus(HttpStatus.UNAUTHORIZED.value());
+                return;
+            }
+        } else if (header != null && header.startsWith(BASIC_PREFIX)) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && authentication.isAuthenticated()
+                    && authentication.getPrincipal() instanceof UserPrincipal principal) {
+                try {
+                    response.setHeader(ACCESS_TOKEN_HEADER, accessTokenService.issueToken(principal));
+                    response.setHeader(ACCESS_TOKEN_EXPIRES_HEADER, String.valueOf(accessTokenService.getTtlSeconds()));
+                    statsDClient.incrementCounter("auth.token.issued");
+                } catch (JwtException e) {
+                    // Deleted between authentication and here; the request itself still proceeds
+                    logger.warn("Not issuing access token: {}", e.getMessage());
+                }
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
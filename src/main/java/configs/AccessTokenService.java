@@ -0,0 +1,119 @@
+package configs;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import data.UserCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import models.User;
+
+/**
+ * Issues and verifies the short-lived HMAC-signed access tokens handed out
+ * after a successful HTTP Basic login when auth.token.enabled is set.
+ *
+ * A token carries a credential version, a keyed digest of the user's
+ * password hash, so changing the password invalidates every token issued
+ * before. The verified flag and profile come from the current user row
+ * (through {@link UserCache}), never from the token, so a token issued
+ * before email verification works once the email is verified. Other nodes
+ * see a password change once their cached row expires
+ * (user.cache.ttl-seconds).
+ */
+@Component
+public class AccessTokenService {
+    public static final String TOKEN_TYPE_CLAIM = "typ";
+    public static final String ACCESS_TOKEN_TYPE = "access";
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String CREDENTIAL_VERSION_CLAIM = "cv";
+
+    private final UserCache userCache;
+    private final UserPrincipalFactory userPrincipalFactory;
+    private final String tokenSecret;
+    private final long ttlSeconds;
+
+    @Autowired
+    public AccessTokenService(
+            UserCache userCache,
+            UserPrincipalFactory userPrincipalFactory,
+            @Value("${auth.token.secret:${jwt.secret:}}") String tokenSecret,
+            @Value("${auth.token.ttl-seconds:900}") long ttlSeconds) {
+        this.userCache = userCache;
+        this.userPrincipalFactory = userPrincipalFactory;
+        this.tokenSecret = tokenSecret;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public String issueToken(UserPrincipal principal) {
+        User user = userCache.findById(principal.getId())
+            .orElseThrow(() -> new JwtException("User no longer exists"));
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+            .setSubject(user.getEmail())
+            .claim(TOKEN_TYPE_CLAIM, ACCESS_TOKEN_TYPE)
+            .claim(USER_ID_CLAIM, user.getId())
+            .claim(CREDENTIAL_VERSION_CLAIM, credentialVersion(user.getPassword()))
+            .setIssuedAt(new Date(now))
+            .setExpiration(new Date(now + ttlSeconds * 1000))
+            .signWith(SignatureAlgorithm.HS256, tokenSecret.getBytes())
+            .compact();
+    }
+
+    public Claims verifyToken(String token) {
+        Claims claims = Jwts.parser()
+            .setSigningKey(tokenSecret.getBytes())
+            .parseClaimsJws(token)
+            .getBody();
+
+        // Email verification links are signed with the same kind of key; never accept them here
+        if (!ACCESS_TOKEN_TYPE.equals(claims.get(TOKEN_TYPE_CLAIM, String.class))) {
+            throw new JwtException("Not an access token");
+        }
+        return claims;
+    }
+
+    public UserPrincipal toPrincipal(Claims claims) {
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        if (userId == null) {
+            throw new JwtException("Access token has no user id");
+        }
+        User user = userCache.findById(userId.longValue())
+            .orElseThrow(() -> new JwtException("Access token user no longer exists"));
+        String version = claims.get(CREDENTIAL_VERSION_CLAIM, String.class);
+        if (version == null || !version.equals(credentialVersion(user.getPassword()))) {
+            throw new JwtException("Access token predates a password change");
+        }
+        UserPrincipal principal = userPrincipalFactory.create(user);
+        principal.eraseCredentials();
+        return principal;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    // Keyed, so the token (readable by its holder) reveals nothing about the hash
+    private String credentialVersion(String passwordHash) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(tokenSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] digest = mac.doFinal(String.valueOf(passwordHash).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 12));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
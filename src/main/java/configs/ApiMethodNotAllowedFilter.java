@@ -19,6 +19,10 @@ public class ApiMethodNotAllowedFilter extends OncePerRequestFilter {
 
         if ((path.equals("/healthz") && !method.equals("GET")) ||
             (path.equals("/v1/user") && !method.equals("POST")) ||
+            (path.equals("/v1/user/batch") && !method.equals("POST")) ||
+            (path.equals("/v1/user/self/pic/content") && !method.equals("GET")) ||
+            (path.equals("/v1/user/self/pic/upload-url") && !method.equals("POST")) ||
+            (path.equals("/v1/user/self/pic/upload-complete") && !method.equals("POST")) ||
             (path.equals("/v1/user/self/pic") && !(method.equals("POST") || method.equals("GET") || method.equals("DELETE")))) {
             response.setStatus(HttpStatus.METHOD_NOT_ALLOWED.value());
             return;
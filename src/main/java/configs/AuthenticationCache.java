@@ -0,0 +1,148 @@
+package configs;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.timgroup.statsd.StatsDClient;
+
+/**
+ * Remembers recently verified (email, password) pairs so repeat HTTP Basic
+ * requests can skip the BCrypt comparison.
+ *
+ * Entries are keyed by an HMAC of the credentials under a per-process random
+ * key, so raw passwords are never held in memory. Each entry also records the
+ * password hash it was verified against; a hit only counts while the stored
+ * hash is unchanged.
+ */
+@Component
+public class AuthenticationCache {
+    private static final Logger logger = LoggerFactory.getLogger(AuthenticationCache.class);
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final StatsDClient statsDClient;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final SecretKeySpec hmacKey;
+    private final Map<String, Entry> entries;
+
+    @Autowired
+    public AuthenticationCache(
+            StatsDClient statsDClient,
+            @Value("${auth.cache.max-size:10000}") int maxSize,
+            @Value("${auth.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.statsDClient = statsDClient;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlSeconds * 1000;
+
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.hmacKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > AuthenticationCache.this.maxSize) {
+                    AuthenticationCache.this.statsDClient.incrementCounter("auth.cache.eviction");
+                    return true;
+                }
+                return false;
+            }
+        };
+        logger.info("AuthenticationCache initialized - maxSize: {}, ttl: {}s", maxSize, ttlSeconds);
+    }
+
+    public boolean isVerified(String email, String presentedPassword, String storedHash) {
+        if (maxSize <= 0) {
+            return false;
+        }
+        String key = cacheKey(email, presentedPassword);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                statsDClient.incrementCounter("auth.cache.miss");
+                return false;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(key);
+                statsDClient.incrementCounter("auth.cache.eviction");
+                statsDClient.incrementCounter("auth.cache.miss");
+                return false;
+            }
+            if (!entry.email.equals(email) || !entry.passwordHash.equals(storedHash)) {
+                entries.remove(key);
+                statsDClient.incrementCounter("auth.cache.miss");
+                return false;
+            }
+        }
+        statsDClient.incrementCounter("auth.cache.hit");
+        return true;
+    }
+
+    public void put(String email, String presentedPassword, String storedHash) {
+        if (maxSize <= 0) {
+            return;
+        }
+        String key = cacheKey(email, presentedPassword);
+        Entry entry = new Entry(email, storedHash, System.currentTimeMillis() + ttlMillis);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    public void invalidate(String email) {
+        int removed;
+        synchronized (entries) {
+            int before = entries.size();
+            entries.values().removeIf(entry -> entry.email.equals(email));
+            removed = before - entries.size();
+        }
+        if (removed > 0) {
+            logger.debug("Invalidated {} cached credential(s) for user: {}", removed, email);
+            statsDClient.count("auth.cache.invalidation", removed);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private String cacheKey(String email, String presentedPassword) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            mac.update(email.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(presentedPassword.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC not available for authentication cache", e);
+        }
+    }
+
+    private static final class Entry {
+        private final String email;
+        private final String passwordHash;
+        private final long expiresAt;
+
+        private Entry(String email, String passwordHash, long expiresAt) {
+            this.email = email;
+            this.passwordHash = passwordHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
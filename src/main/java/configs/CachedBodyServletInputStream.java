@@ -43,13 +43,15 @@ public class CachedBodyServletInputStream extends ServletInputStream {
         inputStream.close();
     }
 
+    // Not synchronized: a request body is read by one thread, and a monitor held here would
+    // pin a virtual thread to its carrier
     @Override
-    public synchronized void mark(int readlimit) {
+    public void mark(int readlimit) {
         inputStream.mark(readlimit);
     }
 
     @Override
-    public synchronized void reset() throws IOException {
+    public void reset() throws IOException {
         inputStream.reset();
     }
 
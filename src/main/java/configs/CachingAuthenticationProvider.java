@@ -0,0 +1,43 @@
+package configs;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * DaoAuthenticationProvider that consults the {@link AuthenticationCache}
+ * before running the (expensive) password encoder comparison.
+ */
+public class CachingAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final AuthenticationCache authenticationCache;
+
+    public CachingAuthenticationProvider(
+            UserDetailsService userDetailsService,
+            PasswordEncoder passwordEncoder,
+            AuthenticationCache authenticationCache) {
+        this.authenticationCache = authenticationCache;
+        setUserDetailsService(userDetailsService);
+        setPasswordEncoder(passwordEncoder);
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+            UsernamePasswordAuthenticationToken authentication) throws AuthenticationException {
+        if (authentication.getCredentials() == null || userDetails.getPassword() == null) {
+            super.additionalAuthenticationChecks(userDetails, authentication);
+            return;
+        }
+
+        String presentedPassword = authentication.getCredentials().toString();
+        if (authenticationCache.isVerified(userDetails.getUsername(), presentedPassword, userDetails.getPassword())) {
+            return;
+        }
+
+        super.additionalAuthenticationChecks(userDetails, authentication);
+        authenticationCache.put(userDetails.getUsername(), presentedPassword, userDetails.getPassword());
+    }
+}
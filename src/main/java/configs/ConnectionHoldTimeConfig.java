@@ -0,0 +1,113 @@
+package configs;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.timgroup.statsd.StatsDClient;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Wraps the application DataSource so every pooled connection reports how
+ * long it was held, per endpoint, as "db.connection.hold.time.&lt;endpoint&gt;".
+ * Connections taken outside a request are reported under "background", and
+ * those taken before a handler is matched (the security filters' user
+ * lookup) under "&lt;method&gt;.unmatched".
+ */
+@Configuration
+public class ConnectionHoldTimeConfig {
+
+    @Bean
+    public static BeanPostProcessor connectionHoldTimePostProcessor(ObjectProvider<StatsDClient> statsDClient) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConnectionHoldTimeDataSource)) {
+                    return new ConnectionHoldTimeDataSource(dataSource, statsDClient);
+                }
+                return bean;
+            }
+        };
+    }
+
+    static class ConnectionHoldTimeDataSource extends DelegatingDataSource {
+        private static final Set<String> KNOWN_METHODS =
+            Set.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS");
+        private final ObjectProvider<StatsDClient> statsDClient;
+
+        ConnectionHoldTimeDataSource(DataSource target, ObjectProvider<StatsDClient> statsDClient) {
+            super(target);
+            this.statsDClient = statsDClient;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return instrument(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return instrument(super.getConnection(username, password));
+        }
+
+        private Connection instrument(Connection connection) {
+            String endpoint = currentEndpoint();
+            long acquiredAt = System.currentTimeMillis();
+            return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        StatsDClient client = statsDClient.getIfAvailable();
+                        if (client != null) {
+                            client.recordExecutionTime("db.connection.hold.time." + endpoint,
+                                System.currentTimeMillis() - acquiredAt);
+                        }
+                    } else if ("unwrap".equals(method.getName()) || "isWrapperFor".equals(method.getName())) {
+                        if (((Class<?>) args[0]).isInstance(connection)) {
+                            return "unwrap".equals(method.getName()) ? connection : true;
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+        }
+
+        private static String currentEndpoint() {
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+                return "background";
+            }
+            HttpServletRequest request = servletAttributes.getRequest();
+            // Both the URI and the method are caller-controlled; only route patterns and known
+            // methods become metric names, so their number stays bounded
+            String method = KNOWN_METHODS.contains(request.getMethod()) ? request.getMethod().toLowerCase() : "other";
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (pattern == null) {
+                // Before handler mapping, e.g. the user lookup in the security filters
+                return method + ".unmatched";
+            }
+            String sanitized = pattern.toString()
+                .replaceAll("[{}]", "").replaceAll("[^A-Za-z0-9]+", ".").replaceAll("^\\.|\\.$", "");
+            return method + "." + (sanitized.isEmpty() ? "root" : sanitized);
+        }
+    }
+}
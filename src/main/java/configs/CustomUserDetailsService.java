@@ -6,19 +6,22 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import data.UserRepo;
+import data.UserCache;
 import models.User;
 
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     @Autowired
-    private UserRepo userRepository;
+    private UserCache userCache;
+
+    @Autowired
+    private UserPrincipalFactory userPrincipalFactory;
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         System.out.println("Attempting to load user: " + username);
-        User user = userRepository.findByEmail(username)
+        User user = userCache.findByEmail(username)
             .orElseThrow(() -> {
                 System.out.println("User not found: " + username);
                 return new UsernameNotFoundException("User not found with email: " + username);
@@ -26,11 +29,7 @@ public class CustomUserDetailsService implements UserDetailsService {
         
         System.out.println("User found: " + user.getEmail() + ", Password hash: " + user.getPassword());
 
-        return org.springframework.security.core.userdetails.User
-            .withUsername(user.getEmail())
-            .password(user.getPassword())
-            .roles("USER")
-            .build();
+        return userPrincipalFactory.create(user);
     }
     
     
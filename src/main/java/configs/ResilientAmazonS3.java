@@ -0,0 +1,481 @@
+package configs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.timgroup.statsd.StatsDClient;
+
+/**
+ * Wraps the AmazonS3 client so the reads on the picture paths
+ * (doesObjectExist, getObject and getObjectMetadata) cannot stall a caller
+ * on one slow S3 request:
+ *
+ * - Each call gets a timeout of p99 x timeoutMultiplier of that operation's
+ *   recent latencies, clamped to [minTimeoutMillis, maxTimeoutMillis]. Until
+ *   enough samples are in, the maximum applies. An attempt that times out
+ *   counts as taking its whole timeout, so a slowing S3 raises the timeout.
+ * - doesObjectExist and getObject are idempotent, so if the first attempt
+ *   has not answered by p95 (at least hedgeMinDelayMillis) a second one is
+ *   sent and whichever answers first wins. Hedges are paid for from a budget
+ *   that grows by hedgeBudget per call, which bounds the extra load when S3
+ *   is slow across the board.
+ * - Timeouts, client errors and 5xx responses feed an {@link S3CircuitBreaker};
+ *   while it is open these reads fail at once with SdkClientException.
+ *
+ * Attempts run on a pool of at most maxConcurrentAttempts threads; when it
+ * is full a call fails at once and a hedge is skipped. The v1 client does
+ * not react to interrupts, so each attempt is sent as a request carrying
+ * the time left before the deadline as its SDK client execution timeout:
+ * the SDK aborts the HTTP request then, which frees the attempt's thread
+ * and connection. For getObject the timeout covers the wait for the
+ * response headers, not reading the body. Every other method goes
+ * straight to the client.
+ *
+ * Metrics, per operation: "s3.resilience.&lt;op&gt;.call", ".hedge",
+ * ".hedge.win", ".timeout", ".rejected", ".time", and the gauges
+ * ".timeout_ms" and ".hedge_delay_ms" as the percentiles move.
+ */
+public class ResilientAmazonS3 implements InvocationHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ResilientAmazonS3.class);
+
+    private static final Set<String> GUARDED = Set.of("doesObjectExist", "getObject", "getObjectMetadata");
+    private static final Set<String> HEDGED = Set.of("doesObjectExist", "getObject");
+    private static final double MAX_HEDGE_TOKENS = 10;
+
+    private final AmazonS3 target;
+    private final StatsDClient statsDClient;
+    private final S3CircuitBreaker breaker;
+    private final ThreadPoolExecutor executor;
+    private final long minTimeoutNanos;
+    private final long maxTimeoutNanos;
+    private final double timeoutMultiplier;
+    private final long hedgeMinDelayNanos;
+    private final double hedgeBudget;
+
+    private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private double hedgeTokens = 0;
+
+    public ResilientAmazonS3(
+            AmazonS3 target,
+            StatsDClient statsDClient,
+            S3CircuitBreaker breaker,
+            long minTimeoutMillis,
+            long maxTimeoutMillis,
+            double timeoutMultiplier,
+            long hedgeMinDelayMillis,
+            double hedgeBudget,
+            int maxConcurrentAttempts,
+            boolean virtualThreads) {
+        this.target = target;
+        this.statsDClient = statsDClient;
+        this.breaker = breaker;
+        this.minTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(minTimeoutMillis);
+        this.maxTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(minTimeoutMillis, maxTimeoutMillis));
+        this.timeoutMultiplier = timeoutMultiplier;
+        this.hedgeMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(hedgeMinDelayMillis);
+        this.hedgeBudget = hedgeBudget;
+        // No queue: an attempt starts at once or not at all, so a stalled S3 cannot pile up waiting calls
+        this.executor = new ThreadPoolExecutor(0, maxConcurrentAttempts, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            ThreadFactories.named("s3-call", virtualThreads),
+            new ThreadPoolExecutor.AbortPolicy());
+        logger.info("ResilientAmazonS3 started - timeout: {}-{}ms x{}, hedgeMinDelay: {}ms, hedgeBudget: {}, "
+            + "maxConcurrentAttempts: {}", minTimeoutMillis, maxTimeoutMillis, timeoutMultiplier,
+            hedgeMinDelayMillis, hedgeBudget, maxConcurrentAttempts);
+    }
+
+    public AmazonS3 proxy() {
+        return (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(),
+            new Class<?>[] {AmazonS3.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "ResilientAmazonS3(" + target + ")";
+            }
+        }
+        if (method.getName().equals("shutdown")) {
+            executor.shutdownNow();
+        }
+        // getObject(request, File) writes the body to disk, so it is neither quick nor safe to race
+        boolean guarded = GUARDED.contains(method.getName())
+            && (!method.getName().equals("getObject") || method.getReturnType() == S3Object.class);
+        if (!guarded) {
+            return invokeTarget(method, args);
+        }
+        return call(method, args, HEDGED.contains(method.getName()));
+    }
+
+    private Object call(Method method, Object[] args, boolean hedgeable) throws Throwable {
+        String operation = method.getName();
+        if (!breaker.tryAcquire()) {
+            throw new SdkClientException("S3 circuit breaker open, " + operation + " not attempted");
+        }
+        statsDClient.incrementCounter("s3.resilience." + operation + ".call");
+        LatencyTracker tracker = latencies.computeIfAbsent(operation, k -> new LatencyTracker());
+        long timeoutNanos = timeoutNanos(tracker);
+        long hedgeDelayNanos = -1;
+        if (hedgeable && breaker.getState() == S3CircuitBreaker.State.CLOSED) {
+            earnHedgeToken();
+            hedgeDelayNanos = hedgeDelayNanos(tracker);
+        }
+
+        long startTime = System.currentTimeMillis();
+        Call call = new Call(method, args, tracker);
+        try {
+            Object result = call.await(timeoutNanos, hedgeDelayNanos);
+            breaker.onSuccess();
+            return result;
+        } catch (AbortedException e) {
+            // Our caller gave up, which says nothing about S3
+            breaker.release();
+            throw e;
+        } catch (RejectedExecutionException e) {
+            // Every attempt thread is busy; nothing was sent
+            breaker.release();
+            statsDClient.incrementCounter("s3.resilience." + operation + ".rejected");
+            throw new SdkClientException("S3 " + operation + " not attempted, too many calls in flight", e);
+        } catch (Throwable e) {
+            if (isAnswer(e)) {
+                breaker.onSuccess();
+            } else {
+                breaker.onFailure();
+            }
+            throw e;
+        } finally {
+            call.settle();
+            statsDClient.recordExecutionTime("s3.resilience." + operation + ".time",
+                System.currentTimeMillis() - startTime);
+        }
+    }
+
+    private long timeoutNanos(LatencyTracker tracker) {
+        long p99 = tracker.p99;
+        if (p99 < 0) {
+            return maxTimeoutNanos;
+        }
+        return Math.max(minTimeoutNanos, Math.min(maxTimeoutNanos, (long) (p99 * timeoutMultiplier)));
+    }
+
+    // Negative when there is no latency history yet to pick a delay from
+    private long hedgeDelayNanos(LatencyTracker tracker) {
+        long p95 = tracker.p95;
+        return p95 < 0 ? -1 : Math.max(hedgeMinDelayNanos, p95);
+    }
+
+    private synchronized void earnHedgeToken() {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + hedgeBudget);
+    }
+
+    private synchronized boolean spendHedgeToken() {
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens -= 1;
+        return true;
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * One attempt at a guarded read, sent in its request form so the SDK
+     * itself gives up after timeoutMillis. Request arguments are cloned:
+     * the caller's request is not changed and a hedge gets its own copy.
+     */
+    private Object send(Method method, Object[] args, int timeoutMillis) {
+        switch (method.getName()) {
+            case "doesObjectExist":
+                // As AmazonS3Client.doesObjectExist: a HEAD, with 404 meaning absent
+                try {
+                    target.getObjectMetadata(new GetObjectMetadataRequest((String) args[0], (String) args[1])
+                        .withSdkClientExecutionTimeout(timeoutMillis));
+                    return true;
+                } catch (AmazonServiceException e) {
+                    if (e.getStatusCode() == 404) {
+                        return false;
+                    }
+                    throw e;
+                }
+            case "getObject":
+                GetObjectRequest getRequest = args.length == 1
+                    ? (GetObjectRequest) ((GetObjectRequest) args[0]).clone()
+                    : new GetObjectRequest((String) args[0], (String) args[1]);
+                return target.getObject(getRequest.withSdkClientExecutionTimeout(timeoutMillis));
+            default:
+                GetObjectMetadataRequest headRequest = args.length == 1
+                    ? (GetObjectMetadataRequest) ((GetObjectMetadataRequest) args[0]).clone()
+                    : new GetObjectMetadataRequest((String) args[0], (String) args[1]);
+                return target.getObjectMetadata(headRequest.withSdkClientExecutionTimeout(timeoutMillis));
+        }
+    }
+
+    // A 4xx is S3 answering (404 from getObject, 403 from a bad policy); it counts as latency, not failure
+    private static boolean isAnswer(Throwable error) {
+        return error instanceof AmazonServiceException service
+            && service.getStatusCode() >= 400 && service.getStatusCode() < 500;
+    }
+
+    private static void discard(Object result) {
+        if (result instanceof S3Object object) {
+            S3ObjectInputStream content = object.getObjectContent();
+            if (content != null) {
+                content.abort();
+            }
+        }
+    }
+
+    /**
+     * One guarded call: its attempts report into a queue, the caller takes
+     * the first answer and settle() cancels the rest and discards anything
+     * they returned.
+     */
+    private final class Call {
+        private final Method method;
+        private final Object[] args;
+        private final LatencyTracker tracker;
+        private final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        private final List<Attempt> attempts = new ArrayList<>();
+        private volatile boolean settled = false;
+
+        Call(Method method, Object[] args, LatencyTracker tracker) {
+            this.method = method;
+            this.args = args;
+            this.tracker = tracker;
+        }
+
+        Object await(long timeoutNanos, long hedgeDelayNanos) throws Throwable {
+            String operation = method.getName();
+            long start = System.nanoTime();
+            long deadline = start + timeoutNanos;
+            long hedgeAt = hedgeDelayNanos >= 0 && hedgeDelayNanos < timeoutNanos ? start + hedgeDelayNanos : -1;
+            launch(0, deadline);
+            int pending = 1;
+            while (true) {
+                long waitUntil = hedgeAt >= 0 ? Math.min(hedgeAt, deadline) : deadline;
+                Outcome outcome;
+                try {
+                    outcome = outcomes.poll(waitUntil - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AbortedException();
+                }
+                if (outcome == null) {
+                    if (hedgeAt >= 0 && System.nanoTime() < deadline) {
+                        hedgeAt = -1;
+                        if (spendHedgeToken()) {
+                            try {
+                                launch(1, deadline);
+                                statsDClient.incrementCounter("s3.resilience." + operation + ".hedge");
+                                pending++;
+                            } catch (RejectedExecutionException e) {
+                                statsDClient.incrementCounter("s3.resilience." + operation + ".rejected");
+                            }
+                        }
+                        continue;
+                    }
+                    if (System.nanoTime() < deadline) {
+                        continue;
+                    }
+                    recordTimedOut();
+                    throw timedOut(timeoutNanos, null);
+                }
+                pending--;
+                if (outcome.error == null) {
+                    if (outcome.attempt > 0) {
+                        statsDClient.incrementCounter("s3.resilience." + operation + ".hedge.win");
+                    }
+                    return outcome.result;
+                }
+                // A 5xx from one attempt still leaves the other one to wait for. One that fails before
+                // the hedge is due is not hedged: the SDK has already retried it.
+                if (isAnswer(outcome.error)) {
+                    throw outcome.error;
+                }
+                if (pending == 0) {
+                    // The SDK may abort the last attempt at the deadline before the poll above notices it
+                    throw outcome.error instanceof ClientExecutionTimeoutException
+                        ? timedOut(timeoutNanos, outcome.error)
+                        : outcome.error;
+                }
+            }
+        }
+
+        private SdkClientException timedOut(long timeoutNanos, Throwable cause) {
+            String operation = method.getName();
+            statsDClient.incrementCounter("s3.resilience." + operation + ".timeout");
+            return new SdkClientException("S3 " + operation + " timed out after "
+                + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms", cause);
+        }
+
+        void settle() {
+            settled = true;
+            for (Attempt attempt : attempts) {
+                attempt.future.cancel(true);
+            }
+            discardUnclaimed();
+        }
+
+        // Throws RejectedExecutionException if every attempt thread is busy
+        private void launch(int attempt, long deadline) {
+            long attemptTimeoutNanos = deadline - System.nanoTime();
+            int timeoutMillis = (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(attemptTimeoutNanos));
+            AtomicBoolean measured = new AtomicBoolean();
+            Future<?> future = executor.submit(() -> {
+                long start = System.nanoTime();
+                Outcome outcome;
+                try {
+                    outcome = new Outcome(attempt, send(method, args, timeoutMillis), null);
+                    measure(measured, System.nanoTime() - start);
+                } catch (Throwable e) {
+                    if (isAnswer(e)) {
+                        measure(measured, System.nanoTime() - start);
+                    } else if (e instanceof ClientExecutionTimeoutException) {
+                        measure(measured, attemptTimeoutNanos);
+                    }
+                    outcome = new Outcome(attempt, null, e);
+                }
+                outcomes.add(outcome);
+                // Lost the race, or finished after the caller timed out
+                if (settled) {
+                    discardUnclaimed();
+                }
+            });
+            attempts.add(new Attempt(future, measured, attemptTimeoutNanos));
+        }
+
+        /**
+         * A timed-out attempt counts as taking its whole timeout: leaving it
+         * out would keep p99, and so the timeout, from ever rising while S3
+         * slows down. Attempts the SDK has not aborted yet are counted here.
+         */
+        private void recordTimedOut() {
+            for (Attempt attempt : attempts) {
+                measure(attempt.measured, attempt.timeoutNanos);
+            }
+        }
+
+        // Each attempt is measured once, whether it answered, or timed out in the SDK or here
+        private void measure(AtomicBoolean measured, long nanos) {
+            if (measured.compareAndSet(false, true)) {
+                record(nanos);
+            }
+        }
+
+        private void record(long nanos) {
+            if (tracker.record(nanos)) {
+                String operation = method.getName();
+                statsDClient.recordGaugeValue("s3.resilience." + operation + ".timeout_ms",
+                    TimeUnit.NANOSECONDS.toMillis(timeoutNanos(tracker)));
+                statsDClient.recordGaugeValue("s3.resilience." + operation + ".hedge_delay_ms",
+                    TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos(tracker)));
+            }
+        }
+
+        private void discardUnclaimed() {
+            Outcome outcome;
+            while ((outcome = outcomes.poll()) != null) {
+                discard(outcome.result);
+            }
+        }
+    }
+
+    private static final class Attempt {
+        private final Future<?> future;
+        private final AtomicBoolean measured;
+        private final long timeoutNanos;
+
+        Attempt(Future<?> future, AtomicBoolean measured, long timeoutNanos) {
+            this.future = future;
+            this.measured = measured;
+            this.timeoutNanos = timeoutNanos;
+        }
+    }
+
+    private static final class Outcome {
+        private final int attempt;
+        private final Object result;
+        private final Throwable error;
+
+        Outcome(int attempt, Object result, Throwable error) {
+            this.attempt = attempt;
+            this.result = result;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The last SAMPLES latencies of one operation. p95 and p99 are recomputed
+     * every REFRESH_EVERY samples once MIN_SAMPLES are in; before that both
+     * read -1.
+     */
+    static final class LatencyTracker {
+        private static final int SAMPLES = 1024;
+        private static final int MIN_SAMPLES = 20;
+        private static final int REFRESH_EVERY = 64;
+
+        private final long[] samples = new long[SAMPLES];
+        private int count = 0;
+        private int next = 0;
+        private int sinceRefresh = 0;
+        volatile long p95 = -1;
+        volatile long p99 = -1;
+
+        // Returns true if the percentiles were recomputed
+        synchronized boolean record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % SAMPLES;
+            count = Math.min(SAMPLES, count + 1);
+            sinceRefresh++;
+            if (count < MIN_SAMPLES || (count > MIN_SAMPLES && sinceRefresh < REFRESH_EVERY)) {
+                return false;
+            }
+            sinceRefresh = 0;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            p95 = sorted[(int) Math.ceil(count * 0.95) - 1];
+            p99 = sorted[(int) Math.ceil(count * 0.99) - 1];
+            return true;
+        }
+    }
+}
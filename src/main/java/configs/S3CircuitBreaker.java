@@ -0,0 +1,139 @@
+package configs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.timgroup.statsd.StatsDClient;
+
+/**
+ * Count-based circuit breaker for S3 reads. Opens once at least minCalls of
+ * the last windowSize calls have been seen and the failed share reaches
+ * failureRateThreshold; while open every call is refused. After openMillis
+ * a single trial call is let through (half-open): success closes the
+ * breaker with a fresh window, failure opens it again.
+ *
+ * State changes are exported as the gauge "s3.resilience.breaker.state"
+ * (0 closed, 1 open, 2 half-open).
+ */
+public class S3CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(S3CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final StatsDClient statsDClient;
+    private final boolean[] outcomes;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int recorded = 0;
+    private int next = 0;
+    private int failures = 0;
+    private long openedAt = 0;
+    private boolean trialInFlight = false;
+
+    public S3CircuitBreaker(StatsDClient statsDClient, int windowSize, int minCalls,
+            double failureRateThreshold, long openMillis) {
+        this.statsDClient = statsDClient;
+        this.outcomes = new boolean[Math.max(1, windowSize)];
+        this.minCalls = Math.max(1, Math.min(minCalls, outcomes.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        statsDClient.recordGaugeValue("s3.resilience.breaker.state", State.CLOSED.ordinal());
+    }
+
+    /**
+     * Returns false if the call must not be made. A caller that gets true
+     * must report the outcome with {@link #onSuccess} or {@link #onFailure},
+     * or {@link #release} if it has none.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            transition(State.HALF_OPEN);
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (!trialInFlight) {
+                    trialInFlight = true;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        statsDClient.incrementCounter("s3.resilience.breaker.rejected");
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            reset();
+            transition(State.CLOSED);
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minCalls && (double) failures / recorded >= failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    // For a call that was abandoned without an outcome; frees the half-open trial
+    public synchronized void release() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (recorded == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        logger.warn("S3 circuit breaker open - failures: {}/{}, retry in {}ms", failures, recorded, openMillis);
+        reset();
+        openedAt = System.currentTimeMillis();
+        statsDClient.incrementCounter("s3.resilience.breaker.open");
+        transition(State.OPEN);
+    }
+
+    private void reset() {
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    private void transition(State to) {
+        if (state != to) {
+            logger.info("S3 circuit breaker {} -> {}", state, to);
+        }
+        state = to;
+        statsDClient.recordGaugeValue("s3.resilience.breaker.state", to.ordinal());
+    }
+}
@@ -1,11 +1,19 @@
 package configs;
 
+import java.time.Duration;
+
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.timgroup.statsd.StatsDClient;
+
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 
 @Configuration
 public class S3Config {
@@ -14,12 +22,58 @@ public class S3Config {
     private String region;
 
     @Bean
-    public AmazonS3 amazonS3Client() {
-        return AmazonS3ClientBuilder
+    public AmazonS3 amazonS3Client(
+            StatsDClient statsDClient,
+            S3CircuitBreaker s3CircuitBreaker,
+            @Value("${s3.resilience.enabled:true}") boolean resilience,
+            @Value("${s3.resilience.min-timeout-ms:250}") long minTimeoutMillis,
+            @Value("${s3.resilience.max-timeout-ms:5000}") long maxTimeoutMillis,
+            @Value("${s3.resilience.timeout-multiplier:3.0}") double timeoutMultiplier,
+            @Value("${s3.resilience.hedge-min-delay-ms:20}") long hedgeMinDelayMillis,
+            @Value("${s3.resilience.hedge-budget:0.1}") double hedgeBudget,
+            @Value("${s3.resilience.max-concurrent-attempts:200}") int maxConcurrentAttempts,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        AmazonS3 client = AmazonS3ClientBuilder
                 .standard()
                 .withRegion(region)
                 .build();
+        if (!resilience) {
+            return client;
+        }
+        // Adaptive timeouts, hedged reads and the circuit breaker; shutdown() reaches the client through the proxy
+        return new ResilientAmazonS3(client, statsDClient, s3CircuitBreaker, minTimeoutMillis, maxTimeoutMillis,
+                timeoutMultiplier, hedgeMinDelayMillis, hedgeBudget, maxConcurrentAttempts, virtualThreads).proxy();
     }
 
-}
+    @Bean
+    public S3CircuitBreaker s3CircuitBreaker(
+            StatsDClient statsDClient,
+            @Value("${s3.resilience.breaker.window-size:50}") int windowSize,
+            @Value("${s3.resilience.breaker.min-calls:20}") int minCalls,
+            @Value("${s3.resilience.breaker.failure-rate:0.5}") double failureRateThreshold,
+            @Value("${s3.resilience.breaker.open-ms:10000}") long openMillis) {
+        return new S3CircuitBreaker(statsDClient, windowSize, minCalls, failureRateThreshold, openMillis);
+    }
 
+    // Non-blocking client with its own Netty connection pool, for AsyncPictureStorage. Futures
+    // complete on the SDK's response executor, never on the Netty event loop.
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "profile.picture.storage.engine", havingValue = "async")
+    public S3AsyncClient s3AsyncClient(
+            @Value("${s3.async.max-concurrency:500}") int maxConcurrency,
+            @Value("${s3.async.max-pending-acquires:10000}") int maxPendingAcquires,
+            @Value("${s3.async.connection-timeout-ms:2000}") long connectionTimeoutMillis,
+            @Value("${s3.async.acquire-timeout-ms:10000}") long acquireTimeoutMillis,
+            @Value("${s3.async.read-timeout-ms:30000}") long readTimeoutMillis) {
+        return S3AsyncClient.builder()
+                .region(Region.of(region))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxConcurrency)
+                        .maxPendingConnectionAcquires(maxPendingAcquires)
+                        .connectionTimeout(Duration.ofMillis(connectionTimeoutMillis))
+                        .connectionAcquisitionTimeout(Duration.ofMillis(acquireTimeoutMillis))
+                        .readTimeout(Duration.ofMillis(readTimeoutMillis)))
+                .build();
+    }
+
+}
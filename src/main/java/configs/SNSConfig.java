@@ -0,0 +1,23 @@
+package configs;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.amazonaws.services.sns.AmazonSNS;
+import com.amazonaws.services.sns.AmazonSNSClientBuilder;
+
+@Configuration
+public class SNSConfig {
+
+    @Value("${aws.sns.region:${aws.region:us-east-1}}")
+    private String region;
+
+    @Bean
+    public AmazonSNS amazonSNSClient() {
+        return AmazonSNSClientBuilder
+                .standard()
+                .withRegion(region)
+                .build();
+    }
+}
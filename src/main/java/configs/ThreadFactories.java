@@ -0,0 +1,28 @@
+package configs;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the internal executors that block on AWS calls.
+ * With spring.threads.virtual.enabled they start virtual threads, which
+ * unmount from their carrier while blocked; otherwise daemon platform
+ * threads. Either way threads are named prefix-1, prefix-2, ...
+ */
+public final class ThreadFactories {
+
+    private ThreadFactories() {
+    }
+
+    public static ThreadFactory named(String prefix, boolean virtual) {
+        if (virtual) {
+            return Thread.ofVirtual().name(prefix + "-", 1).factory();
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
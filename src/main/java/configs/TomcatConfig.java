@@ -1,5 +1,9 @@
 package configs;
 
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
 import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
@@ -13,4 +17,13 @@ public class TomcatConfig {
             context.getPipeline().addValve(new CustomAccessLogValve());
         });
     }
+
+    // One virtual thread per request in place of the server.tomcat.threads pool, so requests
+    // blocked on S3, SNS or JDBC no longer cap concurrency at the pool size
+    @Bean
+    @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutorCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(
+            Executors.newThreadPerTaskExecutor(ThreadFactories.named("tomcat-handler", true)));
+    }
 }
@@ -0,0 +1,130 @@
+package configs;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import models.User;
+
+/**
+ * Security principal carrying the user fields the controllers and services
+ * need, so they do not have to look the user up a second time.
+ */
+public class UserPrincipal implements UserDetails, CredentialsContainer {
+    private static final List<GrantedAuthority> USER_AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+    // Partners may call the bulk registration endpoint
+    private static final List<GrantedAuthority> PARTNER_AUTHORITIES =
+        List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_PARTNER"));
+
+    private final Long id;
+    private final String email;
+    private String password;
+    private final boolean emailVerified;
+    private final String firstName;
+    private final String lastName;
+    private final LocalDateTime accountCreated;
+    private final LocalDateTime accountUpdated;
+    private final List<GrantedAuthority> authorities;
+
+    private UserPrincipal(Long id, String email, String password, boolean emailVerified,
+            String firstName, String lastName, LocalDateTime accountCreated, LocalDateTime accountUpdated,
+            List<GrantedAuthority> authorities) {
+        this.id = id;
+        this.email = email;
+        this.password = password;
+        this.emailVerified = emailVerified;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.accountCreated = accountCreated;
+        this.accountUpdated = accountUpdated;
+        this.authorities = authorities;
+    }
+
+    public static UserPrincipal fromUser(User user) {
+        return fromUser(user, false);
+    }
+
+    public static UserPrincipal fromUser(User user, boolean partner) {
+        return new UserPrincipal(user.getId(), user.getEmail(), user.getPassword(), user.isEmailVerified(),
+            user.getFirstName(), user.getLastName(), user.getAccountCreated(), user.getAccountUpdated(),
+            partner ? PARTNER_AUTHORITIES : USER_AUTHORITIES);
+    }
+
+    // Detached copy of the user as loaded at authentication time, without the password hash
+    public User toUser() {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(email);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setAccountCreated(accountCreated);
+        user.setAccountUpdated(accountUpdated);
+        user.setEmailVerified(emailVerified);
+        return user;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public boolean isEmailVerified() {
+        return emailVerified;
+    }
+
+    public LocalDateTime getAccountCreated() {
+        return accountCreated;
+    }
+
+    public LocalDateTime getAccountUpdated() {
+        return accountUpdated;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void eraseCredentials() {
+        this.password = null;
+    }
+}
@@ -0,0 +1,27 @@
+package configs;
+
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import models.User;
+
+/**
+ * Builds the principal for an authenticated user, deciding its roles in one
+ * place so HTTP Basic logins and access tokens grant the same authorities.
+ */
+@Component
+public class UserPrincipalFactory {
+
+    // Accounts allowed to use POST /v1/user/batch
+    private final Set<String> partnerEmails;
+
+    public UserPrincipalFactory(@Value("${registration.batch.partner-emails:}") Set<String> partnerEmails) {
+        this.partnerEmails = partnerEmails;
+    }
+
+    public UserPrincipal create(User user) {
+        return UserPrincipal.fromUser(user, partnerEmails.contains(user.getEmail()));
+    }
+}
@@ -1,25 +1,41 @@
 package configs;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import com.timgroup.statsd.StatsDClient;
 
 @Configuration
 @EnableWebSecurity
 public class WebSecurityConfig {
 
     private final UserDetailsService userDetailsService;
+    private final AuthenticationCache authenticationCache;
+    private final AccessTokenService accessTokenService;
+    private final StatsDClient statsDClient;
+
+    // When enabled, a successful Basic login returns a bearer token usable on /v1/user/self/**
+    @Value("${auth.token.enabled:false}")
+    private boolean accessTokensEnabled;
 
-    public WebSecurityConfig(UserDetailsService userDetailsService) {
+    public WebSecurityConfig(UserDetailsService userDetailsService, AuthenticationCache authenticationCache,
+            AccessTokenService accessTokenService, StatsDClient statsDClient) {
         this.userDetailsService = userDetailsService;
+        this.authenticationCache = authenticationCache;
+        this.accessTokenService = accessTokenService;
+        this.statsDClient = statsDClient;
     }
 
     @Bean
@@ -31,10 +47,15 @@ public class WebSecurityConfig {
             .requestMatchers(HttpMethod.GET, "/healthz").permitAll()
             .requestMatchers(HttpMethod.GET, "/cicd").permitAll()
             .requestMatchers(HttpMethod.POST, "/v1/user").permitAll()
+            .requestMatchers(HttpMethod.POST, "/v1/user/batch").hasRole("PARTNER")
             .requestMatchers(HttpMethod.GET, "/v1/user/self").authenticated()
             .requestMatchers(HttpMethod.PUT, "/v1/user/self").authenticated()
             .requestMatchers(HttpMethod.POST, "/v1/user/self/pic").authenticated()
             .requestMatchers(HttpMethod.GET, "/v1/user/self/pic").authenticated()
+            .requestMatchers(HttpMethod.GET, "/v1/user/self/pic/status/*").authenticated()
+            .requestMatchers(HttpMethod.GET, "/v1/user/self/pic/content").authenticated()
+            .requestMatchers(HttpMethod.POST, "/v1/user/self/pic/upload-url").authenticated()
+            .requestMatchers(HttpMethod.POST, "/v1/user/self/pic/upload-complete").authenticated()
             .requestMatchers(HttpMethod.DELETE, "/v1/user/self/pic").authenticated()
             .requestMatchers(HttpMethod.GET, "/v1/user/verify/**").permitAll()
             .anyRequest().denyAll()
@@ -43,10 +64,16 @@ public class WebSecurityConfig {
                 exceptionHandling.authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED))
             )
             .httpBasic(httpBasic -> {})
-            .userDetailsService(userDetailsService);
+            .authenticationProvider(new CachingAuthenticationProvider(
+                userDetailsService, passwordEncoder(), authenticationCache));
 
         //http.addFilterBefore(new RequestValidationFilter(), UsernamePasswordAuthenticationFilter.class);
         http.addFilterBefore(new ApiMethodNotAllowedFilter(), UsernamePasswordAuthenticationFilter.class);
+
+        if (accessTokensEnabled) {
+            http.sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+            http.addFilterAfter(new AccessTokenFilter(accessTokenService, statsDClient), BasicAuthenticationFilter.class);
+        }
         
         return http.build();
     }
@@ -0,0 +1,269 @@
+package controllers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads a multipart/form-data body part by part straight off the request
+ * stream. Part bodies are exposed as streams that end at the next boundary,
+ * so nothing is buffered beyond a small lookahead window.
+ *
+ * Only what the upload endpoint needs is supported: Content-Disposition name
+ * and filename, and Content-Type. Each part's body must be consumed or is
+ * skipped before {@link #nextPart()} returns the following one.
+ *
+ * With a maxBytes limit, reading fails with {@link MultipartTooLargeException}
+ * once more than that many bytes have come off the stream, whichever part
+ * (or the preamble) they belong to.
+ */
+public class MultipartStreamReader {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private final long maxBytes;
+    private long consumed = 0;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean finished = false;
+    private PartInputStream current;
+
+    public MultipartStreamReader(InputStream in, String boundary) {
+        this(in, boundary, Long.MAX_VALUE);
+    }
+
+    public MultipartStreamReader(InputStream in, String boundary, long maxBytes) {
+        this.in = in;
+        this.maxBytes = maxBytes;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        this.buffer = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+        // The first boundary has no leading CRLF; pretend it does so every delimiter looks the same
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+    }
+
+    /**
+     * Returns the next part, or null once the closing boundary is reached.
+     */
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (current == null) {
+            // Preamble before the first boundary
+            new PartInputStream().transferTo(OutputStream.nullOutputStream());
+        } else {
+            current.transferTo(OutputStream.nullOutputStream());
+        }
+
+        // After a delimiter comes either "--" (end of body) or CRLF and the part headers
+        if (!fill(2)) {
+            throw new MalformedMultipartException("Unexpected end of multipart body");
+        }
+        if (buffer[pos] == '-' && buffer[pos + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        skipLineEnd();
+
+        Part part = readHeaders();
+        current = new PartInputStream();
+        part.body = current;
+        return part;
+    }
+
+    private Part readHeaders() throws IOException {
+        Part part = new Part();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int headerBytes = 0;
+        while (true) {
+            if (!fill(1)) {
+                throw new MalformedMultipartException("Unexpected end of part headers");
+            }
+            byte b = buffer[pos++];
+            if (++headerBytes > MAX_HEADER_BYTES) {
+                throw new MalformedMultipartException("Part headers too large");
+            }
+            if (b == '\n') {
+                String header = line.toString(StandardCharsets.UTF_8).stripTrailing();
+                line.reset();
+                if (header.isEmpty()) {
+                    return part;
+                }
+                applyHeader(part, header);
+            } else {
+                line.write(b);
+            }
+        }
+    }
+
+    private static void applyHeader(Part part, String header) {
+        int colon = header.indexOf(':');
+        if (colon < 0) {
+            return;
+        }
+        String name = header.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+        String value = header.substring(colon + 1).trim();
+        if (name.equals("content-type")) {
+            part.contentType = value;
+        } else if (name.equals("content-disposition")) {
+            for (String parameter : value.split(";")) {
+                String[] pair = parameter.trim().split("=", 2);
+                if (pair.length != 2) {
+                    continue;
+                }
+                String parameterValue = unquote(pair[1].trim());
+                if (pair[0].equalsIgnoreCase("name")) {
+                    part.name = parameterValue;
+                } else if (pair[0].equalsIgnoreCase("filename")) {
+                    part.filename = parameterValue;
+                }
+            }
+        }
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private void skipLineEnd() throws IOException {
+        // Tolerates trailing whitespace after the boundary, as RFC 2046 allows
+        while (fill(1) && buffer[pos] != '\n') {
+            pos++;
+        }
+        if (!fill(1)) {
+            throw new MalformedMultipartException("Unexpected end of multipart body");
+        }
+        pos++;
+    }
+
+    // Ensures at least n unread bytes are buffered; false if the stream ends first
+    private boolean fill(int n) throws IOException {
+        if (limit - pos >= n) {
+            return true;
+        }
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        while (limit < n) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            consumed += read;
+            if (consumed > maxBytes) {
+                throw new MultipartTooLargeException("Multipart body exceeds " + maxBytes + " bytes");
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private int indexOfDelimiter() {
+        outer:
+        for (int i = pos; i <= limit - delimiter.length; i++) {
+            for (int j = 0; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public static class Part {
+        private String name;
+        private String filename;
+        private String contentType;
+        private InputStream body;
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+    }
+
+    public static class MalformedMultipartException extends IOException {
+        public MalformedMultipartException(String message) {
+            super(message);
+        }
+    }
+
+    public static class MultipartTooLargeException extends IOException {
+        public MultipartTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A part body: yields bytes up to the next delimiter, keeping back the
+     * tail of the buffer that could be the start of a delimiter.
+     */
+    private class PartInputStream extends InputStream {
+        private boolean done = false;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                int delimiterAt = indexOfDelimiter();
+                int available;
+                if (delimiterAt >= 0) {
+                    available = delimiterAt - pos;
+                    if (available == 0) {
+                        pos += delimiter.length;
+                        done = true;
+                        return -1;
+                    }
+                } else {
+                    available = limit - pos - (delimiter.length - 1);
+                }
+                if (available > 0) {
+                    int count = Math.min(available, length);
+                    System.arraycopy(buffer, pos, target, offset, count);
+                    pos += count;
+                    return count;
+                }
+                if (!fill(limit - pos + 1)) {
+                    throw new MalformedMultipartException("Multipart body ended without a closing boundary");
+                }
+            }
+        }
+    }
+}
@@ -1,25 +1,46 @@
 package controllers;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.timgroup.statsd.StatsDClient;
 
+import configs.UserPrincipal;
+import dto.DirectUploadDTO;
 import dto.ProfilePictureDTO;
+import dto.ProfilePictureJobDTO;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import services.PictureDiskCache;
+import services.ProfilePictureJobService;
 import services.ProfilePictureService;
 
 @RestController
@@ -27,20 +48,47 @@ import services.ProfilePictureService;
 public class ProfilePictureController {
 
     private static final Logger log = LoggerFactory.getLogger(ProfilePictureController.class);
+    // Tomcat request attributes (org.apache.catalina.Globals) for handing a file to sendfile
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
 
     @Autowired
     private ProfilePictureService profilePictureService;
 
+    @Autowired
+    private ProfilePictureJobService profilePictureJobService;
+
+    @Autowired
+    private PictureDiskCache pictureDiskCache;
+
+    // How long a file handed to sendfile is kept after eviction; Tomcat opens it right after the handler returns
+    @Value("${profile.picture.disk-cache.sendfile-lease-ms:30000}")
+    private long sendfileLeaseMillis;
+
+    @Value("${profile.picture.async.enabled:true}")
+    private boolean asyncEnabled;
+
+    // The whole multipart body: the file plus room for the preamble, part headers and other fields
+    @Value("${profile.picture.max-request-bytes:1114112}")
+    private long maxRequestBytes;
+
     @Autowired
     private StatsDClient statsDClient;
 
+    // Parses the multipart body itself so the file streams into the service instead of
+    // being buffered by the servlet container first (spring.servlet.multipart is disabled).
+    // The body is read on this thread; the S3 work completes the returned future, and with
+    // profile.picture.storage.engine=async the request thread is released while it runs.
     @PostMapping(value = "/pic", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<ProfilePictureDTO> uploadProfilePicture(
-            Authentication authentication,
-            @RequestParam(name = "file") MultipartFile file) {
+    public CompletableFuture<ResponseEntity<?>> uploadProfilePicture(
+            @AuthenticationPrincipal UserPrincipal principal,
+            @RequestHeader(name = "Prefer", required = false) String prefer,
+            HttpServletRequest request) throws IOException {
 
         log.info("Received file upload request");
-        String username = authentication.getName();
+        String username = principal.getUsername();
         long startTime = System.currentTimeMillis();
 
         MDC.put("user", username);
@@ -50,19 +98,39 @@ public class ProfilePictureController {
         
 
         try {
-            log.info("Starting profile picture upload - Size: {}B, Type: {}, Name: {}",
-                    file.getSize(), file.getContentType(), file.getOriginalFilename());
+            MultipartStreamReader.Part file = findFilePart(request);
+            log.info("Starting profile picture upload - Declared size: {}B, Type: {}, Name: {}",
+                    request.getContentLengthLong(), file.getContentType(), file.getFilename());
 
             validateFile(file);
 
-            ProfilePictureDTO result = profilePictureService.uploadProfilePicture(username, file);
-
-            long duration = System.currentTimeMillis() - startTime;
-            statsDClient.recordExecutionTime("api.pic.upload.time", duration);
-            statsDClient.incrementCounter("api.pic.upload.success");
-
-            log.info("Profile picture upload successful - Duration: {}ms", duration);
-            return ResponseEntity.status(HttpStatus.CREATED).body(result);
+            // "Prefer: respond-async" (RFC 7240) stages the file and answers 202 with a job to poll
+            if (asyncEnabled && prefer != null && prefer.contains("respond-async")) {
+                ProfilePictureJobDTO job = profilePictureJobService.submit(
+                        principal, file.getFilename(), file.getContentType(), file.getBody());
+                statsDClient.incrementCounter("api.pic.upload.accepted");
+                log.info("Profile picture upload accepted as job {}", job.getJobId());
+                return CompletableFuture.completedFuture(ResponseEntity.accepted()
+                        .location(URI.create("/v1/user/self/pic/status/" + job.getJobId()))
+                        .body(job));
+            }
+
+            return profilePictureService.uploadProfilePictureAsync(
+                    principal, file.getFilename(), file.getContentType(), file.getBody())
+                .<ResponseEntity<?>>thenApply(result -> {
+                    long duration = System.currentTimeMillis() - startTime;
+                    statsDClient.recordExecutionTime("api.pic.upload.time", duration);
+                    statsDClient.incrementCounter("api.pic.upload.success");
+
+                    log.info("Profile picture upload successful - Duration: {}ms", duration);
+                    return ResponseEntity.status(HttpStatus.CREATED).body(result);
+                })
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        statsDClient.incrementCounter("api.pic.upload.error");
+                        log.error("Profile picture upload failed: {}", error.getMessage(), error);
+                    }
+                });
 
         } catch (Exception e) {
             statsDClient.incrementCounter("api.pic.upload.error");
@@ -77,9 +145,10 @@ public class ProfilePictureController {
 
     @GetMapping("/pic")
     public ResponseEntity<ProfilePictureDTO> getProfilePicture(
-            Authentication authentication) {
+            @AuthenticationPrincipal UserPrincipal principal,
+            @RequestParam(name = "size", required = false) Integer size) {
 
-        String username = authentication.getName();
+        String username = principal.getUsername();
 
         MDC.put("user", username);
         MDC.put("operation", "get_profile_pic");
@@ -89,7 +158,7 @@ public class ProfilePictureController {
 
         try {
             log.info("Fetching profile picture");
-            ProfilePictureDTO result = profilePictureService.getProfilePicture(username);
+            ProfilePictureDTO result = profilePictureService.getProfilePicture(principal, size);
 
             statsDClient.incrementCounter("api.pic.get.success");
             return ResponseEntity.ok(result);
@@ -105,17 +174,224 @@ public class ProfilePictureController {
         }
     }
 
+    /**
+     * Streams the picture bytes from the node-local disk cache. Supports
+     * ETag / If-None-Match and a single byte Range. A cache hit is answered
+     * on the request thread, with Tomcat's sendfile when the connector
+     * offers it; a miss is answered asynchronously once the file has been
+     * fetched, with FileChannel.transferTo (Tomcat ignores sendfile on async
+     * requests).
+     */
+    @GetMapping("/pic/content")
+    public CompletableFuture<Void> getProfilePictureContent(
+            @AuthenticationPrincipal UserPrincipal principal,
+            @RequestParam(name = "size", required = false) Integer size,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        MDC.put("user", principal.getUsername());
+        MDC.put("operation", "get_profile_pic_content");
+        try {
+            CompletableFuture<PictureDiskCache.CachedFile> lookup =
+                profilePictureService.getProfilePictureContent(principal, size);
+            if (lookup.isDone() && !lookup.isCompletedExceptionally()) {
+                writeContent(lookup.join(), true, request, response);
+                // A null future tells Spring the response is already complete
+                return null;
+            }
+            return lookup
+                .thenAccept(file -> {
+                    try {
+                        writeContent(file, false, request, response);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        statsDClient.incrementCounter("api.pic.content.error");
+                        log.error("Failed to serve profile picture content: {}", error.getMessage(), error);
+                    }
+                });
+        } catch (Exception e) {
+            statsDClient.incrementCounter("api.pic.content.error");
+            log.error("Failed to serve profile picture content: {}", e.getMessage(), e);
+            throw e;
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    // The file arrives pinned by the lookup and is released here
+    private void writeContent(PictureDiskCache.CachedFile file, boolean sendfileAllowed,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            writePinnedContent(file, sendfileAllowed, request, response);
+        } finally {
+            pictureDiskCache.release(file);
+        }
+    }
+
+    private void writePinnedContent(PictureDiskCache.CachedFile file, boolean sendfileAllowed,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String etag = "\"" + file.getEtag() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(etag))) {
+            statsDClient.incrementCounter("api.pic.content.not_modified");
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        response.setContentType(file.getContentType());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        long start = 0;
+        long end = file.getSize() - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null) {
+            long[] bounds = parseRange(range, file.getSize());
+            if (bounds == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.getSize());
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + file.getSize());
+            }
+        }
+        response.setContentLengthLong(end - start + 1);
+
+        if (sendfileAllowed && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat writes the file with sendfile(2) once the handler returns, opening it by name then
+            pictureDiskCache.lease(file, sendfileLeaseMillis);
+            request.setAttribute(SENDFILE_FILENAME, file.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            statsDClient.incrementCounter("api.pic.content.sendfile");
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                position += sent;
+                remaining -= sent;
+            }
+        }
+        statsDClient.incrementCounter("api.pic.content.success");
+    }
+
+    // {start, end} for one satisfiable range, an empty array to ignore the header, null for 416
+    private static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.contains(",")) {
+            // Multiple ranges are allowed to be answered with the whole file
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? size - 1 : Math.min(size - 1, Long.parseLong(spec.substring(dash + 1)));
+            }
+            if (start >= size || start > end) {
+                return null;
+            }
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    // Direct-to-S3 upload: the client PUTs the file to the returned URL, then calls upload-complete
+    @PostMapping(value = "/pic/upload-url", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DirectUploadDTO> createUploadUrl(
+            @AuthenticationPrincipal UserPrincipal principal,
+            @RequestBody DirectUploadDTO request) {
+
+        MDC.put("user", principal.getUsername());
+        MDC.put("operation", "create_upload_url");
+        try {
+            DirectUploadDTO result = profilePictureService.createDirectUpload(
+                    principal, request.getFileName(), request.getContentType());
+            statsDClient.incrementCounter("api.pic.upload_url.success");
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            statsDClient.incrementCounter("api.pic.upload_url.error");
+            log.error("Failed to issue upload URL: {}", e.getMessage(), e);
+            throw e;
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    @PostMapping(value = "/pic/upload-complete", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ProfilePictureDTO> completeUpload(
+            @AuthenticationPrincipal UserPrincipal principal,
+            @RequestBody DirectUploadDTO request) {
+
+        MDC.put("user", principal.getUsername());
+        MDC.put("operation", "complete_upload");
+        try {
+            ProfilePictureDTO result = profilePictureService.completeDirectUpload(
+                    principal, request.getUploadId(), request.getFileName());
+            statsDClient.incrementCounter("api.pic.upload_complete.success");
+            return ResponseEntity.status(HttpStatus.CREATED).body(result);
+        } catch (Exception e) {
+            statsDClient.incrementCounter("api.pic.upload_complete.error");
+            log.error("Failed to complete direct upload: {}", e.getMessage(), e);
+            throw e;
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    @GetMapping("/pic/status/{jobId}")
+    public ResponseEntity<ProfilePictureJobDTO> getUploadStatus(
+            @AuthenticationPrincipal UserPrincipal principal,
+            @PathVariable String jobId) {
+
+        UUID id;
+        try {
+            id = UUID.fromString(jobId);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload job not found");
+        }
+        ProfilePictureJobDTO job = profilePictureJobService.getJob(principal, id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload job not found"));
+        return ResponseEntity.ok(job);
+    }
+
     @DeleteMapping("/pic")
     public ResponseEntity<Void> deleteProfilePicture(
-            Authentication authentication) {
+            @AuthenticationPrincipal UserPrincipal principal) {
 
-        String username = authentication.getName();
+        String username = principal.getUsername();
 
         MDC.put("user", username);
         MDC.put("operation", "delete_profile_pic");
         try {
             log.info("Deleting profile picture");
-            profilePictureService.deleteProfilePicture(username);
+            profilePictureService.deleteProfilePicture(principal);
 
             statsDClient.incrementCounter("api.pic.delete.success");
             log.info("Profile picture deleted successfully");
@@ -133,8 +409,43 @@ public class ProfilePictureController {
         }
     }
 
-    private void validateFile(MultipartFile file) {
-        if (file.isEmpty()) {
+    private MultipartStreamReader.Part findFilePart(HttpServletRequest request) throws IOException {
+        String boundary = MediaType.parseMediaType(request.getContentType()).getParameter("boundary");
+        if (boundary == null || boundary.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing multipart boundary");
+        }
+        if (boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        if (request.getContentLengthLong() > maxRequestBytes) {
+            statsDClient.incrementCounter("api.profile.picture.validation.too_large");
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                "Request must be less than " + (maxRequestBytes / 1024) + "KB");
+        }
+
+        try {
+            MultipartStreamReader reader = new MultipartStreamReader(request.getInputStream(), boundary, maxRequestBytes);
+            MultipartStreamReader.Part part;
+            while ((part = reader.nextPart()) != null) {
+                if ("file".equals(part.getName()) && part.getFilename() != null) {
+                    return part;
+                }
+            }
+        } catch (MultipartStreamReader.MalformedMultipartException e) {
+            log.info("Malformed multipart body: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed multipart request");
+        } catch (MultipartStreamReader.MultipartTooLargeException e) {
+            // Chunked bodies have no declared length; the reader stops them here
+            statsDClient.incrementCounter("api.profile.picture.validation.too_large");
+            log.info("Multipart body too large: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                "Request must be less than " + (maxRequestBytes / 1024) + "KB");
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File is required");
+    }
+
+    private void validateFile(MultipartStreamReader.Part file) {
+        if (file.getFilename().isEmpty()) {
             log.info("Empty file uploaded");
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File cannot be empty");
         }
@@ -144,10 +455,6 @@ public class ProfilePictureController {
             log.info("Invalid file type: {}", contentType);
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Only image files are allowed");
         }
-
-        if (file.getSize() > 1024 * 1024) { // 1MB limit
-            log.info("File too large: {}B", file.getSize());
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File size must be less than 1MB");
-        }
+        // Size is enforced by the service as the bytes arrive
     }
 }
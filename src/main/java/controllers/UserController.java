@@ -1,5 +1,9 @@
 package controllers;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -9,7 +13,9 @@ import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -19,15 +25,23 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.timgroup.statsd.StatsDClient;
 
+import configs.AccessTokenService;
+import configs.UserPrincipal;
+import dto.BulkUserResultDTO;
 import dto.UserDTO;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.Jwts;
 import jakarta.validation.Valid;
 import models.User;
+import services.BulkRegistrationService;
 import services.UserManagementService;
 
 @RestController
@@ -37,11 +51,20 @@ public class UserController {
     @Autowired
     private UserManagementService userService;
 
+    @Autowired
+    private BulkRegistrationService bulkRegistrationService;
+
     @Autowired
     private StatsDClient statsDClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
     
     @Value("${jwt.secret}")
     private String jwtSecret;
+
+    @Value("${registration.batch.max-size:10000}")
+    private int maxBatchSize;
     private static final Logger logger = LoggerFactory.getLogger(UserController.class);
 
     private static final Set<String> ALLOWED_CREATE_FIELDS = Set.of("email", "password", "firstName", "lastName");
@@ -61,6 +84,8 @@ public class UserController {
                 userDTO.getLastName()
             );
             return ResponseEntity.status(HttpStatus.CREATED).body(new UserDTO(user));
+        } catch (ResponseStatusException e) {
+            throw e;
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         } catch (RuntimeException e) {
@@ -68,10 +93,37 @@ public class UserController {
         }
     }
 
+    // Accepts a JSON array or newline-delimited JSON; rows are parsed as they stream in
+    @PostMapping(value = "/batch", consumes = { MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson" })
+    public ResponseEntity<?> createUsers(InputStream body) throws IOException {
+        List<UserDTO> rows = new ArrayList<>();
+        try (MappingIterator<UserDTO> iterator = objectMapper.readerFor(UserDTO.class).readValues(body)) {
+            while (iterator.hasNextValue()) {
+                if (rows.size() == maxBatchSize) {
+                    throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                        "At most " + maxBatchSize + " users per batch");
+                }
+                rows.add(iterator.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            logger.warn("Invalid bulk registration body: {}", e.getOriginalMessage());
+            return ResponseEntity.badRequest().body("Invalid request body");
+        }
+        if (rows.isEmpty()) {
+            return ResponseEntity.badRequest().body("No users in request body");
+        }
+
+        List<BulkUserResultDTO> results = bulkRegistrationService.registerAll(rows);
+        long created = results.stream().filter(r -> BulkUserResultDTO.CREATED.equals(r.getStatus())).count();
+        return ResponseEntity.ok(Map.of(
+            "created", created,
+            "failed", results.size() - created,
+            "results", results));
+    }
+
     @GetMapping("/self")
-    public ResponseEntity<UserDTO> getUserInfo() {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userService.getAuthenticatedUser(email);
+    public ResponseEntity<UserDTO> getUserInfo(@AuthenticationPrincipal UserPrincipal principal) {
+        User user = userService.getAuthenticatedUser(principal);
         return new ResponseEntity<>(new UserDTO(user), HttpStatus.OK);
     }
 
@@ -90,6 +142,8 @@ public class UserController {
 
             userService.updateUser(userDTO, email);
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch (ResponseStatusException e) {
+            throw e;
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>("Attempted to update disallowed fields", HttpStatus.BAD_REQUEST);
         } catch (RuntimeException e) {
@@ -108,6 +162,10 @@ public class UserController {
             .parseClaimsJws(token)
             .getBody();
             
+        if (AccessTokenService.ACCESS_TOKEN_TYPE.equals(claims.get(AccessTokenService.TOKEN_TYPE_CLAIM, String.class))) {
+            throw new IllegalArgumentException("Access tokens cannot be used for email verification");
+        }
+
         String email = claims.getSubject();
         MDC.put("user", email);
         logger.info("Token decoded successfully for user: {}", email);
@@ -0,0 +1,158 @@
+package data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.timgroup.statsd.StatsDClient;
+
+/**
+ * Bloom filter of registered emails, used to skip the existsByEmail query on
+ * registration when an email is definitely new.
+ *
+ * Rebuilt at startup by streaming the users table; until that finishes,
+ * {@link #mightContain(String)} answers "maybe" so callers fall back to the
+ * database. The unique constraint on users.email stays the final authority.
+ */
+@Component
+public class EmailBloomFilter {
+    private static final Logger logger = LoggerFactory.getLogger(EmailBloomFilter.class);
+
+    private final UserRepo userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final StatsDClient statsDClient;
+
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicLongArray bits;
+    private final AtomicLong insertions = new AtomicLong();
+    private volatile boolean ready = false;
+
+    @Autowired
+    public EmailBloomFilter(
+            UserRepo userRepository,
+            TransactionTemplate transactionTemplate,
+            StatsDClient statsDClient,
+            @Value("${registration.bloom.expected-insertions:1000000}") long expectedInsertions,
+            @Value("${registration.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.statsDClient = statsDClient;
+
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, (optimalBits + 63) / 64 * 64);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (bitCount / 64));
+        logger.info("EmailBloomFilter sized - bits: {}, hashes: {}, memory: {}KB", bitCount, hashCount, memoryBytes() / 1024);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildInBackground() {
+        Thread loader = new Thread(this::rebuild, "email-bloom-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    public void rebuild() {
+        long startTime = System.currentTimeMillis();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<String> emails = userRepository.streamAllEmails()) {
+                    emails.forEach(this::put);
+                }
+            });
+            ready = true;
+            long duration = System.currentTimeMillis() - startTime;
+            statsDClient.recordExecutionTime("registration.bloom.rebuild.time", duration);
+            logger.info("EmailBloomFilter loaded {} emails in {}ms", insertions.get(), duration);
+            reportMetrics();
+        } catch (Exception e) {
+            statsDClient.incrementCounter("registration.bloom.rebuild.error");
+            logger.error("Failed to build email Bloom filter, registration will always query the database: {}",
+                e.getMessage(), e);
+        }
+    }
+
+    public boolean mightContain(String email) {
+        if (!ready) {
+            return true;
+        }
+        long h1 = hash(email);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(String email) {
+        long h1 = hash(email);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(index);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(index, current, current | mask));
+        }
+        insertions.incrementAndGet();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // (1 - e^(-kn/m))^k for the current number of insertions
+    public double expectedFalsePositiveRate() {
+        double fill = 1 - Math.exp(-(double) hashCount * insertions.get() / bitCount);
+        return Math.pow(fill, hashCount);
+    }
+
+    public long memoryBytes() {
+        return bitCount / 8;
+    }
+
+    @Scheduled(fixedDelayString = "${registration.bloom.metrics-interval-ms:60000}")
+    public void reportMetrics() {
+        statsDClient.recordGaugeValue("registration.bloom.insertions", insertions.get());
+        statsDClient.recordGaugeValue("registration.bloom.memory.bytes", memoryBytes());
+        // StatsD gauges are integral; report the rate in parts per million
+        statsDClient.recordGaugeValue("registration.bloom.fpp.ppm", Math.round(expectedFalsePositiveRate() * 1_000_000));
+    }
+
+    private static long hash(String email) {
+        // FNV-1a 64
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : email.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long z) {
+        // SplitMix64 finalizer, used to derive the second hash
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
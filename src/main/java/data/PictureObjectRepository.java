@@ -0,0 +1,71 @@
+package data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import models.PictureObject;
+
+@Repository
+public interface PictureObjectRepository extends JpaRepository<PictureObject, String> {
+
+    /**
+     * Takes a reference, creating the row on first use, and returns whether
+     * the content is already in S3. Either statement leaves the row locked
+     * until commit, so a concurrent release cannot delete it meanwhile.
+     * Portable: when two first uploads of the same content race, the primary
+     * key rejects the second insert with a DataIntegrityViolationException,
+     * which leaves the transaction rollback-only; the caller retries it and
+     * then finds the row.
+     */
+    default boolean acquire(String hash, String contentType, LocalDateTime now) {
+        if (addReference(hash) == 1) {
+            return isStored(hash);
+        }
+        insertPending(hash, contentType, now);
+        return false;
+    }
+
+    @Modifying
+    @Query("update PictureObject o set o.refCount = o.refCount + 1 where o.hash = :hash")
+    int addReference(@Param("hash") String hash);
+
+    @Query("select o.stored from PictureObject o where o.hash = :hash")
+    boolean isStored(@Param("hash") String hash);
+
+    @Modifying
+    @Query(value = "INSERT INTO picture_objects (hash, content_type, ref_count, stored, created_at) "
+                 + "VALUES (:hash, :contentType, 1, false, :now)",
+           nativeQuery = true)
+    int insertPending(@Param("hash") String hash, @Param("contentType") String contentType,
+                      @Param("now") LocalDateTime now);
+
+    @Query("select o.renditions from PictureObject o where o.hash = :hash")
+    String findRenditions(@Param("hash") String hash);
+
+    @Modifying
+    @Query("update PictureObject o set o.stored = true, o.renditions = :renditions where o.hash = :hash")
+    int markStored(@Param("hash") String hash, @Param("renditions") String renditions);
+
+    @Modifying
+    @Query("update PictureObject o set o.refCount = o.refCount - 1 where o.hash = :hash")
+    int release(@Param("hash") String hash);
+
+    // 1 when that was the last reference and the S3 objects can go
+    @Modifying
+    @Query("delete from PictureObject o where o.hash = :hash and o.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    // Reservations still pending (never marked stored) long after their upload should have finished
+    @Query("select o.hash from PictureObject o where o.stored = false and o.createdAt < :cutoff")
+    List<String> findPendingCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query("delete from PictureObject o where o.hash = :hash and o.stored = false and o.createdAt < :cutoff")
+    int deletePendingCreatedBefore(@Param("hash") String hash, @Param("cutoff") LocalDateTime cutoff);
+}
@@ -1,13 +1,19 @@
 package data;
 
 import java.util.Optional;
+import java.util.UUID;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import models.ProfilePicture;
 
 @Repository
-public interface ProfilePictureRepository extends JpaRepository<ProfilePicture, String> {
+public interface ProfilePictureRepository extends JpaRepository<ProfilePicture, UUID> {
     Optional<ProfilePicture> findByUserId(Long userId);
+
+    @Query("select p from ProfilePicture p join fetch p.user u where u.id = :userId")
+    Optional<ProfilePicture> findWithUserByUserId(@Param("userId") Long userId);
 }
\ No newline at end of file
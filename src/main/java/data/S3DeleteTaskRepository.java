@@ -0,0 +1,41 @@
+package data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import models.S3DeleteTask;
+
+@Repository
+public interface S3DeleteTaskRepository extends JpaRepository<S3DeleteTask, Long> {
+
+    // SKIP LOCKED (-2) lets several drainer instances claim disjoint batches
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select t from S3DeleteTask t where t.deadLetteredAt is null and t.nextAttemptAt <= :now order by t.id")
+    List<S3DeleteTask> findDueForUpdate(@Param("now") LocalDateTime now, Pageable pageable);
+
+    @Query("select count(t) from S3DeleteTask t where t.deadLetteredAt is null")
+    long countPending();
+
+    @Query("select count(t) from S3DeleteTask t where t.deadLetteredAt is not null")
+    long countDeadLettered();
+
+    @Query("select min(t.createdAt) from S3DeleteTask t where t.deadLetteredAt is null")
+    LocalDateTime findOldestPendingCreatedAt();
+
+    // Waits on rows a drainer has claimed, so it returns only once their delete has been sent
+    @Modifying
+    @Query("delete from S3DeleteTask t where t.bucket = :bucket and (t.s3Key = :key or t.s3Key like :prefix)")
+    int deleteByKeyOrPrefix(@Param("bucket") String bucket, @Param("key") String key, @Param("prefix") String prefix);
+}
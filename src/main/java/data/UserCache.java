@@ -0,0 +1,185 @@
+package data;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.timgroup.statsd.StatsDClient;
+
+import models.User;
+
+/**
+ * In-process near-cache for {@link User} point lookups by email and id.
+ *
+ * Holds detached copies, so callers may read but must not save what they get
+ * back. Size is bounded (LRU) and entries expire after a TTL. Writers call
+ * {@link #invalidateAfterCommit(String)}; a load that raced with an
+ * invalidation is not cached, so a stale row cannot be re-inserted.
+ */
+@Component
+public class UserCache {
+    private static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+
+    private final UserRepo userRepository;
+    private final StatsDClient statsDClient;
+    private final int maxSize;
+    private final long ttlMillis;
+
+    private final Map<String, Entry> byEmail;
+    private final Map<Long, String> emailById = new HashMap<>();
+    private long invalidations = 0;
+
+    @Autowired
+    public UserCache(
+            UserRepo userRepository,
+            StatsDClient statsDClient,
+            @Value("${user.cache.max-size:10000}") int maxSize,
+            @Value("${user.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.statsDClient = statsDClient;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.byEmail = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > UserCache.this.maxSize) {
+                    emailById.remove(eldest.getValue().user.getId());
+                    UserCache.this.statsDClient.incrementCounter("user.cache.eviction");
+                    return true;
+                }
+                return false;
+            }
+        };
+        logger.info("UserCache initialized - maxSize: {}, ttl: {}s", maxSize, ttlSeconds);
+    }
+
+    public Optional<User> findByEmail(String email) {
+        User cached = lookup(email);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long stamp = stamp();
+        Optional<User> loaded = userRepository.findByEmail(email);
+        loaded.ifPresent(user -> put(user, stamp));
+        return loaded.map(UserCache::copyOf);
+    }
+
+    public Optional<User> findById(Long id) {
+        String email;
+        synchronized (this) {
+            email = emailById.get(id);
+        }
+        if (email != null) {
+            User cached = lookup(email);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        } else {
+            statsDClient.incrementCounter("user.cache.miss");
+        }
+        long stamp = stamp();
+        Optional<User> loaded = userRepository.findById(id);
+        loaded.ifPresent(user -> put(user, stamp));
+        return loaded.map(UserCache::copyOf);
+    }
+
+    public void invalidate(String email) {
+        synchronized (this) {
+            invalidations++;
+            Entry removed = byEmail.remove(email);
+            if (removed != null) {
+                emailById.remove(removed.user.getId());
+            }
+        }
+    }
+
+    // Drops the entry now and again once the surrounding transaction commits
+    public void invalidateAfterCommit(String email) {
+        invalidate(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(email);
+                }
+            });
+        }
+    }
+
+    public synchronized int size() {
+        return byEmail.size();
+    }
+
+    private User lookup(String email) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = byEmail.get(email);
+            if (entry == null) {
+                statsDClient.incrementCounter("user.cache.miss");
+                return null;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                byEmail.remove(email);
+                emailById.remove(entry.user.getId());
+                statsDClient.incrementCounter("user.cache.eviction");
+                statsDClient.incrementCounter("user.cache.miss");
+                return null;
+            }
+            statsDClient.incrementCounter("user.cache.hit");
+            return copyOf(entry.user);
+        }
+    }
+
+    private synchronized long stamp() {
+        return invalidations;
+    }
+
+    private void put(User user, long stamp) {
+        if (maxSize <= 0) {
+            return;
+        }
+        Entry entry = new Entry(copyOf(user), System.currentTimeMillis() + ttlMillis);
+        synchronized (this) {
+            if (stamp != invalidations) {
+                // A write happened while this row was loading; it may already be stale
+                return;
+            }
+            byEmail.put(user.getEmail(), entry);
+            emailById.put(user.getId(), user.getEmail());
+        }
+    }
+
+    private static User copyOf(User source) {
+        User user = new User();
+        user.setId(source.getId());
+        user.setEmail(source.getEmail());
+        user.setPassword(source.getPassword());
+        user.setFirstName(source.getFirstName());
+        user.setLastName(source.getLastName());
+        user.setAccountCreated(source.getAccountCreated());
+        user.setAccountUpdated(source.getAccountUpdated());
+        user.setEmailVerified(source.isEmailVerified());
+        return user;
+    }
+
+    private static final class Entry {
+        private final User user;
+        private final long expiresAt;
+
+        private Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,14 +1,70 @@
 package data;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
 import models.User;
 
 @Repository
 public interface UserRepo extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     boolean existsByEmail(String email);
+
+    @Query("select u.email from User u where u.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    // Must be consumed inside a transaction; the fetch size keeps the driver streaming
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("select u.email from User u")
+    Stream<String> streamAllEmails();
+
+    /**
+     * Inserts the user and returns its id, or empty when the email is taken.
+     * Portable: the unique constraint on users.email detects the duplicate,
+     * which leaves the surrounding transaction rollback-only, so a caller
+     * that gets empty must abort it.
+     */
+    default Optional<Long> insertIfAbsent(String email, String password, String firstName, String lastName,
+                                          LocalDateTime now) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword(password);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setAccountCreated(now);
+        user.setAccountUpdated(now);
+        user.setEmailVerified(false);
+        try {
+            return Optional.of(saveAndFlush(user).getId());
+        } catch (DataIntegrityViolationException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Null arguments leave the column unchanged; 0 rows means missing or unverified
+    @Modifying
+    @Query("update User u set u.firstName = coalesce(:firstName, u.firstName), "
+         + "u.lastName = coalesce(:lastName, u.lastName), "
+         + "u.password = coalesce(:password, u.password), "
+         + "u.accountUpdated = :now "
+         + "where u.email = :email and u.emailVerified = true")
+    int updateVerifiedProfile(@Param("email") String email, @Param("firstName") String firstName,
+                              @Param("lastName") String lastName, @Param("password") String password,
+                              @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update User u set u.emailVerified = true, u.accountUpdated = :now where u.email = :email")
+    int markEmailVerified(@Param("email") String email, @Param("now") LocalDateTime now);
 }
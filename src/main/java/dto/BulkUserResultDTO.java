@@ -0,0 +1,78 @@
+package dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one row of a bulk registration, in request order.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkUserResultDTO {
+    public static final String CREATED = "CREATED";
+    public static final String FAILED = "FAILED";
+
+    private int index;
+    private String email;
+    private String status;
+    private Long id;
+    private String error;
+
+    public BulkUserResultDTO() {}
+
+    public static BulkUserResultDTO created(int index, String email, Long id) {
+        BulkUserResultDTO result = new BulkUserResultDTO();
+        result.index = index;
+        result.email = email;
+        result.status = CREATED;
+        result.id = id;
+        return result;
+    }
+
+    public static BulkUserResultDTO failed(int index, String email, String error) {
+        BulkUserResultDTO result = new BulkUserResultDTO();
+        result.index = index;
+        result.email = email;
+        result.status = FAILED;
+        result.error = error;
+        return result;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -1,8 +1,10 @@
 package dto;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class ProfilePictureDTO {
@@ -19,6 +21,10 @@ public class ProfilePictureDTO {
     @JsonProperty("user_id")
     private String userId;
 
+    // Size in pixels -> URL; absent for pictures stored before renditions existed
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, String> renditions;
+
     // Getters and Setters
     public String getFileName() {
         return fileName;
@@ -59,4 +65,12 @@ public class ProfilePictureDTO {
     public void setUserId(String userId) {
         this.userId = userId;
     }
-}
\ No newline at end of file
+
+    public Map<String, String> getRenditions() {
+        return renditions;
+    }
+
+    public void setRenditions(Map<String, String> renditions) {
+        this.renditions = renditions;
+    }
+}
@@ -0,0 +1,72 @@
+package dto;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProfilePictureJobDTO {
+    @JsonProperty("job_id")
+    private String jobId;
+
+    private String status;
+
+    @JsonProperty("submitted_at")
+    private LocalDateTime submittedAt;
+
+    @JsonProperty("completed_at")
+    private LocalDateTime completedAt;
+
+    private ProfilePictureDTO picture;
+
+    private String error;
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(LocalDateTime submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public ProfilePictureDTO getPicture() {
+        return picture;
+    }
+
+    public void setPicture(ProfilePictureDTO picture) {
+        this.picture = picture;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
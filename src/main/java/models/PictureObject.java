@@ -0,0 +1,87 @@
+package models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * A content-addressed picture in S3, keyed by the SHA-256 of its bytes.
+ * Every {@link ProfilePicture} showing this content holds one reference;
+ * the S3 objects are deleted together with the last one.
+ */
+@Entity
+@Table(name = "picture_objects")
+public class PictureObject {
+
+    // Hex SHA-256 of the original upload
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(name = "content_type", nullable = false)
+    private String contentType;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    // False while pending: a reference is committed but the original and renditions are not yet in S3
+    @Column(nullable = false)
+    private boolean stored;
+
+    @Column(name = "renditions")
+    private String renditions;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public boolean isStored() {
+        return stored;
+    }
+
+    public void setStored(boolean stored) {
+        this.stored = stored;
+    }
+
+    public String getRenditions() {
+        return renditions;
+    }
+
+    public void setRenditions(String renditions) {
+        this.renditions = renditions;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
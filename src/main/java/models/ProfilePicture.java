@@ -11,17 +11,16 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.Table;
 
-import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.UuidGenerator;
 
 @Entity
 @Table(name = "profile_pictures")
 public class ProfilePicture {
+    // Native 16-byte uuid column rather than VARCHAR(36)
     @Id
-    @GeneratedValue(generator = "uuid2")
-    @GenericGenerator(name = "uuid2", strategy = "uuid2")
-    @Column(columnDefinition = "VARCHAR(36)")
-    private String id;
+    @GeneratedValue
+    @UuidGenerator
+    private UUID id;
     
     @OneToOne  // Changed to OneToOne since a user should have only one profile picture
     @JoinColumn(name = "user_id", unique = true)  // Added unique constraint
@@ -39,17 +38,25 @@ public class ProfilePicture {
     @Column(name = "upload_date", nullable = false)
     private LocalDateTime uploadDate;
 
+    // SHA-256 of the content, which is stored once under content/<hash>; null for older per-user objects
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Comma-separated rendition sizes stored next to the original, e.g. "64,128,512"
+    @Column(name = "renditions")
+    private String renditions;
+
     // Default constructor
     public ProfilePicture() {
         this.uploadDate = LocalDateTime.now();
     }
 
     // Getters and Setters
-    public String getId() {
+    public UUID getId() {
         return id;
     }
 
-    public void setId(String id) {
+    public void setId(UUID id) {
         this.id = id;
     }
 
@@ -92,4 +99,20 @@ public class ProfilePicture {
     public void setUploadDate(LocalDateTime uploadDate) {
         this.uploadDate = uploadDate;
     }
-}
\ No newline at end of file
+
+    public String getRenditions() {
+        return renditions;
+    }
+
+    public void setRenditions(String renditions) {
+        this.renditions = renditions;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+}
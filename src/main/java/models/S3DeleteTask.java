@@ -0,0 +1,128 @@
+package models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+/**
+ * An S3 object waiting to be deleted by the S3DeleteDrainer. Rows that
+ * keep failing are dead-lettered (kept, with their last error) rather than
+ * retried forever.
+ */
+@Entity
+@Table(name = "s3_delete_queue", indexes = {
+    @Index(name = "idx_s3_delete_next_attempt", columnList = "next_attempt_at"),
+    @Index(name = "idx_s3_delete_key", columnList = "s3_key")
+})
+public class S3DeleteTask {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "s3_delete_queue_seq")
+    @SequenceGenerator(name = "s3_delete_queue_seq", sequenceName = "s3_delete_queue_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String bucket;
+
+    @Column(name = "s3_key", nullable = false, length = 1024)
+    private String s3Key;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(nullable = false)
+    private int attempts = 0;
+
+    @Column(name = "last_error", length = 512)
+    private String lastError;
+
+    // Set once max-attempts is reached; the drainer no longer picks the row up
+    @Column(name = "dead_lettered_at")
+    private LocalDateTime deadLetteredAt;
+
+    public S3DeleteTask() {
+        this.createdAt = LocalDateTime.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+
+    public S3DeleteTask(String bucket, String s3Key) {
+        this();
+        this.bucket = bucket;
+        this.s3Key = s3Key;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
+    public String getS3Key() {
+        return s3Key;
+    }
+
+    public void setS3Key(String s3Key) {
+        this.s3Key = s3Key;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getDeadLetteredAt() {
+        return deadLetteredAt;
+    }
+
+    public void setDeadLetteredAt(LocalDateTime deadLetteredAt) {
+        this.deadLetteredAt = deadLetteredAt;
+    }
+}
@@ -0,0 +1,134 @@
+package services;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.timgroup.statsd.StatsDClient;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.FileTransformerConfiguration;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * {@link PictureStorage} on the v2 {@link S3AsyncClient} (see S3Config):
+ * requests go out on a Netty event loop and no thread waits for the reply.
+ * Continuations run on the SDK's response executor, so callers hand off
+ * anything that blocks (ProfilePictureService commits uploads on its own
+ * executor).
+ */
+@Service
+@ConditionalOnProperty(name = "profile.picture.storage.engine", havingValue = "async")
+public class AsyncPictureStorage implements PictureStorage {
+
+    private final S3AsyncClient s3AsyncClient;
+    private final StatsDClient statsDClient;
+    private final String bucketName;
+
+    @Autowired
+    public AsyncPictureStorage(S3AsyncClient s3AsyncClient, StatsDClient statsDClient,
+                               @Value("${aws.s3.bucket:}") String bucketName) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.statsDClient = statsDClient;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, byte[] content, String contentType) {
+        PutObjectRequest request = PutObjectRequest.builder()
+            .bucket(bucketName)
+            .key(key)
+            .contentType(contentType)
+            .contentLength((long) content.length)
+            .build();
+        return timed("put", s3AsyncClient.putObject(request, AsyncRequestBody.fromBytes(content))
+            .thenApply(response -> null));
+    }
+
+    @Override
+    public CompletableFuture<Void> copy(String sourceKey, String targetKey) {
+        CopyObjectRequest request = CopyObjectRequest.builder()
+            .sourceBucket(bucketName)
+            .sourceKey(sourceKey)
+            .destinationBucket(bucketName)
+            .destinationKey(targetKey)
+            .build();
+        return timed("copy", s3AsyncClient.copyObject(request).thenApply(response -> null));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        DeleteObjectRequest request = DeleteObjectRequest.builder().bucket(bucketName).key(key).build();
+        return timed("delete", s3AsyncClient.deleteObject(request).thenApply(response -> null));
+    }
+
+    @Override
+    public CompletableFuture<Long> contentLength(String key) {
+        HeadObjectRequest request = HeadObjectRequest.builder().bucket(bucketName).key(key).build();
+        return timed("head", s3AsyncClient.headObject(request).thenApply(response -> response.contentLength()));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> readRange(String key, long start, long end) {
+        GetObjectRequest request = GetObjectRequest.builder()
+            .bucket(bucketName)
+            .key(key)
+            .range("bytes=" + start + "-" + end)
+            .build();
+        return timed("get", s3AsyncClient.getObject(request, AsyncResponseTransformer.toBytes())
+            .thenApply(bytes -> bytes.asByteArray()));
+    }
+
+    @Override
+    public CompletableFuture<StoredObject> download(String key, Path target) {
+        GetObjectRequest request = GetObjectRequest.builder().bucket(bucketName).key(key).build();
+        return timed("get", s3AsyncClient.getObject(request,
+                AsyncResponseTransformer.toFile(target, FileTransformerConfiguration.defaultCreateOrReplaceExisting()))
+            .thenApply(response -> new StoredObject(response.eTag(), response.contentType())));
+    }
+
+    private <T> CompletableFuture<T> timed(String operation, CompletableFuture<T> call) {
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        call.whenComplete((value, error) -> {
+            statsDClient.recordExecutionTime("s3.async." + operation + ".time", System.currentTimeMillis() - startTime);
+            if (error == null) {
+                result.complete(value);
+            } else {
+                statsDClient.incrementCounter("s3.async." + operation + ".error");
+                result.completeExceptionally(translate(error));
+            }
+        });
+        return result;
+    }
+
+    // v2 failures as the v1 exceptions the rest of the service already handles
+    static Throwable translate(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof AwsServiceException service) {
+            AmazonS3Exception translated = new AmazonS3Exception(service.getMessage(), service);
+            translated.setStatusCode(service.statusCode());
+            if (service.awsErrorDetails() != null) {
+                translated.setErrorCode(service.awsErrorDetails().errorCode());
+            }
+            return translated;
+        }
+        if (cause instanceof software.amazon.awssdk.core.exception.SdkClientException) {
+            return new com.amazonaws.SdkClientException(cause.getMessage(), cause);
+        }
+        return cause;
+    }
+}
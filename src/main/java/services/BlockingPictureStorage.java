@@ -0,0 +1,98 @@
+package services;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+/**
+ * {@link PictureStorage} on the blocking v1 client: every call runs on the
+ * caller's thread and the returned future is already complete.
+ */
+@Service
+@ConditionalOnProperty(name = "profile.picture.storage.engine", havingValue = "blocking", matchIfMissing = true)
+public class BlockingPictureStorage implements PictureStorage {
+
+    private final AmazonS3 amazonS3;
+    private final String bucketName;
+
+    @Autowired
+    public BlockingPictureStorage(AmazonS3 amazonS3, @Value("${aws.s3.bucket:}") String bucketName) {
+        this.amazonS3 = amazonS3;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, byte[] content, String contentType) {
+        return call(() -> {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(contentType);
+            metadata.setContentLength(content.length);
+            amazonS3.putObject(bucketName, key, new ByteArrayInputStream(content), metadata);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> copy(String sourceKey, String targetKey) {
+        return call(() -> {
+            amazonS3.copyObject(bucketName, sourceKey, bucketName, targetKey);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        return call(() -> {
+            amazonS3.deleteObject(bucketName, key);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> contentLength(String key) {
+        return call(() -> amazonS3.getObjectMetadata(bucketName, key).getContentLength());
+    }
+
+    @Override
+    public CompletableFuture<byte[]> readRange(String key, long start, long end) {
+        return call(() -> {
+            try (S3Object object = amazonS3.getObject(new GetObjectRequest(bucketName, key).withRange(start, end))) {
+                return object.getObjectContent().readAllBytes();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<StoredObject> download(String key, Path target) {
+        return call(() -> {
+            try (S3Object object = amazonS3.getObject(bucketName, key)) {
+                try (InputStream content = object.getObjectContent()) {
+                    Files.copy(content, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return new StoredObject(object.getObjectMetadata().getETag(), object.getObjectMetadata().getContentType());
+            }
+        });
+    }
+
+    private static <T> CompletableFuture<T> call(Callable<T> operation) {
+        try {
+            return CompletableFuture.completedFuture(operation.call());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
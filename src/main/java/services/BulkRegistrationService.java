@@ -0,0 +1,211 @@
+package services;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.timgroup.statsd.StatsDClient;
+
+import data.EmailBloomFilter;
+import data.UserRepo;
+import dto.BulkUserResultDTO;
+import dto.UserDTO;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import models.User;
+
+/**
+ * Registers many users in one call. Rows are validated with the same rules
+ * as {@link UserManagementService#createUser}, existing emails are found with
+ * one IN query per chunk, passwords are hashed in parallel, and users plus
+ * their outbox events are written with JDBC batching, one transaction per
+ * chunk. Every row gets its own result; one bad row never fails the others.
+ */
+@Service
+public class BulkRegistrationService {
+    private static final Logger logger = LoggerFactory.getLogger(BulkRegistrationService.class);
+    static final String DUPLICATE_EMAIL = "User with this email already exists";
+
+    private final UserRepo userRepository;
+    private final PasswordHashingService passwordHashingService;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxService outboxService;
+    private final EmailBloomFilter emailBloomFilter;
+    private final Validator validator;
+    private final StatsDClient statsDClient;
+
+    // Rows per transaction and per IN (...) lookup
+    @Value("${registration.batch.chunk-size:1000}")
+    private int chunkSize;
+
+    @Autowired
+    public BulkRegistrationService(
+            UserRepo userRepository,
+            PasswordHashingService passwordHashingService,
+            TransactionTemplate transactionTemplate,
+            OutboxService outboxService,
+            EmailBloomFilter emailBloomFilter,
+            Validator validator,
+            StatsDClient statsDClient) {
+        this.userRepository = userRepository;
+        this.passwordHashingService = passwordHashingService;
+        this.transactionTemplate = transactionTemplate;
+        this.outboxService = outboxService;
+        this.emailBloomFilter = emailBloomFilter;
+        this.validator = validator;
+        this.statsDClient = statsDClient;
+    }
+
+    public List<BulkUserResultDTO> registerAll(List<UserDTO> rows) {
+        long startTime = System.currentTimeMillis();
+        logger.info("Bulk registration of {} users", rows.size());
+        statsDClient.incrementCounter("api.user.bulk.attempt");
+        statsDClient.count("api.user.bulk.rows", rows.size());
+
+        BulkUserResultDTO[] results = new BulkUserResultDTO[rows.size()];
+        List<Integer> accepted = validate(rows, results);
+
+        for (int from = 0; from < accepted.size(); from += chunkSize) {
+            List<Integer> chunk = accepted.subList(from, Math.min(from + chunkSize, accepted.size()));
+            registerChunk(rows, chunk, results);
+        }
+
+        long created = Arrays.stream(results).filter(r -> BulkUserResultDTO.CREATED.equals(r.getStatus())).count();
+        statsDClient.count("api.user.bulk.created", created);
+        statsDClient.count("api.user.bulk.failed", rows.size() - created);
+        statsDClient.recordExecutionTime("api.user.bulk.time", System.currentTimeMillis() - startTime);
+        logger.info("Bulk registration finished - created: {}, failed: {}, took: {}ms",
+            created, rows.size() - created, System.currentTimeMillis() - startTime);
+        return Arrays.asList(results);
+    }
+
+    // Fills in results for rejected rows and returns the indexes still to insert
+    private List<Integer> validate(List<UserDTO> rows, BulkUserResultDTO[] results) {
+        List<Integer> accepted = new ArrayList<>(rows.size());
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < rows.size(); i++) {
+            UserDTO row = rows.get(i);
+            Set<ConstraintViolation<UserDTO>> violations = validator.validate(row);
+            if (!violations.isEmpty()) {
+                String message = violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted(Comparator.naturalOrder())
+                    .findFirst().get();
+                results[i] = BulkUserResultDTO.failed(i, row.getEmail(), message);
+            } else if (!UserManagementService.isValidEmail(row.getEmail())) {
+                results[i] = BulkUserResultDTO.failed(i, row.getEmail(), "Invalid email format");
+            } else if (!seen.add(row.getEmail())) {
+                results[i] = BulkUserResultDTO.failed(i, row.getEmail(), "Duplicate email in request");
+            } else {
+                accepted.add(i);
+            }
+        }
+        return accepted;
+    }
+
+    private void registerChunk(List<UserDTO> rows, List<Integer> chunk, BulkUserResultDTO[] results) {
+        List<Integer> remaining = rejectExisting(rows, chunk, results, true);
+        if (remaining.isEmpty()) {
+            return;
+        }
+
+        List<String> hashes = passwordHashingService.hashAll(
+            remaining.stream().map(i -> rows.get(i).getPassword()).toList());
+
+        List<User> users;
+        try {
+            users = insert(rows, remaining, hashes);
+        } catch (DataIntegrityViolationException e) {
+            // Someone registered one of these emails since the lookup; drop those and retry once
+            logger.warn("Bulk insert hit an existing email, retrying chunk: {}", e.getMessage());
+            statsDClient.incrementCounter("api.user.bulk.retry");
+            List<Integer> retry = rejectExisting(rows, remaining, results, false);
+            List<String> retryHashes = new ArrayList<>(retry.size());
+            for (Integer index : retry) {
+                retryHashes.add(hashes.get(remaining.indexOf(index)));
+            }
+            try {
+                users = insert(rows, retry, retryHashes);
+                remaining = retry;
+            } catch (DataIntegrityViolationException retryFailure) {
+                logger.error("Bulk insert failed twice for chunk of {}: {}", retry.size(), retryFailure.getMessage());
+                for (Integer index : retry) {
+                    results[index] = BulkUserResultDTO.failed(index, rows.get(index).getEmail(),
+                        "Registration failed, please retry");
+                }
+                return;
+            }
+        }
+
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            int index = remaining.get(i);
+            emailBloomFilter.put(user.getEmail());
+            results[index] = BulkUserResultDTO.created(index, user.getEmail(), user.getId());
+        }
+    }
+
+    // One IN query for the emails the Bloom filter cannot rule out. The filter only
+    // knows this instance's inserts, so the retry after a conflict queries every email.
+    private List<Integer> rejectExisting(List<UserDTO> rows, List<Integer> chunk, BulkUserResultDTO[] results,
+            boolean useBloomFilter) {
+        List<String> candidates = chunk.stream()
+            .map(i -> rows.get(i).getEmail())
+            .filter(email -> !useBloomFilter || emailBloomFilter.mightContain(email))
+            .toList();
+        Set<String> existing = candidates.isEmpty()
+            ? Set.of()
+            : new HashSet<>(userRepository.findExistingEmails(candidates));
+        statsDClient.count("registration.bloom.skipped", chunk.size() - candidates.size());
+
+        List<Integer> remaining = new ArrayList<>(chunk.size());
+        for (Integer index : chunk) {
+            String email = rows.get(index).getEmail();
+            if (existing.contains(email)) {
+                results[index] = BulkUserResultDTO.failed(index, email, DUPLICATE_EMAIL);
+            } else {
+                remaining.add(index);
+            }
+        }
+        return remaining;
+    }
+
+    private List<User> insert(List<UserDTO> rows, List<Integer> indexes, List<String> hashes) {
+        if (indexes.isEmpty()) {
+            return List.of();
+        }
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<User> users = new ArrayList<>(indexes.size());
+            for (int i = 0; i < indexes.size(); i++) {
+                UserDTO row = rows.get(indexes.get(i));
+                User user = new User();
+                user.setEmail(row.getEmail());
+                user.setPassword(hashes.get(i));
+                user.setFirstName(row.getFirstName());
+                user.setLastName(row.getLastName());
+                user.setAccountCreated(now);
+                user.setAccountUpdated(now);
+                user.setEmailVerified(false);
+                users.add(user);
+            }
+            // Pooled sequence ids let Hibernate batch these inserts
+            List<User> saved = userRepository.saveAll(users);
+            userRepository.flush();
+            outboxService.enqueueUserRegistrations(saved);
+            return saved;
+        });
+    }
+}
@@ -0,0 +1,221 @@
+package services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.timgroup.statsd.StatsDClient;
+
+import data.OutboxEventRepository;
+import models.OutboxEvent;
+
+/**
+ * Drains the outbox table to SNS with at-least-once delivery.
+ *
+ * Each pass claims a batch of due events in a short transaction (pushing
+ * their next attempt out by a lease so other instances skip them), hands them
+ * to the {@link SNSBatchPublisher} outside any transaction and waits for the
+ * whole batch up to one deadline well inside the lease. A second short
+ * transaction then deletes the published events and reschedules the rest
+ * with exponential backoff.
+ */
+@Service
+public class OutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final SNSBatchPublisher snsBatchPublisher;
+    private final StatsDClient statsDClient;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${outbox.relay.enabled:true}")
+    private boolean enabled;
+
+    @Value("${outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${outbox.relay.lease-seconds:60}")
+    private long leaseSeconds;
+
+    // Capped at half the lease, so a pass settles its rows before another instance may claim them
+    @Value("${outbox.relay.publish-timeout-ms:10000}")
+    private long publishTimeoutMillis;
+
+    @Value("${outbox.relay.backoff-ms:1000}")
+    private long backoffMillis;
+
+    @Value("${outbox.relay.max-backoff-ms:300000}")
+    private long maxBackoffMillis;
+
+    @Autowired
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, SNSBatchPublisher snsBatchPublisher,
+                       StatsDClient statsDClient, TransactionTemplate transactionTemplate) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.snsBatchPublisher = snsBatchPublisher;
+        this.statsDClient = statsDClient;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:1000}")
+    public void scheduledDrain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            drainBacklog();
+        } catch (Exception e) {
+            logger.error("Outbox relay pass failed: {}", e.getMessage(), e);
+            statsDClient.incrementCounter("outbox.relay.error");
+        }
+    }
+
+    // Runs one pass and returns the number of events published
+    public int drain() {
+        return relayBatch().published;
+    }
+
+    /**
+     * Runs passes while they come back full, so a burst such as a bulk
+     * registration is not paced by the interval. Returns the number of
+     * events published.
+     */
+    int drainBacklog() {
+        int published = 0;
+        Pass pass;
+        do {
+            pass = relayBatch();
+            published += pass.published;
+        } while (pass.claimed >= batchSize);
+        return published;
+    }
+
+    private Pass relayBatch() {
+        List<OutboxEvent> claimed = transactionTemplate.execute(status -> claimBatch());
+        if (claimed.isEmpty()) {
+            reportDepth();
+            return new Pass(0, 0);
+        }
+
+        List<CompletableFuture<String>> results = new ArrayList<>(claimed.size());
+        for (OutboxEvent event : claimed) {
+            results.add(snsBatchPublisher.submit(event.getPayload()));
+        }
+        awaitAll(results);
+
+        List<Long> published = new ArrayList<>();
+        Map<OutboxEvent, Throwable> failed = new LinkedHashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < claimed.size(); i++) {
+            OutboxEvent event = claimed.get(i);
+            Throwable error = failureOf(results.get(i));
+            if (error == null) {
+                published.add(event.getId());
+                statsDClient.incrementCounter("outbox.publish.success");
+                statsDClient.recordExecutionTime("outbox.relay.lag",
+                    Duration.between(event.getCreatedAt(), now).toMillis());
+            } else {
+                failed.put(event, error);
+            }
+        }
+
+        // One transaction for the whole batch, however it went
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!published.isEmpty()) {
+                outboxEventRepository.deletePublished(published);
+            }
+            failed.forEach((event, error) -> markFailed(event, error, now));
+        });
+
+        reportDepth();
+        return new Pass(claimed.size(), published.size());
+    }
+
+    // Waits for every publish up to one deadline; what has not settled by then counts as failed
+    private void awaitAll(List<CompletableFuture<String>> results) {
+        long timeoutMillis = Math.min(publishTimeoutMillis, TimeUnit.SECONDS.toMillis(leaseSeconds) / 2);
+        try {
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // Sorted out per event by failureOf
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Throwable failureOf(CompletableFuture<String> result) {
+        if (!result.isDone()) {
+            return new TimeoutException("SNS publish did not complete in time");
+        }
+        try {
+            result.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() == null ? e : e.getCause();
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private void markFailed(OutboxEvent event, Throwable e, LocalDateTime now) {
+        int attempts = event.getAttempts() + 1;
+        LocalDateTime nextAttempt = now.plusNanos(backoffFor(attempts) * 1_000_000);
+        String error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        if (error.length() > 512) {
+            error = error.substring(0, 512);
+        }
+        outboxEventRepository.markFailed(event.getId(), attempts, nextAttempt, error);
+
+        statsDClient.incrementCounter("outbox.publish.error");
+        logger.warn("Failed to publish outbox event {} (attempt {}), retrying at {}: {}",
+            event.getId(), attempts, nextAttempt, error);
+    }
+
+    private List<OutboxEvent> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> due = outboxEventRepository.findDueForUpdate(now, PageRequest.of(0, batchSize));
+        LocalDateTime leaseUntil = now.plusSeconds(leaseSeconds);
+        for (OutboxEvent event : due) {
+            event.setNextAttemptAt(leaseUntil);
+        }
+        return due;
+    }
+
+    long backoffFor(int attempts) {
+        long backoff = backoffMillis << Math.min(attempts - 1, 20);
+        return Math.min(backoff, maxBackoffMillis);
+    }
+
+    private static final class Pass {
+        private final int claimed;
+        private final int published;
+
+        Pass(int claimed, int published) {
+            this.claimed = claimed;
+            this.published = published;
+        }
+    }
+
+    private void reportDepth() {
+        statsDClient.recordGaugeValue("outbox.depth", outboxEventRepository.count());
+        LocalDateTime oldest = outboxEventRepository.findOldestCreatedAt();
+        statsDClient.recordGaugeValue("outbox.oldest.age",
+            oldest == null ? 0 : Duration.between(oldest, LocalDateTime.now()).toMillis());
+    }
+}
@@ -0,0 +1,57 @@
+package services;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.timgroup.statsd.StatsDClient;
+
+import data.OutboxEventRepository;
+import models.OutboxEvent;
+import models.User;
+
+/**
+ * Writes events to the outbox table inside the caller's transaction; the
+ * {@link OutboxRelay} delivers them to SNS after commit.
+ */
+@Service
+public class OutboxService {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxService.class);
+    public static final String USER_REGISTERED = "USER_REGISTERED";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final SNSService snsService;
+    private final StatsDClient statsDClient;
+
+    @Autowired
+    public OutboxService(OutboxEventRepository outboxEventRepository, SNSService snsService, StatsDClient statsDClient) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.snsService = snsService;
+        this.statsDClient = statsDClient;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueUserRegistration(Long userId, String email) {
+        String payload = snsService.buildUserRegistrationMessage(userId, email);
+        outboxEventRepository.save(new OutboxEvent(USER_REGISTERED, payload));
+        statsDClient.incrementCounter("outbox.enqueued");
+        logger.info("Queued verification event for user ID: {}", userId);
+    }
+
+    // One saveAll so the rows go out in the same JDBC batches as the users
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueUserRegistrations(List<User> users) {
+        List<OutboxEvent> events = users.stream()
+            .map(user -> new OutboxEvent(USER_REGISTERED,
+                snsService.buildUserRegistrationMessage(user.getId(), user.getEmail())))
+            .toList();
+        outboxEventRepository.saveAll(events);
+        statsDClient.count("outbox.enqueued", events.size());
+        logger.info("Queued {} verification events", events.size());
+    }
+}
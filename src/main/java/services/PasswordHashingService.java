@@ -0,0 +1,173 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.timgroup.statsd.StatsDClient;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs BCrypt hashing on a dedicated, size-limited pool so a burst of
+ * signups cannot tie up every request thread. When the pool and its queue
+ * are full, callers get a 503 immediately instead of waiting.
+ *
+ * Bulk registration hashes on a second, smaller pool with its own queue,
+ * so a large batch can neither take the signup threads nor fill the queue
+ * single signups rely on.
+ */
+@Service
+public class PasswordHashingService {
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final StatsDClient statsDClient;
+
+    // 0 means one thread per available core
+    @Value("${hashing.threads:0}")
+    private int threads;
+
+    @Value("${hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${hashing.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    // 0 means a quarter of the available cores, at least one
+    @Value("${hashing.bulk-threads:0}")
+    private int bulkThreads;
+
+    @Value("${hashing.bulk-queue-capacity:64}")
+    private int bulkQueueCapacity;
+
+    private ThreadPoolExecutor executor;
+    private ThreadPoolExecutor bulkExecutor;
+    private int bulkPoolSize;
+
+    @Autowired
+    public PasswordHashingService(BCryptPasswordEncoder passwordEncoder, StatsDClient statsDClient) {
+        this.passwordEncoder = passwordEncoder;
+        this.statsDClient = statsDClient;
+    }
+
+    @PostConstruct
+    public void start() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        bulkPoolSize = bulkThreads > 0 ? bulkThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        executor = newPool("password-hashing", poolSize, queueCapacity);
+        bulkExecutor = newPool("password-hashing-bulk", bulkPoolSize, bulkQueueCapacity);
+        logger.info("PasswordHashingService started - threads: {}, queueCapacity: {}, bulkThreads: {}, bulkQueueCapacity: {}",
+            poolSize, queueCapacity, bulkPoolSize, bulkQueueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        bulkExecutor.shutdownNow();
+    }
+
+    private static ThreadPoolExecutor newPool(String prefix, int size, int capacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(capacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, prefix + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public String hash(String rawPassword) {
+        long startTime = System.currentTimeMillis();
+        Future<String> result;
+        try {
+            result = executor.submit(() -> passwordEncoder.encode(rawPassword));
+        } catch (RejectedExecutionException e) {
+            statsDClient.incrementCounter("hashing.rejected");
+            logger.warn("Password hashing pool saturated, rejecting request");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server busy, please retry");
+        }
+        statsDClient.recordGaugeValue("hashing.queue.depth", executor.getQueue().size());
+
+        try {
+            String hash = result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            statsDClient.recordExecutionTime("hashing.time", System.currentTimeMillis() - startTime);
+            return hash;
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            statsDClient.incrementCounter("hashing.timeout");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server busy, please retry");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Request interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Hashes a batch on the bulk pool, keeping at most one task per bulk
+     * thread in flight so one batch cannot fill the bulk queue either.
+     * Results are in input order.
+     */
+    public List<String> hashAll(List<String> rawPasswords) {
+        long startTime = System.currentTimeMillis();
+        List<Future<String>> results = new ArrayList<>(rawPasswords.size());
+        try {
+            for (int i = 0; i < rawPasswords.size(); i++) {
+                if (i >= bulkPoolSize) {
+                    // Wait for the oldest in-flight hash before submitting another
+                    results.get(i - bulkPoolSize).get(timeoutMillis, TimeUnit.MILLISECONDS);
+                }
+                String rawPassword = rawPasswords.get(i);
+                try {
+                    results.add(bulkExecutor.submit(() -> passwordEncoder.encode(rawPassword)));
+                } catch (RejectedExecutionException e) {
+                    statsDClient.incrementCounter("hashing.bulk.rejected");
+                    logger.warn("Password hashing pool saturated, rejecting batch of {}", rawPasswords.size());
+                    throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server busy, please retry");
+                }
+            }
+
+            List<String> hashes = new ArrayList<>(results.size());
+            for (Future<String> result : results) {
+                hashes.add(result.get(timeoutMillis, TimeUnit.MILLISECONDS));
+            }
+            statsDClient.recordExecutionTime("hashing.batch.time", System.currentTimeMillis() - startTime);
+            return hashes;
+        } catch (TimeoutException e) {
+            results.forEach(result -> result.cancel(true));
+            statsDClient.incrementCounter("hashing.timeout");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server busy, please retry");
+        } catch (InterruptedException e) {
+            results.forEach(result -> result.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Request interrupted", e);
+        } catch (ExecutionException e) {
+            results.forEach(result -> result.cancel(true));
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        } catch (ResponseStatusException e) {
+            results.forEach(result -> result.cancel(true));
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.timgroup.statsd.StatsDClient;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Node-local disk copy of picture objects, filled from S3 on a miss and
+ * evicted least-recently-used once profile.picture.disk-cache.max-bytes is
+ * exceeded.
+ *
+ * Everything needed to serve a file is in its name,
+ * {@code <sha256 of S3 key>_<S3 ETag>.<png|jpg>}, so the index is rebuilt
+ * from a directory listing on startup. File modification times record last
+ * use and give the rebuilt index its LRU order. Concurrent misses on the
+ * same key share one S3 download, which goes through {@link PictureStorage}
+ * so that with the async engine no thread waits on it.
+ *
+ * A file being served is pinned ({@link #acquireAsync} / {@link #release});
+ * evicting or invalidating it only drops it from the index, and the file is
+ * deleted once the last pin is released. Tomcat's sendfile opens the file
+ * by name after the handler has returned, so a sendfile response instead
+ * takes a {@link #lease} that keeps the file for a fixed time; once Tomcat
+ * has it open, deleting the name no longer affects the transfer. Retired
+ * files whose lease has run out are deleted by {@link #deleteRetired}.
+ */
+@Service
+public class PictureDiskCache {
+    private static final Logger logger = LoggerFactory.getLogger(PictureDiskCache.class);
+
+    private final PictureStorage pictureStorage;
+    private final StatsDClient statsDClient;
+    private final Path directory;
+    private final long maxBytes;
+
+    private final Map<String, CachedFile> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<CachedFile>> loading = new ConcurrentHashMap<>();
+    // Dropped from the index while pinned or leased; deleted once neither holds them
+    private final List<CachedFile> retired = new ArrayList<>();
+    private long totalBytes = 0;
+
+    @Autowired
+    public PictureDiskCache(
+            PictureStorage pictureStorage,
+            StatsDClient statsDClient,
+            @Value("${profile.picture.disk-cache.dir:${java.io.tmpdir}/profile-picture-cache}") String directory,
+            @Value("${profile.picture.disk-cache.max-bytes:1073741824}") long maxBytes) {
+        this.pictureStorage = pictureStorage;
+        this.statsDClient = statsDClient;
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.forEach(files::add);
+        }
+        // Oldest first, so the most recently used files end up at the young end of the LRU order
+        files.sort(Comparator.comparing(PictureDiskCache::lastModified));
+        List<Path> stale = new ArrayList<>();
+        synchronized (this) {
+            for (Path file : files) {
+                CachedFile cached = parse(file);
+                if (cached == null) {
+                    // Partial downloads from before a crash, or files we did not write
+                    stale.add(file);
+                    continue;
+                }
+                CachedFile replaced = index.put(cached.fileKey, cached);
+                if (replaced != null) {
+                    totalBytes -= replaced.size;
+                    stale.add(replaced.path);
+                }
+                totalBytes += cached.size;
+            }
+        }
+        stale.forEach(PictureDiskCache::deleteQuietly);
+        evict();
+        logger.info("PictureDiskCache started - dir: {}, entries: {}, bytes: {}, maxBytes: {}",
+            directory, size(), totalBytes(), maxBytes);
+    }
+
+    /**
+     * Returns the cached copy of the object, downloading it first on a miss.
+     * S3 errors (including 404) propagate unchanged.
+     */
+    public CachedFile get(String s3Key) throws IOException {
+        return join(getAsync(s3Key));
+    }
+
+    /**
+     * As {@link #get}, without waiting: a hit is an already completed future,
+     * a miss completes when the download has been installed. Fails with the
+     * S3 error (or IOException) that {@link #get} would throw.
+     */
+    public CompletableFuture<CachedFile> getAsync(String s3Key) {
+        String fileKey = fileKey(s3Key);
+        CachedFile cached = lookup(fileKey);
+        if (cached != null) {
+            statsDClient.incrementCounter("picture.disk_cache.hit");
+            return CompletableFuture.completedFuture(cached);
+        }
+        statsDClient.incrementCounter("picture.disk_cache.miss");
+
+        CompletableFuture<CachedFile> mine = new CompletableFuture<>();
+        CompletableFuture<CachedFile> inFlight = loading.putIfAbsent(fileKey, mine);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        long startTime = System.currentTimeMillis();
+        Path temp;
+        try {
+            temp = Files.createTempFile(directory, fileKey, ".tmp");
+        } catch (IOException e) {
+            loading.remove(fileKey);
+            mine.completeExceptionally(e);
+            return mine;
+        }
+        pictureStorage.download(s3Key, temp)
+            .thenApply(stored -> install(fileKey, temp, stored, startTime))
+            .whenComplete((loaded, error) -> {
+                deleteQuietly(temp);
+                loading.remove(fileKey);
+                if (error == null) {
+                    mine.complete(loaded);
+                } else {
+                    mine.completeExceptionally(unwrap(error));
+                }
+            });
+        return mine;
+    }
+
+    /**
+     * As {@link #getAsync}, with the file pinned so it stays on disk until
+     * {@link #release} is called for it.
+     */
+    public CompletableFuture<CachedFile> acquireAsync(String s3Key) {
+        // A file retired and deleted between the lookup and the pin is simply looked up again
+        return getAsync(s3Key).thenCompose(file -> pin(file) ? CompletableFuture.completedFuture(file) : acquireAsync(s3Key));
+    }
+
+    public void release(CachedFile file) {
+        boolean delete;
+        synchronized (this) {
+            file.pins--;
+            delete = markDeletedIfUnused(file);
+        }
+        if (delete) {
+            deleteQuietly(file.path);
+        }
+    }
+
+    // Keeps a pinned file on disk for at least leaseMillis more, even after it is released
+    public synchronized void lease(CachedFile file, long leaseMillis) {
+        file.leasedUntil = Math.max(file.leasedUntil, System.currentTimeMillis() + leaseMillis);
+    }
+
+    @Scheduled(fixedDelayString = "${profile.picture.disk-cache.retired-sweep-interval-ms:10000}")
+    public void deleteRetired() {
+        List<CachedFile> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<CachedFile> files = retired.iterator();
+            while (files.hasNext()) {
+                CachedFile file = files.next();
+                if (markDeletedIfUnused(file)) {
+                    files.remove();
+                    expired.add(file);
+                }
+            }
+        }
+        expired.forEach(file -> deleteQuietly(file.path));
+    }
+
+    public void invalidate(String s3Key) {
+        CachedFile removed;
+        synchronized (this) {
+            removed = index.remove(fileKey(s3Key));
+            if (removed != null) {
+                totalBytes -= removed.size;
+            }
+        }
+        if (removed != null) {
+            retire(removed);
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    private synchronized boolean pin(CachedFile file) {
+        if (file.deleted) {
+            return false;
+        }
+        file.pins++;
+        return true;
+    }
+
+    // Deletes the file now unless something still holds it
+    private void retire(CachedFile file) {
+        boolean delete;
+        synchronized (this) {
+            file.retired = true;
+            delete = markDeletedIfUnused(file);
+            if (!delete) {
+                retired.add(file);
+                statsDClient.incrementCounter("picture.disk_cache.retired_in_use");
+            }
+        }
+        if (delete) {
+            deleteQuietly(file.path);
+        }
+    }
+
+    // Caller holds the lock; true means the caller must delete the file
+    private boolean markDeletedIfUnused(CachedFile file) {
+        if (!file.retired || file.deleted || file.pins > 0 || file.leasedUntil > System.currentTimeMillis()) {
+            return false;
+        }
+        file.deleted = true;
+        return true;
+    }
+
+    private CachedFile lookup(String fileKey) {
+        CachedFile cached;
+        synchronized (this) {
+            cached = index.get(fileKey);
+        }
+        if (cached == null) {
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(cached.path, FileTime.fromMillis(System.currentTimeMillis()));
+            return cached;
+        } catch (IOException e) {
+            // Removed from under us (by hand, or a tmp cleaner); drop the entry and refetch
+            synchronized (this) {
+                if (index.remove(fileKey, cached)) {
+                    totalBytes -= cached.size;
+                }
+            }
+            return null;
+        }
+    }
+
+    private CachedFile install(String fileKey, Path temp, PictureStorage.StoredObject stored, long startTime) {
+        String contentType = stored.getContentType();
+        String etag = sanitize(stored.getEtag());
+        Path target = directory.resolve(fileKey + "_" + etag + ("image/png".equals(contentType) ? ".png" : ".jpg"));
+        CachedFile cached;
+        CachedFile replaced;
+        synchronized (this) {
+            // A retired copy still held under this name is replaced by the move; the new entry owns the file now
+            for (CachedFile old : retired) {
+                if (old.path.equals(target)) {
+                    old.deleted = true;
+                }
+            }
+            retired.removeIf(old -> old.deleted);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cached = parse(target);
+            replaced = index.put(fileKey, cached);
+            if (replaced != null) {
+                totalBytes -= replaced.size;
+            }
+            totalBytes += cached.size;
+        }
+        if (replaced != null && !replaced.path.equals(cached.path)) {
+            retire(replaced);
+        }
+        statsDClient.recordExecutionTime("picture.disk_cache.fill.time", System.currentTimeMillis() - startTime);
+        evict();
+        return cached;
+    }
+
+    private void evict() {
+        List<CachedFile> victims = new ArrayList<>();
+        synchronized (this) {
+            Iterator<CachedFile> eldest = index.values().iterator();
+            // Never evict the last entry, however large, so the file just fetched can be served
+            while (totalBytes > maxBytes && index.size() > 1 && eldest.hasNext()) {
+                CachedFile victim = eldest.next();
+                eldest.remove();
+                totalBytes -= victim.size;
+                victims.add(victim);
+            }
+        }
+        for (CachedFile victim : victims) {
+            retire(victim);
+            statsDClient.incrementCounter("picture.disk_cache.eviction");
+        }
+        statsDClient.recordGaugeValue("picture.disk_cache.bytes", totalBytes());
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof UncheckedIOException unchecked ? unchecked.getCause() : cause;
+    }
+
+    private static CachedFile join(CompletableFuture<CachedFile> inFlight) throws IOException {
+        try {
+            return inFlight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+    }
+
+    private static CachedFile parse(Path file) {
+        String name = file.getFileName().toString();
+        int underscore = name.indexOf('_');
+        int dot = name.lastIndexOf('.');
+        if (underscore != 64 || dot < underscore) {
+            return null;
+        }
+        String extension = name.substring(dot + 1);
+        if (!extension.equals("png") && !extension.equals("jpg")) {
+            return null;
+        }
+        try {
+            return new CachedFile(name.substring(0, underscore), file, Files.size(file),
+                name.substring(underscore + 1, dot), extension.equals("png") ? "image/png" : "image/jpeg");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String fileKey(String s3Key) {
+        try {
+            return HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-256").digest(s3Key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // S3 ETags are hex, with a "-<parts>" suffix for multipart uploads
+    private static String sanitize(String etag) {
+        String cleaned = etag == null ? "" : etag.replaceAll("[^A-Za-z0-9-]", "");
+        return cleaned.isEmpty() ? "none" : cleaned;
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete cached picture {}: {}", file, e.getMessage());
+        }
+    }
+
+    public static final class CachedFile {
+        private final String fileKey;
+        private final Path path;
+        private final long size;
+        private final String etag;
+        private final String contentType;
+        // Guarded by the cache's lock
+        private int pins = 0;
+        private long leasedUntil = 0;
+        private boolean retired = false;
+        private boolean deleted = false;
+
+        private CachedFile(String fileKey, Path path, long size, String etag, String contentType) {
+            this.fileKey = fileKey;
+            this.path = path;
+            this.size = size;
+            this.etag = etag;
+            this.contentType = contentType;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package services;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The S3 operations on the profile picture request path, as futures so a
+ * request thread never has to wait on S3.
+ *
+ * profile.picture.storage.engine picks the implementation:
+ * {@link BlockingPictureStorage} (the default) runs each call on the
+ * caller's thread with the v1 client and returns a completed future;
+ * {@link AsyncPictureStorage} uses the non-blocking v2 client on its own
+ * Netty connection pool. Either way failures arrive as v1
+ * AmazonS3Exception / SdkClientException, so callers handle one set of
+ * errors (a missing object has status code 404).
+ */
+public interface PictureStorage {
+
+    CompletableFuture<Void> put(String key, byte[] content, String contentType);
+
+    CompletableFuture<Void> copy(String sourceKey, String targetKey);
+
+    CompletableFuture<Void> delete(String key);
+
+    // HEAD: the object's size in bytes
+    CompletableFuture<Long> contentLength(String key);
+
+    // Bytes start..end inclusive, as in an HTTP Range header
+    CompletableFuture<byte[]> readRange(String key, long start, long end);
+
+    // Writes the whole object to target, replacing whatever is there
+    CompletableFuture<StoredObject> download(String key, Path target);
+
+    final class StoredObject {
+        private final String etag;
+        private final String contentType;
+
+        public StoredObject(String etag, String contentType) {
+            this.etag = etag;
+            this.contentType = contentType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
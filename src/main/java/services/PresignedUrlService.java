@@ -0,0 +1,109 @@
+package services;
+
+import java.net.URL;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.timgroup.statsd.StatsDClient;
+
+/**
+ * Issues presigned S3 URLs so clients fetch and upload picture bytes
+ * directly. GET URLs are cached per key and reused until refresh-margin
+ * seconds before they expire; besides saving the signing work, handing out
+ * the same URL lets browsers and CDNs cache the image. Size is bounded (LRU).
+ */
+@Service
+public class PresignedUrlService {
+    private static final Logger logger = LoggerFactory.getLogger(PresignedUrlService.class);
+
+    private final AmazonS3 amazonS3;
+    private final StatsDClient statsDClient;
+    private final String bucketName;
+    private final boolean getEnabled;
+    private final long getTtlMillis;
+    private final long refreshMarginMillis;
+    private final int maxSize;
+
+    private final Map<String, Entry> getUrls;
+
+    @Autowired
+    public PresignedUrlService(
+            AmazonS3 amazonS3,
+            StatsDClient statsDClient,
+            @Value("${aws.s3.bucket:}") String bucketName,
+            @Value("${profile.picture.presigned.get-enabled:false}") boolean getEnabled,
+            @Value("${profile.picture.presigned.get-ttl-seconds:900}") long getTtlSeconds,
+            @Value("${profile.picture.presigned.refresh-margin-seconds:60}") long refreshMarginSeconds,
+            @Value("${profile.picture.presigned.cache-max-size:100000}") int maxSize) {
+        this.amazonS3 = amazonS3;
+        this.statsDClient = statsDClient;
+        this.bucketName = bucketName;
+        this.getEnabled = getEnabled;
+        this.getTtlMillis = getTtlSeconds * 1000;
+        this.refreshMarginMillis = Math.min(refreshMarginSeconds * 1000, getTtlMillis / 2);
+        this.maxSize = maxSize;
+        this.getUrls = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PresignedUrlService.this.maxSize;
+            }
+        };
+        logger.info("PresignedUrlService initialized - getEnabled: {}, getTtl: {}s, cacheMaxSize: {}",
+            getEnabled, getTtlSeconds, maxSize);
+    }
+
+    // Whether picture reads hand out presigned GET URLs instead of public object URLs
+    public boolean isGetEnabled() {
+        return getEnabled;
+    }
+
+    public String presignGet(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = getUrls.get(key);
+            if (entry != null && entry.refreshAt > now) {
+                statsDClient.incrementCounter("s3.presign.cache.hit");
+                return entry.url;
+            }
+        }
+        statsDClient.incrementCounter("s3.presign.cache.miss");
+        Date expiresAt = new Date(now + getTtlMillis);
+        String url = amazonS3.generatePresignedUrl(bucketName, key, expiresAt, HttpMethod.GET).toString();
+        synchronized (this) {
+            getUrls.put(key, new Entry(url, expiresAt.getTime() - refreshMarginMillis));
+        }
+        return url;
+    }
+
+    // The content type is signed, so the client must send exactly this Content-Type header
+    public URL presignPut(String key, String contentType, Date expiresAt) {
+        statsDClient.incrementCounter("s3.presign.put");
+        return amazonS3.generatePresignedUrl(new GeneratePresignedUrlRequest(bucketName, key, HttpMethod.PUT)
+            .withExpiration(expiresAt)
+            .withContentType(contentType));
+    }
+
+    public synchronized int size() {
+        return getUrls.size();
+    }
+
+    private static final class Entry {
+        private final String url;
+        private final long refreshAt;
+
+        private Entry(String url, long refreshAt) {
+            this.url = url;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.timgroup.statsd.StatsDClient;
+
+import configs.ThreadFactories;
+import configs.UserPrincipal;
+import dto.ProfilePictureDTO;
+import dto.ProfilePictureJobDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Asynchronous profile picture uploads. The request thread only copies the
+ * file into a local staging directory and queues a job; a worker pool then
+ * runs the normal {@link ProfilePictureService} upload (S3 put, old picture
+ * removal, DB save) from the staged copy.
+ *
+ * Jobs and staged files live on this instance only, so status polling must
+ * reach the instance that accepted the upload. Finished jobs are kept for
+ * profile.picture.async.job-ttl-seconds.
+ */
+@Service
+@ConditionalOnProperty(name = "aws.s3.bucket")
+public class ProfilePictureJobService {
+    private static final Logger logger = LoggerFactory.getLogger(ProfilePictureJobService.class);
+
+    public static final String QUEUED = "QUEUED";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String SUCCEEDED = "SUCCEEDED";
+    public static final String FAILED = "FAILED";
+
+    private final ProfilePictureService profilePictureService;
+    private final UserManagementService userManagementService;
+    private final StatsDClient statsDClient;
+
+    @Value("${profile.picture.async.workers:4}")
+    private int workers;
+
+    @Value("${profile.picture.async.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${profile.picture.async.staging-dir:${java.io.tmpdir}/profile-picture-staging}")
+    private String stagingDir;
+
+    @Value("${profile.picture.async.staging-quota-bytes:536870912}")
+    private long stagingQuotaBytes;
+
+    @Value("${profile.picture.async.job-ttl-seconds:3600}")
+    private long jobTtlSeconds;
+
+    @Value("${profile.picture.max-size-bytes:1048576}")
+    private long maxSizeBytes;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final Map<UUID, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong stagedBytes = new AtomicLong();
+    private Path stagingPath;
+    private ThreadPoolExecutor executor;
+
+    @Autowired
+    public ProfilePictureJobService(ProfilePictureService profilePictureService,
+            UserManagementService userManagementService, StatsDClient statsDClient) {
+        this.profilePictureService = profilePictureService;
+        this.userManagementService = userManagementService;
+        this.statsDClient = statsDClient;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        stagingPath = Paths.get(stagingDir);
+        Files.createDirectories(stagingPath);
+        // Job state is in memory, so anything staged before a restart can never be processed
+        try (Stream<Path> leftovers = Files.list(stagingPath)) {
+            leftovers.forEach(path -> path.toFile().delete());
+        }
+
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            ThreadFactories.named("picture-worker", virtualThreads),
+            new ThreadPoolExecutor.AbortPolicy());
+        logger.info("ProfilePictureJobService started - workers: {}, queueCapacity: {}, staging: {}, quota: {}B",
+            workers, queueCapacity, stagingPath, stagingQuotaBytes);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public ProfilePictureJobDTO submit(UserPrincipal principal, String originalFilename, String contentType,
+            InputStream content) throws IOException {
+        // Checked up front so unverified users never get a job id or use staging space
+        userManagementService.requireVerified(principal);
+
+        Job job = new Job(UUID.randomUUID(), principal);
+        Path stagedFile = stagingPath.resolve(job.id.toString());
+        long size = stage(content, stagedFile);
+        job.stagedSize = size;
+
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> process(job, originalFilename, contentType, stagedFile));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            unstage(stagedFile, size);
+            statsDClient.incrementCounter("profile.picture.async.rejected");
+            logger.warn("Picture worker queue full, rejecting upload for user: {}", principal.getEmail());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server busy, please retry");
+        }
+        statsDClient.incrementCounter("profile.picture.async.submitted");
+        statsDClient.recordGaugeValue("profile.picture.async.queue.depth", executor.getQueue().size());
+        logger.info("Queued picture job {} for user: {}", job.id, principal.getEmail());
+        return job.toDTO();
+    }
+
+    // Only the owner may see a job; anyone else gets the same answer as for an unknown id
+    public Optional<ProfilePictureJobDTO> getJob(UserPrincipal principal, UUID jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null || !job.principal.getId().equals(principal.getId())) {
+            return Optional.empty();
+        }
+        return Optional.of(job.toDTO());
+    }
+
+    // Copies the upload to disk, counting it against the staging quota as bytes arrive
+    private long stage(InputStream content, Path stagedFile) throws IOException {
+        long reserved = 0;
+        boolean staged = false;
+        try (OutputStream out = Files.newOutputStream(stagedFile)) {
+            byte[] chunk = new byte[64 * 1024];
+            int read;
+            while ((read = content.read(chunk)) != -1) {
+                if (reserved + read > maxSizeBytes) {
+                    statsDClient.incrementCounter("api.profile.picture.validation.too_large");
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "File size must be less than " + (maxSizeBytes / 1024) + "KB");
+                }
+                if (stagedBytes.addAndGet(read) > stagingQuotaBytes) {
+                    stagedBytes.addAndGet(-read);
+                    statsDClient.incrementCounter("profile.picture.async.staging.full");
+                    logger.warn("Picture staging quota of {}B exhausted", stagingQuotaBytes);
+                    throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server busy, please retry");
+                }
+                reserved += read;
+                out.write(chunk, 0, read);
+            }
+            staged = true;
+        } finally {
+            if (!staged) {
+                unstage(stagedFile, reserved);
+            }
+        }
+        statsDClient.recordGaugeValue("profile.picture.async.staging.bytes", stagedBytes.get());
+        return reserved;
+    }
+
+    private void unstage(Path stagedFile, long size) {
+        try {
+            Files.deleteIfExists(stagedFile);
+        } catch (IOException e) {
+            logger.error("Failed to delete staged file {}: {}", stagedFile, e.getMessage());
+        }
+        stagedBytes.addAndGet(-size);
+    }
+
+    private void process(Job job, String originalFilename, String contentType, Path stagedFile) {
+        job.status = PROCESSING;
+        statsDClient.recordGaugeValue("profile.picture.async.queue.depth", executor.getQueue().size());
+        statsDClient.recordExecutionTime("profile.picture.async.queue.time",
+            Duration.between(job.submittedAt, LocalDateTime.now()).toMillis());
+        try (InputStream staged = Files.newInputStream(stagedFile)) {
+            job.picture = profilePictureService.uploadProfilePicture(job.principal, originalFilename, contentType, staged);
+            job.status = SUCCEEDED;
+            statsDClient.incrementCounter("profile.picture.async.success");
+        } catch (ResponseStatusException e) {
+            job.error = e.getReason();
+            job.status = FAILED;
+            statsDClient.incrementCounter("profile.picture.async.error");
+        } catch (Exception e) {
+            logger.error("Picture job {} failed: {}", job.id, e.getMessage(), e);
+            job.error = "Failed to process upload request";
+            job.status = FAILED;
+            statsDClient.incrementCounter("profile.picture.async.error");
+        } finally {
+            job.completedAt = LocalDateTime.now();
+            unstage(stagedFile, job.stagedSize);
+            statsDClient.recordExecutionTime("profile.picture.async.processing.time",
+                Duration.between(job.submittedAt, job.completedAt).toMillis());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${profile.picture.async.cleanup-interval-ms:60000}")
+    public void expireJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(jobTtlSeconds);
+        jobs.values().removeIf(job -> job.completedAt != null && job.completedAt.isBefore(cutoff));
+        statsDClient.recordGaugeValue("profile.picture.async.jobs", jobs.size());
+        statsDClient.recordGaugeValue("profile.picture.async.staging.bytes", stagedBytes.get());
+    }
+
+    private static final class Job {
+        private final UUID id;
+        private final UserPrincipal principal;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private volatile String status = QUEUED;
+        private volatile LocalDateTime completedAt;
+        private volatile ProfilePictureDTO picture;
+        private volatile String error;
+        private long stagedSize;
+
+        private Job(UUID id, UserPrincipal principal) {
+            this.id = id;
+            this.principal = principal;
+        }
+
+        private ProfilePictureJobDTO toDTO() {
+            ProfilePictureJobDTO dto = new ProfilePictureJobDTO();
+            dto.setJobId(id.toString());
+            dto.setStatus(status);
+            dto.setSubmittedAt(submittedAt);
+            dto.setCompletedAt(completedAt);
+            dto.setPicture(picture);
+            dto.setError(error);
+            return dto;
+        }
+    }
+}
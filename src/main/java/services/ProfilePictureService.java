@@ -1,38 +1,101 @@
 package services;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
-import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.timgroup.statsd.StatsDClient;
 
+import configs.ThreadFactories;
+import configs.UserPrincipal;
+import data.PictureObjectRepository;
 import data.ProfilePictureRepository;
+import data.UserRepo;
+import dto.DirectUploadDTO;
 import dto.ProfilePictureDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import models.ProfilePicture;
 import models.User;
 
+/**
+ * Profile picture storage. No method keeps a database transaction open
+ * across an S3 call or a read of the request body: uploads run as a short
+ * transaction that reserves the content, the S3 work, and a second short
+ * transaction that records the picture, with compensation if anything in
+ * between fails. Deletes only queue their S3 objects (see S3DeleteQueue).
+ */
 @Service
-@Transactional
 @ConditionalOnProperty(name = "aws.s3.bucket")
 public class ProfilePictureService {
    private static final Logger logger = LoggerFactory.getLogger(ProfilePictureService.class);
+   private static final String CONTENT_PREFIX = "content/";
+   private static final String STAGING_PREFIX = "staging/";
+   // Direct uploads land here; the client can keep writing these keys until its URL expires
+   private static final String UPLOAD_PREFIX = "uploads/";
    
    @Value("${aws.s3.bucket}")
    private String bucketName;
+
+   @Value("${profile.picture.max-size-bytes:1048576}")
+   private int maxSizeBytes;
+
+   @Value("${profile.picture.direct-upload.ttl-seconds:300}")
+   private long directUploadTtlSeconds;
+
+   // Longer than any upload can take, so only reservations of dead uploads are swept
+   @Value("${profile.picture.pending.timeout-minutes:60}")
+   private long pendingTimeoutMinutes;
+
+   // Upload commits and compensation run here, never on a storage completion thread
+   @Value("${profile.picture.storage.commit-threads:8}")
+   private int commitThreads;
+
+   @Value("${spring.threads.virtual.enabled:false}")
+   private boolean virtualThreads;
+
+   private ThreadPoolExecutor commitExecutor;
    
    @Autowired
    private AmazonS3 amazonS3;
@@ -40,95 +103,273 @@ public class ProfilePictureService {
    @Autowired
    private ProfilePictureRepository profilePictureRepository;
    
+   @Autowired
+   private PictureObjectRepository pictureObjectRepository;
+
    @Autowired
    private UserManagementService userManagementService;
+
+   @Autowired
+   private UserRepo userRepository;
    
    @Autowired
    private S3LoggingService s3LoggingService;
 
+   @Autowired
+   private S3MultipartUploader s3MultipartUploader;
+
+   @Autowired
+   private RenditionService renditionService;
+
+   @Autowired
+   private S3ExistenceCache s3ExistenceCache;
+
+   @Autowired
+   private PresignedUrlService presignedUrlService;
+
+   @Autowired
+   private PictureDiskCache pictureDiskCache;
+
+   @Autowired
+   private PictureStorage pictureStorage;
+
+   @Autowired
+   private S3DeleteQueue s3DeleteQueue;
+
+   @Autowired
+   private TransactionTemplate transactionTemplate;
+
    @Autowired
    private StatsDClient statsDClient;
 
-   public ProfilePictureDTO uploadProfilePicture(String userEmail, MultipartFile file) {
+   @PostConstruct
+   public void start() {
+       commitExecutor = new ThreadPoolExecutor(commitThreads, commitThreads, 0L, TimeUnit.MILLISECONDS,
+           // Bounded in practice by concurrent uploads; a rejected task would skip its compensation
+           new LinkedBlockingQueue<>(),
+           ThreadFactories.named("picture-commit", virtualThreads));
+   }
+
+   @PreDestroy
+   public void stop() throws InterruptedException {
+       commitExecutor.shutdown();
+       commitExecutor.awaitTermination(30, TimeUnit.SECONDS);
+   }
+
+   // The content stream is read once, as it arrives from the client; nothing is staged on disk.
+   // Objects are stored once per SHA-256 of their content and shared by every picture showing it.
+   public ProfilePictureDTO uploadProfilePicture(UserPrincipal principal, String originalFilename,
+           String contentType, InputStream content) {
+       return await(uploadProfilePictureAsync(principal, originalFilename, contentType, content));
+   }
+
+   // Waits for a storage future on the caller's thread, rethrowing what it failed with
+   private static <T> T await(CompletableFuture<T> call) {
+       try {
+           return call.join();
+       } catch (CompletionException e) {
+           throw e.getCause() instanceof RuntimeException cause ? cause : e;
+       }
+   }
+
+   /**
+    * As {@link #uploadProfilePicture}, for callers that hand the result back
+    * as an async servlet response. The request body is still read (and
+    * hashed) on the caller's thread; the S3 calls go through PictureStorage,
+    * and with the async engine the caller is released as soon as they are
+    * sent. The future fails with the ResponseStatusException the blocking
+    * method would throw.
+    */
+   public CompletableFuture<ProfilePictureDTO> uploadProfilePictureAsync(UserPrincipal principal,
+           String originalFilename, String contentType, InputStream content) {
+       String userEmail = principal.getEmail();
        System.out.println("DEBUG: Starting uploadProfilePicture for user: " + userEmail);
-       System.out.println("DEBUG: File details - Name: " + file.getOriginalFilename() + 
-                         ", Size: " + file.getSize() + ", Type: " + file.getContentType());
+       System.out.println("DEBUG: File details - Name: " + originalFilename + ", Type: " + contentType);
 
        long startTime = System.currentTimeMillis();
        statsDClient.incrementCounter("api.profile.picture.upload.count");
        logger.info("Starting profile picture upload for user: {}", userEmail);
        
+       String stagingKey = null;
        try {
            System.out.println("DEBUG: Starting file validation");
-           validateUploadRequest(file);
+           validateUploadRequest(contentType);
            System.out.println("DEBUG: File validation passed successfully");
 
-           System.out.println("DEBUG: Getting authenticated user");
-           User user = userManagementService.getAuthenticatedUser(userEmail);
-           System.out.println("DEBUG: Found user with ID: " + user.getId());
+           userManagementService.requireVerified(principal);
 
-           System.out.println("DEBUG: Checking for existing profile picture");
-           deleteExistingProfilePicture(user);
+           Long userId = principal.getId();
+           logger.debug("Using authenticated user with ID: {}", userId);
 
-           String fileName = UUID.randomUUID().toString() + "_" + file.getOriginalFilename();
-           String s3Key = user.getId() + "/" + fileName;
-           System.out.println("DEBUG: Generated S3 key: " + s3Key);
+           byte[] signature = content.readNBytes(8);
+           String detectedType = detectImageType(signature);
 
+           MessageDigest digest = MessageDigest.getInstance("SHA-256");
+           InputStream source = new DigestInputStream(new SizeLimitedInputStream(
+               new SequenceInputStream(new ByteArrayInputStream(signature), content)), digest);
+           String fileName = UUID.randomUUID().toString() + "_" + originalFilename;
+
+           // A typical avatar fits under the single-put threshold and is hashed before anything
+           // is sent to S3. Larger files stream to a staging key while they are hashed.
            long s3StartTime = System.currentTimeMillis();
-           System.out.println("DEBUG: Starting S3 upload");
-           uploadToS3(file, s3Key);
-           long s3Duration = System.currentTimeMillis() - s3StartTime;
-           System.out.println("DEBUG: S3 upload completed in " + s3Duration + "ms");
-           
-           s3LoggingService.logS3Operation("UPLOAD", bucketName, s3Key, s3Duration);
-           statsDClient.recordExecutionTime("s3.upload.time", s3Duration);
+           byte[] head = source.readNBytes(s3MultipartUploader.getThresholdBytes());
+           long size = head.length;
+           if (head.length == s3MultipartUploader.getThresholdBytes()) {
+               stagingKey = STAGING_PREFIX + UUID.randomUUID();
+               logger.debug("Large upload, staging under {}", stagingKey);
+               // Only the head stays in memory; renditions are decoded from the staged object
+               size = uploadToS3(new SequenceInputStream(new ByteArrayInputStream(head), source), stagingKey, detectedType);
+           }
+           String contentHash = HexFormat.of().formatHex(digest.digest());
 
-           System.out.println("DEBUG: Creating profile picture record");
-           long dbStartTime = System.currentTimeMillis();
-           ProfilePicture profilePic = createProfilePicture(user, fileName, file, s3Key);
-           ProfilePicture savedPic = profilePictureRepository.save(profilePic);
-           long dbDuration = System.currentTimeMillis() - dbStartTime;
-           System.out.println("DEBUG: Database save completed in " + dbDuration + "ms");
-           System.out.println("DEBUG: Saved profile picture with ID: " + savedPic.getId());
-           
-           statsDClient.recordExecutionTime("db.save.time", dbDuration);
+           return storeAndRecord(userId, userEmail, contentHash, detectedType, fileName,
+               stagingKey, head, null, size, startTime, s3StartTime);
 
-           logger.info("Profile picture uploaded successfully for user: {}", userEmail);
+       } catch (Exception e) {
+           if (stagingKey != null) {
+               deleteStagedObject(stagingKey);
+           }
+           return CompletableFuture.failedFuture(uploadFailure(userEmail, e));
+       }
+   }
+
+   /**
+    * Everything after the content is hashed, shared by streamed and direct
+    * uploads: keeps an unchanged picture, otherwise reserves the content,
+    * stores it (copying from stagingKey when given) unless it already is,
+    * and records the picture. localCopy, when given, is a file holding the
+    * staged object, so renditions need not download it again. The staged
+    * object is deleted once the future settles. Once storage is under way
+    * the database work moves to commitExecutor: with the async engine the
+    * storage futures complete on SDK threads, which must not block on JDBC.
+    */
+   private CompletableFuture<ProfilePictureDTO> storeAndRecord(Long userId, String userEmail, String contentHash,
+           String detectedType, String fileName, String stagingKey, byte[] head, Path localCopy, long size,
+           long startTime, long s3StartTime) {
+       ProfilePictureDTO unchanged = transactionTemplate.execute(status ->
+           keepIfUnchanged(userId, contentHash, fileName));
+       if (unchanged != null) {
+           // The same picture again: nothing to put and nothing to delete
+           statsDClient.incrementCounter("api.profile.picture.dedup.unchanged");
+           logger.info("Profile picture unchanged for user: {}", userEmail);
            statsDClient.recordExecutionTime("api.profile.picture.upload.time", System.currentTimeMillis() - startTime);
-           
-           System.out.println("DEBUG: Upload process completed successfully");
-           return convertToDTO(savedPic);
+           if (stagingKey != null) {
+               deleteStagedObject(stagingKey);
+           }
+           return CompletableFuture.completedFuture(unchanged);
+       }
+
+       String s3Key = contentKey(contentHash);
+       boolean alreadyStored = reserveContent(contentHash, detectedType);
+       CompletableFuture<String> stored;
+       if (alreadyStored) {
+           logger.debug("Content {} already stored, skipping S3 upload", contentHash);
+           statsDClient.incrementCounter("api.profile.picture.dedup.shared");
+           stored = CompletableFuture.completedFuture(null);
+       } else {
+           stored = storeContent(contentHash, stagingKey, head, localCopy, detectedType);
+       }
+
+       return stored
+           .thenApplyAsync(renditions -> {
+               long s3Duration = System.currentTimeMillis() - s3StartTime;
+               System.out.println("DEBUG: S3 upload of " + size + " bytes completed in " + s3Duration + "ms");
+
+               s3LoggingService.logS3Operation("UPLOAD", bucketName, s3Key, s3Duration);
+               statsDClient.recordExecutionTime("s3.upload.time", s3Duration);
 
-       } catch (IOException e) {
+               return transactionTemplate.execute(status -> commitPicture(userId, userEmail,
+                   contentHash, detectedType, fileName, !alreadyStored, renditions));
+           }, commitExecutor)
+           .whenCompleteAsync((saved, error) -> {
+               if (error != null) {
+                   abandonContent(contentHash);
+               }
+               if (stagingKey != null) {
+                   deleteStagedObject(stagingKey);
+               }
+           }, commitExecutor)
+           .handle((saved, error) -> {
+               if (error != null) {
+                   throw uploadFailure(userEmail, error);
+               }
+               s3ExistenceCache.markPresent(s3Key);
+
+               logger.info("Profile picture uploaded successfully for user: {}", userEmail);
+               statsDClient.recordExecutionTime("api.profile.picture.upload.time", System.currentTimeMillis() - startTime);
+
+               System.out.println("DEBUG: Upload process completed successfully");
+               return saved;
+           });
+   }
+
+   // The error an upload fails with, whether it was raised here or completed a storage future
+   private ResponseStatusException uploadFailure(String userEmail, Throwable error) {
+       Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+       statsDClient.incrementCounter("api.profile.picture.upload.error");
+       if (e instanceof ResponseStatusException status) {
+           System.out.println("ERROR: Response status exception: " + e.getMessage());
+           return status;
+       }
+       if (e instanceof IOException) {
            System.out.println("ERROR: IO Exception during upload: " + e.getMessage());
-           statsDClient.incrementCounter("api.profile.picture.upload.error");
            logger.error("Failed to upload profile picture for user {}: {}", userEmail, e.getMessage());
-           throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not store file", e);
-       } catch (AmazonS3Exception e) {
+           return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not store file", e);
+       }
+       if (e instanceof AmazonS3Exception) {
            System.out.println("ERROR: S3 Exception during upload: " + e.getMessage());
-           statsDClient.incrementCounter("api.profile.picture.upload.error");
            statsDClient.incrementCounter("s3.upload.error");
            logger.error("S3 error while uploading profile picture for user {}: {}", userEmail, e.getMessage());
-           throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to store file in S3", e);
-       } catch (Exception e) {
-           System.out.println("ERROR: Unexpected exception during upload: " + e.getMessage());
-           statsDClient.incrementCounter("api.profile.picture.upload.error");
-           logger.error("Unexpected error while uploading profile picture for user {}: {}", userEmail, e.getMessage());
-           throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to process upload request", e);
+           return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to store file in S3", e);
        }
+       System.out.println("ERROR: Unexpected exception during upload: " + e.getMessage());
+       logger.error("Unexpected error while uploading profile picture for user {}: {}", userEmail, e.getMessage());
+       return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to process upload request", e);
    }
 
-   private void uploadToS3(MultipartFile file, String s3Key) throws IOException {
+   /**
+    * Puts (or copies from staging) the original and starts a put for each
+    * rendition as soon as it is encoded, so rendering overlaps the uploads.
+    * Completes with the stored rendition sizes once every put has settled,
+    * which keeps compensation from racing a put still in flight.
+    */
+   private CompletableFuture<String> storeContent(String contentHash, String stagingKey, byte[] head,
+           Path localCopy, String contentType) {
+       // Renditions are handed over on the rendering threads
+       List<CompletableFuture<Void>> puts = Collections.synchronizedList(new ArrayList<>());
+       String renditions = null;
+       Exception failure = null;
+       try {
+           String s3Key = contentKey(contentHash);
+           puts.add(stagingKey == null
+               ? pictureStorage.put(s3Key, head, contentType)
+               : pictureStorage.copy(stagingKey, s3Key));
+           if (renditionService.isEnabled()) {
+               renditions = createRenditions(contentHash, stagingKey, head, localCopy, contentType, puts);
+           }
+       } catch (IOException | RuntimeException e) {
+           failure = e;
+       }
+       CompletableFuture<Void> settled = CompletableFuture.allOf(puts.toArray(new CompletableFuture<?>[0]));
+       if (failure != null) {
+           Exception cause = failure;
+           return settled.handle((ignored, error) -> {
+               throw new CompletionException(cause);
+           });
+       }
+       String storedRenditions = renditions;
+       return settled.thenApply(ignored -> storedRenditions);
+   }
+
+   // Small files go up in one put; large ones as a parallel multipart upload
+   private long uploadToS3(InputStream content, String s3Key, String contentType) throws IOException {
        System.out.println("DEBUG: Starting S3 upload - Key: " + s3Key + ", Bucket: " + bucketName);
        
-       ObjectMetadata metadata = new ObjectMetadata();
-       metadata.setContentType(file.getContentType());
-       metadata.setContentLength(file.getSize());
-       
        try {
-           System.out.println("DEBUG: Initiating S3 putObject operation");
-           amazonS3.putObject(bucketName, s3Key, file.getInputStream(), metadata);
+           System.out.println("DEBUG: Initiating S3 upload");
+           long size = s3MultipartUploader.upload(bucketName, s3Key, content, contentType);
            System.out.println("DEBUG: S3 upload completed successfully");
+           return size;
        } catch (AmazonS3Exception e) {
            System.out.println("ERROR: S3 upload failed: " + e.getMessage());
            statsDClient.incrementCounter("s3.upload.error");
@@ -137,44 +378,277 @@ public class ProfilePictureService {
        }
    }
 
-   private void deleteExistingProfilePicture(User user) {
-       System.out.println("DEBUG: Checking for existing profile picture - User ID: " + user.getId());
-       logger.info("Checking for existing profile picture for user: {}", user.getEmail());
-       
-       profilePictureRepository.findByUserId(user.getId()).ifPresent(pic -> {
-           try {
-               String s3Key = user.getId() + "/" + pic.getFileName();
-               System.out.println("DEBUG: Found existing picture, preparing to delete - S3 Key: " + s3Key);
-               
-               long s3StartTime = System.currentTimeMillis();
-               System.out.println("DEBUG: Deleting from S3");
-               amazonS3.deleteObject(bucketName, s3Key);
-               long s3Duration = System.currentTimeMillis() - s3StartTime;
-               System.out.println("DEBUG: S3 deletion completed in " + s3Duration + "ms");
-               
-               s3LoggingService.logS3Operation("DELETE", bucketName, s3Key, s3Duration);
-               statsDClient.recordExecutionTime("s3.delete.time", s3Duration);
-               
-               long dbStartTime = System.currentTimeMillis();
-               System.out.println("DEBUG: Deleting from database");
-               profilePictureRepository.delete(pic);
-               System.out.println("DEBUG: Database deletion completed in " + (System.currentTimeMillis() - dbStartTime) + "ms");
-               
-               statsDClient.recordExecutionTime("db.delete.time", System.currentTimeMillis() - dbStartTime);
-               
-               logger.info("Deleted existing profile picture for user: {}", user.getEmail());
-           } catch (AmazonS3Exception e) {
-               System.out.println("ERROR: Failed to delete from S3: " + e.getMessage());
+   // Touches the current row only when it already shows this content
+   private ProfilePictureDTO keepIfUnchanged(Long userId, String contentHash, String fileName) {
+       return profilePictureRepository.findWithUserByUserId(userId)
+           .filter(current -> contentHash.equals(current.getContentHash()))
+           .map(current -> {
+               current.setFileName(fileName);
+               current.setUploadDate(LocalDateTime.now());
+               return convertToDTO(current);
+           })
+           .orElse(null);
+   }
+
+   /**
+    * Takes a reference on the content and commits it before any S3 call.
+    * Returns true when the objects are already in S3. Otherwise the
+    * picture_objects row stays pending (stored = false) until
+    * commitPicture; abandonContent undoes it if the upload fails, and
+    * sweepAbandonedContent removes rows left behind by a crashed instance.
+    */
+   private boolean reserveContent(String contentHash, String contentType) {
+       try {
+           return transactionTemplate.execute(status -> acquireContent(contentHash, contentType));
+       } catch (DataIntegrityViolationException e) {
+           // A concurrent first upload of the same content created the row; the retry takes a reference on it
+           statsDClient.incrementCounter("api.profile.picture.dedup.race");
+           return transactionTemplate.execute(status -> acquireContent(contentHash, contentType));
+       }
+   }
+
+   private boolean acquireContent(String contentHash, String contentType) {
+       if (pictureObjectRepository.acquire(contentHash, contentType, LocalDateTime.now())) {
+           return true;
+       }
+       // The content may have been released moments ago; its queued deletes must not outlive the put
+       s3DeleteQueue.cancel(bucketName, contentKey(contentHash));
+       return false;
+   }
+
+   // The second short transaction: marks the content stored and swaps the user's row over to it
+   private ProfilePictureDTO commitPicture(Long userId, String userEmail, String contentHash, String contentType,
+           String fileName, boolean uploaded, String renditions) {
+       long dbStartTime = System.currentTimeMillis();
+       String storedRenditions = renditions;
+       if (!uploaded) {
+           storedRenditions = pictureObjectRepository.findRenditions(contentHash);
+       } else if (pictureObjectRepository.markStored(contentHash, renditions) == 0) {
+           throw new IllegalStateException("Pending content " + contentHash + " was swept before it was stored");
+       }
+
+       System.out.println("DEBUG: Checking for existing profile picture");
+       profilePictureRepository.findWithUserByUserId(userId)
+           .ifPresent(pic -> deleteExistingProfilePicture(pic, userEmail));
+
+       System.out.println("DEBUG: Creating profile picture record");
+       // Reference only; the user row was already loaded by the security layer
+       User user = userRepository.getReferenceById(userId);
+       ProfilePicture profilePic = createProfilePicture(user, fileName, contentType, contentKey(contentHash));
+       profilePic.setContentHash(contentHash);
+       profilePic.setRenditions(storedRenditions);
+       ProfilePicture savedPic = profilePictureRepository.save(profilePic);
+       long dbDuration = System.currentTimeMillis() - dbStartTime;
+       System.out.println("DEBUG: Database save completed in " + dbDuration + "ms");
+       System.out.println("DEBUG: Saved profile picture with ID: " + savedPic.getId());
+
+       statsDClient.recordExecutionTime("db.save.time", dbDuration);
+       return convertToDTO(savedPic);
+   }
+
+   /**
+    * Compensation for an upload that reserved content and then failed. Drops
+    * the reference; if it was the only one, whatever reached S3 is queued for
+    * deletion. Renditions are unknown at this point, so every configured
+    * size is queued.
+    */
+   private void abandonContent(String contentHash) {
+       try {
+           transactionTemplate.executeWithoutResult(status -> releasePendingContent(contentHash));
+           statsDClient.incrementCounter("api.profile.picture.upload.compensated");
+       } catch (RuntimeException e) {
+           // Left pending; sweepAbandonedContent retries once it is older than the pending timeout
+           logger.error("Failed to release pending content {}: {}", contentHash, e.getMessage());
+       }
+   }
+
+   private void releasePendingContent(String contentHash) {
+       pictureObjectRepository.release(contentHash);
+       if (pictureObjectRepository.deleteIfUnreferenced(contentHash) == 1) {
+           queueContentDeletion(contentHash);
+       }
+   }
+
+   private void queueContentDeletion(String contentHash) {
+       List<String> keys = new ArrayList<>();
+       keys.add(contentKey(contentHash));
+       for (int size : renditionService.getSizes()) {
+           keys.add(contentRenditionKey(contentHash, size));
+       }
+       forgetObjects(keys);
+       s3DeleteQueue.enqueue(bucketName, keys);
+   }
+
+   /**
+    * Removes content reservations that never reached commitPicture, e.g.
+    * because the instance died mid-upload. Anything they put in S3 is
+    * queued for deletion.
+    */
+   @Scheduled(fixedDelayString = "${profile.picture.pending.sweep-interval-ms:300000}")
+   public void sweepAbandonedContent() {
+       try {
+           LocalDateTime cutoff = LocalDateTime.now().minusMinutes(pendingTimeoutMinutes);
+           List<String> abandoned = pictureObjectRepository.findPendingCreatedBefore(cutoff);
+           for (String contentHash : abandoned) {
+               transactionTemplate.executeWithoutResult(status -> {
+                   // Zero when an upload stored it, or another instance swept it, since the query above
+                   if (pictureObjectRepository.deletePendingCreatedBefore(contentHash, cutoff) == 1) {
+                       queueContentDeletion(contentHash);
+                       logger.warn("Removed abandoned pending content {}", contentHash);
+                   }
+               });
+           }
+           statsDClient.count("api.profile.picture.pending.swept", abandoned.size());
+       } catch (Exception e) {
+           logger.error("Pending content sweep failed: {}", e.getMessage(), e);
+       }
+   }
+
+   /**
+    * Renders every configured size and starts the upload of each one as soon
+    * as it is encoded, adding it to puts. Returns the stored sizes as
+    * "64,128,512". On failure the caller's compensation queues the original
+    * and renditions for deletion.
+    *
+    * A small original is rendered from head. A staged one is decoded from
+    * localCopy, or downloaded to a temporary file first, so no upload larger
+    * than the multipart threshold is ever held in memory whole.
+    */
+   private String createRenditions(String contentHash, String stagingKey, byte[] head, Path localCopy,
+           String contentType, List<CompletableFuture<Void>> puts) throws IOException {
+       long startTime = System.currentTimeMillis();
+       String sizes = Arrays.stream(renditionService.getSizes())
+           .mapToObj(String::valueOf)
+           .collect(Collectors.joining(","));
+       RenditionService.RenditionSink sink = (size, encoded) ->
+           puts.add(pictureStorage.put(contentRenditionKey(contentHash, size), encoded, contentType));
+       try {
+           if (stagingKey == null) {
+               renditionService.render(head, contentType, sink);
+           } else if (localCopy != null) {
+               renditionService.render(localCopy, contentType, sink);
+           } else {
+               Path original = Files.createTempFile("rendition-", ".orig");
+               try {
+                   await(pictureStorage.download(stagingKey, original));
+                   renditionService.render(original, contentType, sink);
+               } finally {
+                   Files.deleteIfExists(original);
+               }
+           }
+       } catch (IOException | RuntimeException e) {
+           logger.error("Rendition pipeline failed for {}: {}", contentHash, e.getMessage());
+           throw e;
+       }
+       statsDClient.recordExecutionTime("s3.rendition.time", System.currentTimeMillis() - startTime);
+       return sizes;
+   }
+
+   /**
+    * Drops the picture's hold on its S3 objects. Content-addressed objects
+    * are only deleted with their last reference; older per-user objects
+    * always are. The deletes are queued in this transaction and sent to S3
+    * by the S3DeleteDrainer after commit.
+    */
+   private void releasePictureObjects(ProfilePicture pic) {
+       String contentHash = pic.getContentHash();
+       if (contentHash != null) {
+           pictureObjectRepository.release(contentHash);
+           if (pictureObjectRepository.deleteIfUnreferenced(contentHash) == 0) {
+               logger.debug("Content {} still referenced, keeping S3 objects", contentHash);
+               statsDClient.incrementCounter("s3.delete.skipped_shared");
+               return;
+           }
+       }
+       List<String> keys = new ArrayList<>();
+       keys.add(originalKey(pic));
+       for (Integer size : parseRenditions(pic.getRenditions())) {
+           keys.add(renditionKey(pic, size));
+       }
+       forgetObjects(keys);
+       s3DeleteQueue.enqueue(bucketName, keys);
+   }
+
+   private void forgetObjects(List<String> keys) {
+       keys.forEach(s3ExistenceCache::invalidate);
+       keys.forEach(pictureDiskCache::invalidate);
+   }
+
+   // A leftover staging or upload object is harmless; the bucket lifecycle rules on staging/ and uploads/ remove it
+   private void deleteStagedObject(String stagingKey) {
+       pictureStorage.delete(stagingKey).whenComplete((ignored, error) -> {
+           if (error != null) {
                statsDClient.incrementCounter("s3.delete.error");
-               logger.error("Failed to delete existing S3 object for user {}: {}", 
-                   user.getEmail(), e.getMessage());
-               throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
-                   "Failed to delete existing file from S3", e);
+               logger.error("Failed to delete staged upload {}: {}", stagingKey, error.getMessage());
            }
        });
    }
 
-   public ProfilePictureDTO getProfilePicture(String userEmail) {
+   private static String contentKey(String contentHash) {
+       return CONTENT_PREFIX + contentHash;
+   }
+
+   private static String contentRenditionKey(String contentHash, int size) {
+       return CONTENT_PREFIX + contentHash + "/" + size;
+   }
+
+   private static String originalKey(ProfilePicture pic) {
+       return pic.getContentHash() != null
+           ? contentKey(pic.getContentHash())
+           : pic.getUser().getId() + "/" + pic.getFileName();
+   }
+
+   private static String renditionKey(ProfilePicture pic, int size) {
+       return pic.getContentHash() != null
+           ? contentRenditionKey(pic.getContentHash(), size)
+           : pic.getUser().getId() + "/" + size + "/" + pic.getFileName();
+   }
+
+   private static List<Integer> parseRenditions(String renditions) {
+       if (renditions == null || renditions.isBlank()) {
+           return List.of();
+       }
+       return Arrays.stream(renditions.split(",")).map(String::trim).map(Integer::valueOf).toList();
+   }
+
+   private static Optional<Integer> selectRendition(ProfilePicture pic, int requestedSize) {
+       return parseRenditions(pic.getRenditions()).stream()
+           .filter(size -> size >= requestedSize)
+           .findFirst();
+   }
+
+   private String readUrl(String s3Key) {
+       return presignedUrlService.isGetEnabled() ? presignedUrlService.presignGet(s3Key) : objectUrl(s3Key);
+   }
+
+   private String objectUrl(String s3Key) {
+       return String.format("https://%s.s3.%s.amazonaws.com/%s", bucketName, amazonS3.getRegionName(), s3Key);
+   }
+
+   private void deleteExistingProfilePicture(ProfilePicture pic, String userEmail) {
+       String s3Key = originalKey(pic);
+       System.out.println("DEBUG: Found existing picture, preparing to delete - S3 Key: " + s3Key);
+
+       long dbStartTime = System.currentTimeMillis();
+       System.out.println("DEBUG: Releasing S3 objects");
+       releasePictureObjects(pic);
+       s3LoggingService.logS3Operation("DELETE_QUEUED", bucketName, s3Key, System.currentTimeMillis() - dbStartTime);
+
+       System.out.println("DEBUG: Deleting from database");
+       profilePictureRepository.delete(pic);
+       // Flush now: Hibernate would otherwise insert the replacement before this delete
+       // and trip the unique user_id constraint
+       profilePictureRepository.flush();
+       System.out.println("DEBUG: Database deletion completed in " + (System.currentTimeMillis() - dbStartTime) + "ms");
+
+       statsDClient.recordExecutionTime("db.delete.time", System.currentTimeMillis() - dbStartTime);
+
+       logger.info("Deleted existing profile picture for user: {}", userEmail);
+   }
+
+   // size, when given, selects the smallest rendition at least that large (or the original)
+   public ProfilePictureDTO getProfilePicture(UserPrincipal principal, Integer size) {
+       String userEmail = principal.getEmail();
        System.out.println("DEBUG: Starting getProfilePicture for user: " + userEmail);
        
        long startTime = System.currentTimeMillis();
@@ -182,13 +656,11 @@ public class ProfilePictureService {
        logger.info("Retrieving profile picture for user: {}", userEmail);
        
        try {
-           System.out.println("DEBUG: Getting authenticated user");
-           User user = userManagementService.getAuthenticatedUser(userEmail);
-           System.out.println("DEBUG: Found user with ID: " + user.getId());
+           userManagementService.requireVerified(principal);
            
            System.out.println("DEBUG: Querying database for profile picture");
            long dbStartTime = System.currentTimeMillis();
-           ProfilePicture profilePic = profilePictureRepository.findByUserId(user.getId())
+           ProfilePicture profilePic = profilePictureRepository.findWithUserByUserId(principal.getId())
                .orElseThrow(() -> {
                    System.out.println("ERROR: Profile picture not found in database");
                    logger.error("Profile picture not found for user: {}", userEmail);
@@ -198,22 +670,18 @@ public class ProfilePictureService {
            System.out.println("DEBUG: Database query completed in " + (System.currentTimeMillis() - dbStartTime) + "ms");
            statsDClient.recordExecutionTime("db.query.time", System.currentTimeMillis() - dbStartTime);
            
-           String s3Key = user.getId() + "/" + profilePic.getFileName();
-           System.out.println("DEBUG: Checking S3 object exists - Key: " + s3Key);
-           
-           long s3StartTime = System.currentTimeMillis();
-           boolean exists = amazonS3.doesObjectExist(bucketName, s3Key);
-           long s3Duration = System.currentTimeMillis() - s3StartTime;
-           System.out.println("DEBUG: S3 check completed in " + s3Duration + "ms - Exists: " + exists);
-           
-           s3LoggingService.logS3Operation("CHECK_EXISTS", bucketName, s3Key, s3Duration);
-           statsDClient.recordExecutionTime("s3.check.time", s3Duration);
-           
-           if (!exists) {
+           // No S3 call here: existence comes from the cache, which sampled background checks keep honest.
+           // Only a cached "missing" costs a HEAD, which must agree before the picture is cleaned up.
+           String s3Key = originalKey(profilePic);
+           if (s3ExistenceCache.isKnownMissing(s3Key) && s3ExistenceCache.confirmMissing(s3Key)) {
                System.out.println("ERROR: S3 object not found");
                statsDClient.incrementCounter("s3.check.missing");
                logger.error("S3 object not found for user {}: {}", userEmail, s3Key);
-               profilePictureRepository.delete(profilePic);
+               // Committed on its own, so the cleanup survives the 404 below
+               transactionTemplate.executeWithoutResult(status -> {
+                   releasePictureObjects(profilePic);
+                   profilePictureRepository.delete(profilePic);
+               });
                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Profile picture file not found");
            }
            
@@ -221,7 +689,12 @@ public class ProfilePictureService {
            statsDClient.recordExecutionTime("api.profile.picture.get.time", System.currentTimeMillis() - startTime);
            
            System.out.println("DEBUG: Successfully retrieved profile picture");
-           return convertToDTO(profilePic);
+           ProfilePictureDTO dto = convertToDTO(profilePic);
+           if (size != null) {
+               selectRendition(profilePic, size).ifPresent(renditionSize ->
+                   dto.setUrl(dto.getRenditions().get(String.valueOf(renditionSize))));
+           }
+           return dto;
 
        } catch (ResponseStatusException e) {
            System.out.println("ERROR: Response status exception: " + e.getMessage());
@@ -234,7 +707,54 @@ public class ProfilePictureService {
        }
    }
 
-   public void deleteProfilePicture(String userEmail) {
+   /**
+    * Local disk copy of the picture (or the rendition chosen by size), for
+    * clients that cannot fetch from S3 themselves. Filled from S3 on a miss;
+    * a hit is an already completed future. Lookup failures are thrown,
+    * S3 failures fail the future with a ResponseStatusException. The file
+    * comes back pinned; the caller must hand it to PictureDiskCache.release
+    * once it has been served.
+    */
+   public CompletableFuture<PictureDiskCache.CachedFile> getProfilePictureContent(UserPrincipal principal, Integer size) {
+       String userEmail = principal.getEmail();
+       long startTime = System.currentTimeMillis();
+       statsDClient.incrementCounter("api.profile.picture.content.count");
+
+       userManagementService.requireVerified(principal);
+       ProfilePicture profilePic = profilePictureRepository.findWithUserByUserId(principal.getId())
+           .orElseThrow(() -> {
+               statsDClient.incrementCounter("api.profile.picture.not_found");
+               return new ResponseStatusException(HttpStatus.NOT_FOUND, "Profile picture not found");
+           });
+
+       String s3Key = size == null
+           ? originalKey(profilePic)
+           : selectRendition(profilePic, size).map(renditionSize -> renditionKey(profilePic, renditionSize))
+               .orElse(originalKey(profilePic));
+       return pictureDiskCache.acquireAsync(s3Key).handle((file, error) -> {
+           if (error == null) {
+               statsDClient.recordExecutionTime("api.profile.picture.content.time", System.currentTimeMillis() - startTime);
+               return file;
+           }
+           Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+           if (e instanceof AmazonS3Exception s3Error && s3Error.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+               statsDClient.incrementCounter("s3.check.missing");
+               logger.error("S3 object not found for user {}: {}", userEmail, s3Key);
+               throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Profile picture file not found");
+           }
+           statsDClient.incrementCounter("api.profile.picture.content.error");
+           if (e instanceof IOException) {
+               logger.error("Failed to cache {} for user {}: {}", s3Key, userEmail, e.getMessage());
+           } else {
+               logger.error("Failed to fetch {} from S3 for user {}: {}", s3Key, userEmail, e.getMessage());
+           }
+           throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to retrieve profile picture", e);
+       });
+   }
+
+   @Transactional
+   public void deleteProfilePicture(UserPrincipal principal) {
+       String userEmail = principal.getEmail();
        System.out.println("DEBUG: Starting deleteProfilePicture for user: " + userEmail);
        
        long startTime = System.currentTimeMillis();
@@ -242,13 +762,11 @@ public class ProfilePictureService {
        logger.info("Deleting profile picture for user: {}", userEmail);
        
        try {
-           System.out.println("DEBUG: Getting authenticated user");
-           User user = userManagementService.getAuthenticatedUser(userEmail);
-           System.out.println("DEBUG: Found user with ID: " + user.getId());
+           userManagementService.requireVerified(principal);
            
            System.out.println("DEBUG: Querying database for profile picture");
            long dbStartTime = System.currentTimeMillis();
-           ProfilePicture profilePic = profilePictureRepository.findByUserId(user.getId())
+           ProfilePicture profilePic = profilePictureRepository.findWithUserByUserId(principal.getId())
                .orElseThrow(() -> {
                    System.out.println("ERROR: No profile picture found to delete");
                    logger.error("No profile picture found to delete for user: {}", userEmail);
@@ -258,26 +776,13 @@ public class ProfilePictureService {
            System.out.println("DEBUG: Database query completed in " + (System.currentTimeMillis() - dbStartTime) + "ms");
            statsDClient.recordExecutionTime("db.query.time", System.currentTimeMillis() - dbStartTime);
 
-           String s3Key = user.getId() + "/" + profilePic.getFileName();
-           System.out.println("DEBUG: Deleting from S3 - Key: " + s3Key);
-           
-           try {
-               long s3StartTime = System.currentTimeMillis();
-               amazonS3.deleteObject(bucketName, s3Key);
-               long s3Duration = System.currentTimeMillis() - s3StartTime;
-               System.out.println("DEBUG: S3 deletion completed in " + s3Duration + "ms");
-               
-               s3LoggingService.logS3Operation("DELETE", bucketName, s3Key, s3Duration);
-               statsDClient.recordExecutionTime("s3.delete.time", s3Duration);
-           } catch (AmazonS3Exception e) {
-               System.out.println("ERROR: Failed to delete from S3: " + e.getMessage());
-               statsDClient.incrementCounter("s3.delete.error");
-               logger.error("Failed to delete S3 object for user {}: {}", userEmail, e.getMessage());
-               throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to delete file from S3", e);
-           }
-           
+           String s3Key = originalKey(profilePic);
+           System.out.println("DEBUG: Queueing S3 deletion - Key: " + s3Key);
+
            System.out.println("DEBUG: Deleting from database");
            long dbDeleteStart = System.currentTimeMillis();
+           releasePictureObjects(profilePic);
+           s3LoggingService.logS3Operation("DELETE_QUEUED", bucketName, s3Key, System.currentTimeMillis() - dbDeleteStart);
            profilePictureRepository.delete(profilePic);
            System.out.println("DEBUG: Database deletion completed in " + (System.currentTimeMillis() - dbDeleteStart) + "ms");
            statsDClient.recordExecutionTime("db.delete.time", System.currentTimeMillis() - dbDeleteStart);
@@ -297,19 +802,175 @@ public class ProfilePictureService {
         }
     }
     
-    private void validateUploadRequest(MultipartFile file) {
-        System.out.println("DEBUG: Starting file validation");
-        System.out.println("DEBUG: Checking file - IsEmpty: " + (file == null || file.isEmpty()) + 
-            ", ContentType: " + file.getContentType());
- 
-        if (file == null || file.isEmpty()) {
-            System.out.println("ERROR: File validation failed - Empty file");
+    /**
+     * Hands out a presigned PUT so the client sends the file straight to S3.
+     * Nothing is recorded until {@link #completeDirectUpload} is called; the
+     * key (uploads/<userId>/...) embeds the user id, so a client can only
+     * complete its own uploads.
+     */
+    public DirectUploadDTO createDirectUpload(UserPrincipal principal, String originalFilename, String contentType) {
+        String userEmail = principal.getEmail();
+        statsDClient.incrementCounter("api.profile.picture.direct.create.count");
+        logger.info("Issuing direct upload URL for user: {}", userEmail);
+
+        validateUploadRequest(contentType);
+        validateDirectFileName(originalFilename);
+        userManagementService.requireVerified(principal);
+
+        UUID uploadId = UUID.randomUUID();
+        String s3Key = directUploadKey(principal.getId(), uploadId, originalFilename);
+        LocalDateTime expiresAt = LocalDateTime.now().plusSeconds(directUploadTtlSeconds);
+        String url = presignedUrlService.presignPut(s3Key, contentType,
+            Date.from(expiresAt.atZone(ZoneId.systemDefault()).toInstant())).toString();
+
+        DirectUploadDTO dto = new DirectUploadDTO();
+        dto.setUploadId(uploadId.toString());
+        dto.setFileName(originalFilename);
+        dto.setContentType(contentType);
+        dto.setUrl(url);
+        dto.setMethod("PUT");
+        dto.setHeaders(Map.of("Content-Type", contentType));
+        dto.setExpiresAt(expiresAt);
+        return dto;
+    }
+
+    /**
+     * Records a picture the client has PUT to S3 itself. The upload key stays
+     * writable through the presigned URL until it expires, so nothing is
+     * trusted there: the object is first copied to a staging key only the
+     * server writes, and the upload key is deleted. The copy's size and
+     * leading bytes are then checked with a HEAD and an 8-byte ranged GET,
+     * and it is hashed and stored under content/<hash> like any other upload.
+     * A copy that fails the checks is deleted.
+     *
+     * Upload keys whose upload is never completed are left to the bucket
+     * lifecycle rule on uploads/ (see profile.picture.direct-upload).
+     */
+    public ProfilePictureDTO completeDirectUpload(UserPrincipal principal, String uploadId, String originalFilename) {
+        String userEmail = principal.getEmail();
+        long startTime = System.currentTimeMillis();
+        statsDClient.incrementCounter("api.profile.picture.direct.complete.count");
+        logger.info("Completing direct upload {} for user: {}", uploadId, userEmail);
+
+        validateDirectFileName(originalFilename);
+        userManagementService.requireVerified(principal);
+        UUID id;
+        try {
+            id = UUID.fromString(uploadId);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid upload id");
+        }
+        String uploadKey = directUploadKey(principal.getId(), id, originalFilename);
+        String stagingKey = STAGING_PREFIX + id;
+        String fileName = id + "_" + originalFilename;
+
+        try {
+            ProfilePictureDTO recorded = transactionTemplate.execute(status -> findRecorded(principal.getId(), fileName));
+            if (recorded != null) {
+                // A retried callback; the first one already recorded it
+                return recorded;
+            }
+
+            long s3StartTime = System.currentTimeMillis();
+            try {
+                await(pictureStorage.copy(uploadKey, stagingKey));
+            } catch (AmazonS3Exception e) {
+                if (e.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+                    statsDClient.incrementCounter("api.profile.picture.direct.not_found");
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Upload not found");
+                }
+                throw e;
+            }
+            // Whatever the client writes to the upload key from here on is never read
+            deleteStagedObject(uploadKey);
+
+            String detectedType;
+            long contentLength;
+            try {
+                contentLength = await(pictureStorage.contentLength(stagingKey));
+                if (contentLength > maxSizeBytes) {
+                    statsDClient.incrementCounter("api.profile.picture.validation.too_large");
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "File size must be less than " + (maxSizeBytes / 1024) + "KB");
+                }
+                detectedType = detectImageType(await(pictureStorage.readRange(stagingKey, 0, 7)));
+            } catch (ResponseStatusException e) {
+                deleteStagedObject(stagingKey);
+                throw e;
+            }
+            s3LoggingService.logS3Operation("VERIFY_DIRECT_UPLOAD", bucketName, stagingKey, System.currentTimeMillis() - s3StartTime);
+
+            Path localCopy = Files.createTempFile("direct-upload-", ".orig");
+            try {
+                String contentHash;
+                try {
+                    await(pictureStorage.download(stagingKey, localCopy));
+                    contentHash = sha256(localCopy);
+                } catch (IOException | RuntimeException e) {
+                    deleteStagedObject(stagingKey);
+                    throw e;
+                }
+                ProfilePictureDTO saved = await(storeAndRecord(principal.getId(), userEmail, contentHash, detectedType,
+                    fileName, stagingKey, null, localCopy, contentLength, startTime, s3StartTime));
+
+                statsDClient.recordGaugeValue("api.profile.picture.upload.bytes", contentLength);
+                statsDClient.recordExecutionTime("api.profile.picture.direct.complete.time", System.currentTimeMillis() - startTime);
+                logger.info("Direct upload {} recorded for user: {}", uploadId, userEmail);
+                return saved;
+            } finally {
+                Files.deleteIfExists(localCopy);
+            }
+
+        } catch (ResponseStatusException e) {
+            statsDClient.incrementCounter("api.profile.picture.upload.error");
+            throw e;
+        } catch (AmazonS3Exception e) {
+            statsDClient.incrementCounter("api.profile.picture.upload.error");
+            statsDClient.incrementCounter("s3.upload.error");
+            logger.error("S3 error completing direct upload for user {}: {}", userEmail, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to verify uploaded file", e);
+        } catch (IOException e) {
+            statsDClient.incrementCounter("api.profile.picture.upload.error");
+            logger.error("Failed to hash direct upload for user {}: {}", userEmail, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not store file", e);
+        }
+    }
+
+    private static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            DigestInputStream hashing = new DigestInputStream(in, digest);
+            hashing.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ProfilePictureDTO findRecorded(Long userId, String fileName) {
+        return profilePictureRepository.findWithUserByUserId(userId)
+            .filter(current -> fileName.equals(current.getFileName()))
+            .map(this::convertToDTO)
+            .orElse(null);
+    }
+
+    private void validateDirectFileName(String originalFilename) {
+        if (originalFilename == null || originalFilename.isBlank() || originalFilename.length() > 200
+                || originalFilename.contains("/") || originalFilename.contains("\\")) {
             statsDClient.incrementCounter("api.profile.picture.validation.error");
-            logger.error("Upload failed: Empty file");
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File is required");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid file name");
         }
+    }
+
+    // Under uploads/ so a lifecycle rule can expire uploads that are never completed
+    private static String directUploadKey(Long userId, UUID uploadId, String originalFilename) {
+        return UPLOAD_PREFIX + userId + "/" + uploadId + "_" + originalFilename;
+    }
+
+    private void validateUploadRequest(String contentType) {
+        System.out.println("DEBUG: Starting file validation");
+        System.out.println("DEBUG: Checking file - ContentType: " + contentType);
  
-        String contentType = file.getContentType();
         if (contentType == null || !(contentType.equals("image/jpeg") || 
                                    contentType.equals("image/jpg") || 
                                    contentType.equals("image/png"))) {
@@ -321,15 +982,36 @@ public class ProfilePictureService {
         }
         System.out.println("DEBUG: File validation passed successfully");
     }
+
+    // The type is taken from the first bytes, not from what the client claims
+    private String detectImageType(byte[] signature) {
+        if (signature.length == 0) {
+            statsDClient.incrementCounter("api.profile.picture.validation.error");
+            logger.error("Upload failed: Empty file");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File is required");
+        }
+        if (signature.length >= 8
+                && (signature[0] & 0xff) == 0x89 && signature[1] == 'P' && signature[2] == 'N' && signature[3] == 'G'
+                && signature[4] == 0x0d && signature[5] == 0x0a && signature[6] == 0x1a && signature[7] == 0x0a) {
+            return "image/png";
+        }
+        if (signature.length >= 3
+                && (signature[0] & 0xff) == 0xff && (signature[1] & 0xff) == 0xd8 && (signature[2] & 0xff) == 0xff) {
+            return "image/jpeg";
+        }
+        statsDClient.incrementCounter("api.profile.picture.validation.error");
+        logger.error("Upload failed: content is not a PNG or JPEG image");
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+            "Invalid file type. Only PNG, JPG, and JPEG are allowed.");
+    }
  
-    private ProfilePicture createProfilePicture(User user, String fileName, MultipartFile file, String s3Key) {
+    private ProfilePicture createProfilePicture(User user, String fileName, String contentType, String s3Key) {
         System.out.println("DEBUG: Creating ProfilePicture entity");
         ProfilePicture profilePic = new ProfilePicture();
         profilePic.setUser(user);
         profilePic.setFileName(fileName);
-        profilePic.setFileType(file.getContentType());
-        String url = String.format("https://%s.s3.%s.amazonaws.com/%s", 
-            bucketName, amazonS3.getRegionName(), s3Key);
+        profilePic.setFileType(contentType);
+        String url = objectUrl(s3Key);
         profilePic.setUrl(url);
         profilePic.setUploadDate(LocalDateTime.now());
         System.out.println("DEBUG: Created ProfilePicture entity with URL: " + url);
@@ -339,12 +1021,62 @@ public class ProfilePictureService {
     private ProfilePictureDTO convertToDTO(ProfilePicture pic) {
         System.out.println("DEBUG: Converting ProfilePicture to DTO");
         ProfilePictureDTO dto = new ProfilePictureDTO();
-        dto.setId(pic.getId());
+        dto.setId(pic.getId().toString());
         dto.setFileName(pic.getFileName());
-        dto.setUrl(pic.getUrl());
+        dto.setUrl(presignedUrlService.isGetEnabled() ? presignedUrlService.presignGet(originalKey(pic)) : pic.getUrl());
         dto.setUploadDate(pic.getUploadDate());
         dto.setUserId(pic.getUser().getId().toString());
+        List<Integer> renditionSizes = parseRenditions(pic.getRenditions());
+        if (!renditionSizes.isEmpty()) {
+            Map<String, String> renditionUrls = new LinkedHashMap<>();
+            for (Integer renditionSize : renditionSizes) {
+                renditionUrls.put(String.valueOf(renditionSize),
+                    readUrl(renditionKey(pic, renditionSize)));
+            }
+            dto.setRenditions(renditionUrls);
+        }
         System.out.println("DEBUG: Created DTO with ID: " + dto.getId() + " and URL: " + dto.getUrl());
         return dto;
     }
- }
\ No newline at end of file
+
+    /**
+     * Fails the upload as soon as more than max-size-bytes have been read,
+     * whether that happens while buffering a small file or mid-way through a
+     * multipart upload (which is then aborted).
+     */
+    private final class SizeLimitedInputStream extends FilterInputStream {
+        private long remaining = maxSizeBytes;
+
+        private SizeLimitedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                consume(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                consume(read);
+            }
+            return read;
+        }
+
+        private void consume(int bytes) {
+            remaining -= bytes;
+            if (remaining < 0) {
+                statsDClient.incrementCounter("api.profile.picture.validation.too_large");
+                logger.error("Upload failed: file exceeds {} bytes", maxSizeBytes);
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "File size must be less than " + (maxSizeBytes / 1024) + "KB");
+            }
+        }
+    }
+ }
@@ -0,0 +1,244 @@
+package services;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.timgroup.statsd.StatsDClient;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Produces square avatar renditions (profile.picture.renditions.sizes) of an
+ * uploaded image with plain javax.imageio / java.awt code. The original is
+ * decoded once, subsampled on read when it is much larger than the biggest
+ * rendition, and every size is resized and encoded in parallel.
+ */
+@Service
+public class RenditionService {
+    private static final Logger logger = LoggerFactory.getLogger(RenditionService.class);
+
+    private final StatsDClient statsDClient;
+    private final int[] sizes;
+    private final float jpegQuality;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+
+    @FunctionalInterface
+    public interface RenditionSink {
+        void accept(int size, byte[] encoded) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ImageSource {
+        ImageInputStream open() throws IOException;
+    }
+
+    @Autowired
+    public RenditionService(
+            StatsDClient statsDClient,
+            @Value("${profile.picture.renditions.sizes:64,128,512}") int[] sizes,
+            @Value("${profile.picture.renditions.jpeg-quality:0.85}") float jpegQuality,
+            @Value("${profile.picture.renditions.max-pixels:40000000}") long maxPixels,
+            @Value("${profile.picture.renditions.threads:0}") int threads) {
+        this.statsDClient = statsDClient;
+        this.sizes = Arrays.stream(sizes).filter(size -> size > 0).sorted().distinct().toArray();
+        this.jpegQuality = jpegQuality;
+        this.maxPixels = maxPixels;
+
+        // 0 means one thread per available core
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(poolSize * 16),
+            runnable -> {
+                Thread thread = new Thread(runnable, "rendition-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            // A saturated pool renders on the caller's thread rather than failing the upload
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        logger.info("RenditionService started - sizes: {}, threads: {}", Arrays.toString(this.sizes), poolSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return sizes.length > 0;
+    }
+
+    public int[] getSizes() {
+        return sizes.clone();
+    }
+
+    /**
+     * Decodes the image and hands each encoded rendition to the sink, on the
+     * rendering thread that produced it. Returns once every rendition has
+     * been rendered and accepted.
+     */
+    public void render(byte[] original, String contentType, RenditionSink sink) throws IOException {
+        render(() -> ImageIO.createImageInputStream(new ByteArrayInputStream(original)), contentType, sink);
+    }
+
+    // As above, decoding from a file so a large original is never held in memory
+    public void render(Path original, String contentType, RenditionSink sink) throws IOException {
+        render(() -> ImageIO.createImageInputStream(original.toFile()), contentType, sink);
+    }
+
+    private void render(ImageSource original, String contentType, RenditionSink sink) throws IOException {
+        long startTime = System.currentTimeMillis();
+        BufferedImage source = decode(original, sizes[sizes.length - 1]);
+        statsDClient.recordExecutionTime("rendition.decode.time", System.currentTimeMillis() - startTime);
+
+        List<CompletableFuture<Void>> renditions = new ArrayList<>(sizes.length);
+        for (int size : sizes) {
+            renditions.add(CompletableFuture.runAsync(() -> {
+                long renderStart = System.currentTimeMillis();
+                try {
+                    byte[] encoded = encode(resizeSquare(source, size), contentType, jpegQuality);
+                    statsDClient.recordExecutionTime("rendition.render.time", System.currentTimeMillis() - renderStart);
+                    sink.accept(size, encoded);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(renditions.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            statsDClient.incrementCounter("rendition.error");
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+        statsDClient.recordExecutionTime("rendition.total.time", System.currentTimeMillis() - startTime);
+    }
+
+    // Reads the header first so oversized images are refused before any pixels are allocated
+    private BufferedImage decode(ImageSource original, int largestSize) throws IOException {
+        try (ImageInputStream input = original.open()) {
+            if (input == null) {
+                throw invalidImage("no input stream");
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw invalidImage("no decoder");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    statsDClient.incrementCounter("rendition.too_many_pixels");
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image dimensions are too large");
+                }
+
+                // Skip pixels we would throw away anyway, keeping at least 2x the largest rendition
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.min(width, height) / (largestSize * 2));
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw invalidImage(e.getMessage());
+        }
+    }
+
+    private ResponseStatusException invalidImage(String detail) {
+        statsDClient.incrementCounter("rendition.decode.error");
+        logger.warn("Could not decode uploaded image: {}", detail);
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "File is not a readable image");
+    }
+
+    /**
+     * Centre-crops to a square and scales down in halving steps, which keeps
+     * bilinear filtering from aliasing on large reductions.
+     */
+    static BufferedImage resizeSquare(BufferedImage source, int size) {
+        int edge = Math.min(source.getWidth(), source.getHeight());
+        BufferedImage current = source.getSubimage(
+            (source.getWidth() - edge) / 2, (source.getHeight() - edge) / 2, edge, edge);
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        int currentEdge = edge;
+        do {
+            int nextEdge = Math.max(size, currentEdge / 2);
+            if (currentEdge <= size) {
+                // Never upscale past the source, but always produce the requested size
+                nextEdge = size;
+            }
+            BufferedImage next = new BufferedImage(nextEdge, nextEdge, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, nextEdge, nextEdge, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+            currentEdge = nextEdge;
+        } while (currentEdge != size);
+        return current;
+    }
+
+    static byte[] encode(BufferedImage image, String contentType, float jpegQuality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if ("image/png".equals(contentType)) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
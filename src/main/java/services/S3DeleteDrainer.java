@@ -0,0 +1,180 @@
+package services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.timgroup.statsd.StatsDClient;
+
+import data.S3DeleteTaskRepository;
+import models.S3DeleteTask;
+
+/**
+ * Drains the S3 delete queue with multi-object DeleteObjects calls of up to
+ * 1000 keys.
+ *
+ * Unlike the {@link OutboxRelay}, a pass keeps its claimed rows locked until
+ * the S3 call returns: a re-upload of released content cancels its queued
+ * deletes first, and that cancel must wait for an in-flight delete rather
+ * than race it. Keys that fail are retried with exponential backoff and
+ * dead-lettered after s3.delete-queue.max-attempts.
+ */
+@Service
+public class S3DeleteDrainer {
+    private static final Logger logger = LoggerFactory.getLogger(S3DeleteDrainer.class);
+    // S3 rejects DeleteObjects requests with more keys than this
+    static final int MAX_KEYS_PER_REQUEST = 1000;
+
+    private final S3DeleteTaskRepository s3DeleteTaskRepository;
+    private final AmazonS3 amazonS3;
+    private final StatsDClient statsDClient;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${s3.delete-queue.enabled:true}")
+    private boolean enabled;
+
+    @Value("${s3.delete-queue.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${s3.delete-queue.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${s3.delete-queue.backoff-ms:1000}")
+    private long backoffMillis;
+
+    @Value("${s3.delete-queue.max-backoff-ms:300000}")
+    private long maxBackoffMillis;
+
+    @Autowired
+    public S3DeleteDrainer(S3DeleteTaskRepository s3DeleteTaskRepository, AmazonS3 amazonS3,
+                           StatsDClient statsDClient, TransactionTemplate transactionTemplate) {
+        this.s3DeleteTaskRepository = s3DeleteTaskRepository;
+        this.amazonS3 = amazonS3;
+        this.statsDClient = statsDClient;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(fixedDelayString = "${s3.delete-queue.interval-ms:1000}")
+    public void scheduledDrain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            // Keep going while passes come back full, so a mass cleanup is not paced by the interval
+            while (drain() >= Math.min(batchSize, MAX_KEYS_PER_REQUEST)) {
+                logger.debug("S3 delete queue pass was full, draining again");
+            }
+        } catch (Exception e) {
+            logger.error("S3 delete queue pass failed: {}", e.getMessage(), e);
+            statsDClient.incrementCounter("s3.delete_queue.error");
+        }
+    }
+
+    /**
+     * Runs one pass and returns the number of rows it claimed, deleted or
+     * not.
+     */
+    public int drain() {
+        int claimed = transactionTemplate.execute(status -> drainBatch());
+        reportDepth();
+        return claimed;
+    }
+
+    private int drainBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<S3DeleteTask> due = s3DeleteTaskRepository.findDueForUpdate(now,
+            PageRequest.of(0, Math.min(batchSize, MAX_KEYS_PER_REQUEST)));
+        Map<String, List<S3DeleteTask>> byBucket = new LinkedHashMap<>();
+        for (S3DeleteTask task : due) {
+            byBucket.computeIfAbsent(task.getBucket(), bucket -> new ArrayList<>()).add(task);
+        }
+        byBucket.forEach(this::deleteFromBucket);
+        return due.size();
+    }
+
+    private void deleteFromBucket(String bucket, List<S3DeleteTask> tasks) {
+        // The same key can be queued twice; S3 only needs to hear about it once
+        List<String> keys = tasks.stream().map(S3DeleteTask::getS3Key).distinct().toList();
+        Map<String, String> failed = new HashMap<>();
+        long startTime = System.currentTimeMillis();
+        try {
+            amazonS3.deleteObjects(new DeleteObjectsRequest(bucket)
+                .withKeys(keys.toArray(new String[0]))
+                .withQuiet(true));
+        } catch (MultiObjectDeleteException e) {
+            e.getErrors().forEach(error -> failed.put(error.getKey(), error.getCode() + ": " + error.getMessage()));
+        } catch (SdkClientException e) {
+            String error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            keys.forEach(key -> failed.put(key, error));
+        }
+        statsDClient.recordExecutionTime("s3.delete.time", System.currentTimeMillis() - startTime);
+
+        List<Long> deleted = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (S3DeleteTask task : tasks) {
+            String error = failed.get(task.getS3Key());
+            if (error == null) {
+                deleted.add(task.getId());
+                statsDClient.recordExecutionTime("s3.delete_queue.lag",
+                    Duration.between(task.getCreatedAt(), now).toMillis());
+            } else {
+                markFailed(task, error, now);
+            }
+        }
+        s3DeleteTaskRepository.deleteAllByIdInBatch(deleted);
+
+        statsDClient.count("s3.delete_queue.deleted", deleted.size());
+        if (!failed.isEmpty()) {
+            statsDClient.count("s3.delete.error", failed.size());
+            logger.warn("Failed to delete {} of {} S3 objects in {}", failed.size(), keys.size(), bucket);
+        }
+        logger.info("Deleted {} queued S3 objects from {} in {}ms",
+            keys.size() - failed.size(), bucket, System.currentTimeMillis() - startTime);
+    }
+
+    private void markFailed(S3DeleteTask task, String error, LocalDateTime now) {
+        int attempts = task.getAttempts() + 1;
+        task.setAttempts(attempts);
+        task.setLastError(error.length() > 512 ? error.substring(0, 512) : error);
+        if (attempts >= maxAttempts) {
+            task.setDeadLetteredAt(now);
+            statsDClient.incrementCounter("s3.delete_queue.dead_lettered");
+            logger.error("Giving up on deleting s3://{}/{} after {} attempts: {}",
+                task.getBucket(), task.getS3Key(), attempts, task.getLastError());
+            return;
+        }
+        task.setNextAttemptAt(now.plusNanos(backoffFor(attempts) * 1_000_000));
+        logger.warn("Failed to delete s3://{}/{} (attempt {}), retrying at {}: {}",
+            task.getBucket(), task.getS3Key(), attempts, task.getNextAttemptAt(), task.getLastError());
+    }
+
+    long backoffFor(int attempts) {
+        long backoff = backoffMillis << Math.min(attempts - 1, 20);
+        return Math.min(backoff, maxBackoffMillis);
+    }
+
+    private void reportDepth() {
+        statsDClient.recordGaugeValue("s3.delete_queue.depth", s3DeleteTaskRepository.countPending());
+        statsDClient.recordGaugeValue("s3.delete_queue.dead_letter.depth", s3DeleteTaskRepository.countDeadLettered());
+        LocalDateTime oldest = s3DeleteTaskRepository.findOldestPendingCreatedAt();
+        statsDClient.recordGaugeValue("s3.delete_queue.oldest.age",
+            oldest == null ? 0 : Duration.between(oldest, LocalDateTime.now()).toMillis());
+    }
+}
@@ -0,0 +1,55 @@
+package services;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.timgroup.statsd.StatsDClient;
+
+import data.S3DeleteTaskRepository;
+import models.S3DeleteTask;
+
+/**
+ * Records S3 objects to delete inside the caller's transaction, so the
+ * deletes commit (or roll back) with the rows that referenced them. The
+ * {@link S3DeleteDrainer} removes them from S3 after commit.
+ */
+@Service
+public class S3DeleteQueue {
+    private static final Logger logger = LoggerFactory.getLogger(S3DeleteQueue.class);
+
+    private final S3DeleteTaskRepository s3DeleteTaskRepository;
+    private final StatsDClient statsDClient;
+
+    @Autowired
+    public S3DeleteQueue(S3DeleteTaskRepository s3DeleteTaskRepository, StatsDClient statsDClient) {
+        this.s3DeleteTaskRepository = s3DeleteTaskRepository;
+        this.statsDClient = statsDClient;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String bucket, List<String> keys) {
+        s3DeleteTaskRepository.saveAll(keys.stream().map(key -> new S3DeleteTask(bucket, key)).toList());
+        statsDClient.count("s3.delete_queue.enqueued", keys.size());
+        logger.debug("Queued {} S3 deletes in {}", keys.size(), bucket);
+    }
+
+    /**
+     * Drops pending deletes of the key and everything under "key/". Used
+     * before writing to a key that may have been released earlier, so a
+     * queued delete cannot remove the new object.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void cancel(String bucket, String key) {
+        int cancelled = s3DeleteTaskRepository.deleteByKeyOrPrefix(bucket, key, key + "/%");
+        if (cancelled > 0) {
+            statsDClient.count("s3.delete_queue.cancelled", cancelled);
+            logger.info("Cancelled {} queued S3 deletes for {}", cancelled, key);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package services;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.timgroup.statsd.StatsDClient;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Remembers which S3 objects are known to exist so reads never wait on a
+ * HEAD request. Uploads mark their objects present and deletes forget them.
+ *
+ * Reads that find no fresh entry are answered optimistically. A sampled
+ * fraction of them (s3.existence.sample-rate) queues a HEAD on a background
+ * thread; an object found missing that way is cached as missing, and the
+ * next read of it returns 404. Size is bounded (LRU) and entries expire
+ * after a TTL; "missing" entries use a much shorter one, since a HEAD that
+ * raced an upload or a brief S3 inconsistency must not be trusted for long.
+ * Callers about to act destructively on a missing object re-check it with
+ * {@link #confirmMissing}.
+ */
+@Service
+public class S3ExistenceCache {
+    private static final Logger logger = LoggerFactory.getLogger(S3ExistenceCache.class);
+
+    private final AmazonS3 amazonS3;
+    private final StatsDClient statsDClient;
+    private final String bucketName;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final double sampleRate;
+    private final ThreadPoolExecutor checker;
+
+    private final Map<String, Entry> entries;
+    private final Set<String> checking = new HashSet<>();
+    private long writes = 0;
+
+    @Autowired
+    public S3ExistenceCache(
+            AmazonS3 amazonS3,
+            StatsDClient statsDClient,
+            @Value("${aws.s3.bucket:}") String bucketName,
+            @Value("${s3.existence.max-size:100000}") int maxSize,
+            @Value("${s3.existence.ttl-seconds:3600}") long ttlSeconds,
+            @Value("${s3.existence.negative-ttl-seconds:60}") long negativeTtlSeconds,
+            @Value("${s3.existence.sample-rate:0.05}") double sampleRate) {
+        this.amazonS3 = amazonS3;
+        this.statsDClient = statsDClient;
+        this.bucketName = bucketName;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.negativeTtlMillis = Math.min(negativeTtlSeconds, ttlSeconds) * 1000;
+        this.sampleRate = sampleRate;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > S3ExistenceCache.this.maxSize;
+            }
+        };
+        // One thread is plenty for a trickle of sampled checks; excess checks are dropped, not queued forever
+        this.checker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(100),
+            runnable -> {
+                Thread thread = new Thread(runnable, "s3-existence-check");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+        logger.info("S3ExistenceCache initialized - maxSize: {}, ttl: {}s, negativeTtl: {}s, sampleRate: {}",
+            maxSize, ttlSeconds, negativeTtlMillis / 1000, sampleRate);
+    }
+
+    @PreDestroy
+    public void stop() {
+        checker.shutdownNow();
+    }
+
+    /**
+     * True only when the object has been seen to be missing. Never calls S3
+     * on the caller's thread.
+     */
+    public boolean isKnownMissing(String key) {
+        Boolean exists = lookup(key);
+        if (exists == null) {
+            statsDClient.incrementCounter("s3.existence.cache.miss");
+            if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                scheduleCheck(key);
+            }
+            return false;
+        }
+        statsDClient.incrementCounter("s3.existence.cache.hit");
+        return !exists;
+    }
+
+    /**
+     * Asks S3 directly, on the caller's thread, whether an object the cache
+     * reports missing is really gone, and caches the answer. A failed HEAD
+     * counts as not missing.
+     */
+    public boolean confirmMissing(String key) {
+        long stamp;
+        synchronized (this) {
+            stamp = writes;
+        }
+        try {
+            boolean exists = amazonS3.doesObjectExist(bucketName, key);
+            synchronized (this) {
+                if (stamp == writes) {
+                    put(key, exists);
+                }
+            }
+            statsDClient.incrementCounter(exists ? "s3.existence.confirm.present" : "s3.existence.confirm.missing");
+            if (exists) {
+                logger.warn("Cached missing S3 object exists after all: {}", key);
+            }
+            return !exists;
+        } catch (SdkClientException e) {
+            statsDClient.incrementCounter("s3.existence.confirm.error");
+            logger.error("Existence confirmation failed for {}: {}", key, e.getMessage());
+            return false;
+        }
+    }
+
+    public synchronized void markPresent(String key) {
+        writes++;
+        put(key, true);
+    }
+
+    public synchronized void invalidate(String key) {
+        writes++;
+        entries.remove(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized Boolean lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.exists;
+    }
+
+    private synchronized void put(String key, boolean exists) {
+        if (maxSize > 0) {
+            entries.put(key, new Entry(exists, System.currentTimeMillis() + (exists ? ttlMillis : negativeTtlMillis)));
+        }
+    }
+
+    private void scheduleCheck(String key) {
+        synchronized (this) {
+            if (!checking.add(key)) {
+                return;
+            }
+        }
+        try {
+            checker.execute(() -> check(key));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                checking.remove(key);
+            }
+            statsDClient.incrementCounter("s3.existence.check.dropped");
+        }
+    }
+
+    private void check(String key) {
+        long startTime = System.currentTimeMillis();
+        long stamp;
+        synchronized (this) {
+            stamp = writes;
+        }
+        try {
+            boolean exists = amazonS3.doesObjectExist(bucketName, key);
+            statsDClient.recordExecutionTime("s3.existence.check.time", System.currentTimeMillis() - startTime);
+            statsDClient.incrementCounter("s3.existence.check.count");
+            if (!exists) {
+                statsDClient.incrementCounter("s3.existence.check.missing");
+                logger.warn("Sampled existence check found S3 object missing: {}", key);
+            }
+            synchronized (this) {
+                // An upload or delete while the HEAD was in flight knows better than its answer
+                if (stamp == writes) {
+                    put(key, exists);
+                }
+            }
+        } catch (SdkClientException e) {
+            // Unknown is not missing; a later read may sample it again
+            statsDClient.incrementCounter("s3.existence.check.error");
+            logger.error("Existence check failed for {}: {}", key, e.getMessage());
+        } finally {
+            synchronized (this) {
+                checking.remove(key);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final boolean exists;
+        private final long expiresAt;
+
+        private Entry(boolean exists, long expiresAt) {
+            this.exists = exists;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package services;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.timgroup.statsd.StatsDClient;
+
+import configs.ThreadFactories;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Uploads a stream to S3, switching to multipart upload once it grows past
+ * s3.multipart.threshold-bytes. Parts are read sequentially from the stream
+ * and uploaded in parallel on a shared bounded pool; each upload keeps at
+ * most s3.multipart.max-in-flight-parts parts in memory. A failed part is
+ * retried on its own, and an upload that cannot complete is aborted so no
+ * orphaned parts are left billed in the bucket.
+ */
+@Service
+public class S3MultipartUploader {
+    private static final Logger logger = LoggerFactory.getLogger(S3MultipartUploader.class);
+    // S3 rejects non-final parts below 5MB
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final AmazonS3 amazonS3;
+    private final StatsDClient statsDClient;
+    private final int thresholdBytes;
+    private final int partSizeBytes;
+    private final int maxInFlightParts;
+    private final int maxPartRetries;
+    private final ThreadPoolExecutor partExecutor;
+
+    @Autowired
+    public S3MultipartUploader(
+            AmazonS3 amazonS3,
+            StatsDClient statsDClient,
+            @Value("${s3.multipart.threshold-bytes:8388608}") int thresholdBytes,
+            @Value("${s3.multipart.part-size-bytes:5242880}") int partSizeBytes,
+            @Value("${s3.multipart.threads:8}") int threads,
+            @Value("${s3.multipart.max-in-flight-parts:4}") int maxInFlightParts,
+            @Value("${s3.multipart.max-part-retries:3}") int maxPartRetries,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.amazonS3 = amazonS3;
+        this.statsDClient = statsDClient;
+        this.partSizeBytes = Math.max(MIN_PART_SIZE, partSizeBytes);
+        this.thresholdBytes = Math.max(this.partSizeBytes, thresholdBytes);
+        this.maxInFlightParts = Math.max(1, maxInFlightParts);
+        this.maxPartRetries = maxPartRetries;
+
+        this.partExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            // Bounded in practice by concurrent uploads x max-in-flight-parts
+            new LinkedBlockingQueue<>(),
+            ThreadFactories.named("s3-part-upload", virtualThreads));
+        logger.info("S3MultipartUploader started - threshold: {}B, partSize: {}B, threads: {}, virtual: {}",
+            this.thresholdBytes, this.partSizeBytes, threads, virtualThreads);
+    }
+
+    @PreDestroy
+    public void stop() {
+        partExecutor.shutdownNow();
+    }
+
+    // Streams shorter than this go up in a single put
+    public int getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    /**
+     * Uploads everything the stream yields and returns the number of bytes
+     * stored. Exceptions thrown by the stream itself (for example a size
+     * limit) are rethrown unchanged after any multipart upload is aborted.
+     */
+    public long upload(String bucket, String key, InputStream content, String contentType) throws IOException {
+        long startTime = System.currentTimeMillis();
+        byte[] head = content.readNBytes(thresholdBytes);
+        if (head.length < thresholdBytes) {
+            putSingle(bucket, key, head, contentType);
+            statsDClient.incrementCounter("s3.upload.single");
+            statsDClient.recordExecutionTime("s3.upload.single.time", System.currentTimeMillis() - startTime);
+            return head.length;
+        }
+
+        long size = uploadMultipart(bucket, key, head, content, contentType);
+        statsDClient.incrementCounter("s3.upload.multipart");
+        statsDClient.recordExecutionTime("s3.upload.multipart.time", System.currentTimeMillis() - startTime);
+        return size;
+    }
+
+    private void putSingle(String bucket, String key, byte[] data, String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        metadata.setContentLength(data.length);
+        amazonS3.putObject(bucket, key, new ByteArrayInputStream(data), metadata);
+    }
+
+    private long uploadMultipart(String bucket, String key, byte[] head, InputStream content, String contentType)
+            throws IOException {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        String uploadId = amazonS3.initiateMultipartUpload(
+            new InitiateMultipartUploadRequest(bucket, key, metadata)).getUploadId();
+        logger.info("Started multipart upload {} for {}", uploadId, key);
+
+        Semaphore inFlight = new Semaphore(maxInFlightParts);
+        List<CompletableFuture<PartETag>> parts = new ArrayList<>();
+        long size = 0;
+        try {
+            // The bytes already read for the threshold check become the first part(s)
+            InputStream remaining = new SequenceInputStream(new ByteArrayInputStream(head), content);
+            int partNumber = 1;
+            while (true) {
+                byte[] part = remaining.readNBytes(partSizeBytes);
+                if (part.length == 0) {
+                    break;
+                }
+                size += part.length;
+                inFlight.acquire();
+                int number = partNumber++;
+                parts.add(CompletableFuture
+                    .supplyAsync(() -> uploadPart(bucket, key, uploadId, number, part), partExecutor)
+                    .whenComplete((etag, error) -> inFlight.release()));
+                failFast(parts);
+            }
+
+            List<PartETag> etags = new ArrayList<>(parts.size());
+            for (CompletableFuture<PartETag> part : parts) {
+                etags.add(part.join());
+            }
+            etags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+            amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+            statsDClient.recordGaugeValue("s3.multipart.parts", etags.size());
+            logger.info("Completed multipart upload {} for {} - {} parts, {}B", uploadId, key, etags.size(), size);
+            return size;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(bucket, key, uploadId, parts);
+            throw new IOException("Interrupted during multipart upload", e);
+        } catch (CompletionException e) {
+            abort(bucket, key, uploadId, parts);
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        } catch (IOException | RuntimeException e) {
+            abort(bucket, key, uploadId, parts);
+            throw e;
+        }
+    }
+
+    // Stops reading the client's stream as soon as any part has given up
+    private static void failFast(List<CompletableFuture<PartETag>> parts) {
+        for (CompletableFuture<PartETag> part : parts) {
+            if (part.isCompletedExceptionally()) {
+                part.join();
+            }
+        }
+    }
+
+    private PartETag uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] data) {
+        for (int attempt = 0; ; attempt++) {
+            long startTime = System.currentTimeMillis();
+            try {
+                PartETag etag = amazonS3.uploadPart(new UploadPartRequest()
+                    .withBucketName(bucket)
+                    .withKey(key)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withInputStream(new ByteArrayInputStream(data))
+                    .withPartSize(data.length))
+                    .getPartETag();
+                statsDClient.recordExecutionTime("s3.multipart.part.time", System.currentTimeMillis() - startTime);
+                return etag;
+            } catch (SdkClientException e) {
+                if (attempt >= maxPartRetries) {
+                    statsDClient.incrementCounter("s3.multipart.part.error");
+                    logger.error("Part {} of upload {} failed after {} attempts: {}",
+                        partNumber, uploadId, attempt + 1, e.getMessage());
+                    throw e;
+                }
+                statsDClient.incrementCounter("s3.multipart.part.retry");
+                logger.warn("Retrying part {} of upload {}: {}", partNumber, uploadId, e.getMessage());
+            }
+        }
+    }
+
+    private void abort(String bucket, String key, String uploadId, List<CompletableFuture<PartETag>> parts) {
+        // Parts still uploading when the abort lands can be stored anyway, so let them settle first
+        for (CompletableFuture<PartETag> part : parts) {
+            try {
+                part.join();
+            } catch (CompletionException | CancellationException ignored) {
+                // Already counted and logged by uploadPart
+            }
+        }
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+            statsDClient.incrementCounter("s3.multipart.abort");
+            logger.warn("Aborted multipart upload {} for {}", uploadId, key);
+        } catch (SdkClientException e) {
+            // The bucket lifecycle rule for incomplete uploads is the backstop
+            statsDClient.incrementCounter("s3.multipart.abort.error");
+            logger.error("Failed to abort multipart upload {}: {}", uploadId, e.getMessage());
+        }
+    }
+}
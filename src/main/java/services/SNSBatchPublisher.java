@@ -0,0 +1,232 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.amazonaws.services.sns.AmazonSNS;
+import com.amazonaws.services.sns.model.BatchResultErrorEntry;
+import com.amazonaws.services.sns.model.PublishBatchRequest;
+import com.amazonaws.services.sns.model.PublishBatchRequestEntry;
+import com.amazonaws.services.sns.model.PublishBatchResult;
+import com.amazonaws.services.sns.model.PublishBatchResultEntry;
+import com.timgroup.statsd.StatsDClient;
+
+import configs.ThreadFactories;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Queues SNS messages and sends them as PublishBatch calls of up to 10
+ * entries, collected within a short linger window, from a small dedicated
+ * executor.
+ *
+ * The queue is bounded; {@link #submit(String)} fails fast with a
+ * RejectedExecutionException when it stays full. Entries that fail on the
+ * SNS side are re-queued individually up to sns.batch.max-retries times.
+ */
+@Service
+public class SNSBatchPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(SNSBatchPublisher.class);
+    private static final int MAX_BATCH_ENTRIES = 10;
+
+    private final AmazonSNS snsClient;
+    private final StatsDClient statsDClient;
+
+    @Value("${aws.sns.topic.arn}")
+    private String snsTopicArn;
+
+    @Value("${sns.batch.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${sns.batch.linger-ms:50}")
+    private long lingerMillis;
+
+    @Value("${sns.batch.enqueue-timeout-ms:100}")
+    private long enqueueTimeoutMillis;
+
+    @Value("${sns.batch.threads:2}")
+    private int threads;
+
+    @Value("${sns.batch.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private BlockingQueue<PendingMessage> queue;
+    private ThreadPoolExecutor senderExecutor;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    @Autowired
+    public SNSBatchPublisher(AmazonSNS snsClient, StatsDClient statsDClient) {
+        this.snsClient = snsClient;
+        this.statsDClient = statsDClient;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        senderExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(threads * 2),
+            ThreadFactories.named("sns-publisher", virtualThreads),
+            // A saturated sender pool slows the dispatcher down instead of dropping batches
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "sns-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        logger.info("SNSBatchPublisher started - queueCapacity: {}, linger: {}ms, threads: {}, virtual: {}",
+            queueCapacity, lingerMillis, threads, virtualThreads);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        dispatcher.interrupt();
+        dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        senderExecutor.shutdown();
+        senderExecutor.awaitTermination(10, TimeUnit.SECONDS);
+
+        List<PendingMessage> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        for (PendingMessage message : leftover) {
+            message.future.completeExceptionally(new RejectedExecutionException("SNS publisher stopped"));
+        }
+    }
+
+    public CompletableFuture<String> submit(String messageJson) {
+        PendingMessage message = new PendingMessage(messageJson);
+        try {
+            if (!running || !queue.offer(message, enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                statsDClient.incrementCounter("sns.batch.rejected");
+                message.future.completeExceptionally(new RejectedExecutionException("SNS publish queue is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            message.future.completeExceptionally(e);
+        }
+        return message.future;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                PendingMessage first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<PendingMessage> batch = new ArrayList<>(MAX_BATCH_ENTRIES);
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < MAX_BATCH_ENTRIES) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                statsDClient.recordGaugeValue("sns.batch.queue.depth", queue.size());
+                senderExecutor.execute(() -> sendBatch(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("SNS dispatcher error: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void sendBatch(List<PendingMessage> batch) {
+        Map<String, PendingMessage> byEntryId = new HashMap<>();
+        List<PublishBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            String entryId = String.valueOf(i);
+            byEntryId.put(entryId, batch.get(i));
+            entries.add(new PublishBatchRequestEntry().withId(entryId).withMessage(batch.get(i).messageJson));
+        }
+
+        statsDClient.recordGaugeValue("sns.batch.size", batch.size());
+        long startTime = System.currentTimeMillis();
+        try {
+            PublishBatchResult result = snsClient.publishBatch(new PublishBatchRequest()
+                .withTopicArn(snsTopicArn)
+                .withPublishBatchRequestEntries(entries));
+            statsDClient.recordExecutionTime("sns.batch.publish.time", System.currentTimeMillis() - startTime);
+
+            for (PublishBatchResultEntry success : result.getSuccessful()) {
+                PendingMessage message = byEntryId.remove(success.getId());
+                if (message != null) {
+                    message.future.complete(success.getMessageId());
+                }
+            }
+            statsDClient.count("sns.batch.entry.success", result.getSuccessful().size());
+
+            for (BatchResultErrorEntry failure : result.getFailed()) {
+                PendingMessage message = byEntryId.remove(failure.getId());
+                if (message != null) {
+                    boolean retryable = !Boolean.TRUE.equals(failure.getSenderFault());
+                    retryOrFail(message, retryable,
+                        new IllegalStateException(failure.getCode() + ": " + failure.getMessage()));
+                }
+            }
+        } catch (Exception e) {
+            statsDClient.incrementCounter("sns.batch.publish.error");
+            logger.warn("PublishBatch of {} entries failed: {}", batch.size(), e.getMessage());
+            for (PendingMessage message : byEntryId.values()) {
+                retryOrFail(message, true, e);
+            }
+            byEntryId.clear();
+        }
+
+        // Entries SNS did not mention at all are treated as failed
+        for (PendingMessage message : byEntryId.values()) {
+            retryOrFail(message, true, new IllegalStateException("No result for batch entry"));
+        }
+    }
+
+    private void retryOrFail(PendingMessage message, boolean retryable, Exception cause) {
+        if (retryable && message.attempts < maxRetries && running) {
+            message.attempts++;
+            statsDClient.incrementCounter("sns.batch.entry.retry");
+            if (queue.offer(message)) {
+                return;
+            }
+        }
+        statsDClient.incrementCounter("sns.batch.entry.error");
+        message.future.completeExceptionally(cause);
+    }
+
+    private static final class PendingMessage {
+        private final String messageJson;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private int attempts = 0;
+
+        private PendingMessage(String messageJson) {
+            this.messageJson = messageJson;
+        }
+    }
+}
@@ -6,12 +6,16 @@ import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.timgroup.statsd.StatsDClient;
 
+import configs.AuthenticationCache;
+import configs.UserPrincipal;
+import data.EmailBloomFilter;
+import data.UserCache;
 import data.UserRepo;
 import dto.UserDTO;
 import models.User;
@@ -19,31 +23,44 @@ import models.User;
 @Service
 public class UserManagementService {
     private static final Logger logger = LoggerFactory.getLogger(UserManagementService.class);
-    private static final String EMAIL_REGEX = "^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+$";
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+$");
 
     private final UserRepo userRepository;
-    private final BCryptPasswordEncoder passwordEncoder;
-    private final SNSService snsService;
+    private final PasswordHashingService passwordHashingService;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxService outboxService;
     private final StatsDClient statsDClient;
+    private final AuthenticationCache authenticationCache;
+    private final UserCache userCache;
+    private final EmailBloomFilter emailBloomFilter;
 
     @Autowired
     public UserManagementService(
             UserRepo userRepository, 
-            BCryptPasswordEncoder passwordEncoder,
-            SNSService snsService,
-            StatsDClient statsDClient) {
+            PasswordHashingService passwordHashingService,
+            TransactionTemplate transactionTemplate,
+            OutboxService outboxService,
+            StatsDClient statsDClient,
+            AuthenticationCache authenticationCache,
+            UserCache userCache,
+            EmailBloomFilter emailBloomFilter) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
-        this.snsService = snsService;
+        this.passwordHashingService = passwordHashingService;
+        this.transactionTemplate = transactionTemplate;
+        this.outboxService = outboxService;
         this.statsDClient = statsDClient;
+        this.authenticationCache = authenticationCache;
+        this.userCache = userCache;
+        this.emailBloomFilter = emailBloomFilter;
         logger.info("UserManagementService initialized");
     }
 
-    private boolean isValidEmail(String email) {
-        return Pattern.compile(EMAIL_REGEX).matcher(email).matches();
+    // Shared with BulkRegistrationService so both paths accept the same emails
+    static boolean isValidEmail(String email) {
+        return EMAIL_PATTERN.matcher(email).matches();
     }
 
-    @Transactional
+    // Not @Transactional: the password is hashed before a connection is taken
     public User createUser(String email, String password, String firstName, String lastName) {
         logger.info("Attempting to create user with email: {}", email);
         statsDClient.incrementCounter("api.user.create.attempt");
@@ -54,42 +71,64 @@ public class UserManagementService {
             throw new IllegalArgumentException("Invalid email format");
         }
 
-        if (userRepository.existsByEmail(email)) {
+        // Rejected before hashing, so a duplicate costs neither BCrypt nor a hashing-pool slot
+        if (emailAlreadyRegistered(email)) {
             logger.warn("User already exists with email: {}", email);
             statsDClient.incrementCounter("api.user.create.error.existing_email");
             throw new RuntimeException("User with this email already exists");
         }
 
-        User user = new User();
-        user.setEmail(email);
-        user.setPassword(passwordEncoder.encode(password));
-        user.setFirstName(firstName);
-        user.setLastName(lastName);
-        user.setAccountCreated(LocalDateTime.now());
-        user.setAccountUpdated(LocalDateTime.now());
-        user.setEmailVerified(false);
-
-        user = userRepository.save(user);
-        logger.info("User created successfully with ID: {}", user.getId());
-
-        try {
-            snsService.publishUserRegistration(user.getId(), user.getEmail());
-            statsDClient.incrementCounter("api.user.create.sns.success");
-        } catch (Exception e) {
-            logger.error("Failed to publish SNS message for user verification: {}", e.getMessage(), e);
-            statsDClient.incrementCounter("api.user.create.sns.error");
-            // Continue with user creation even if SNS fails
-        }
+        String passwordHash = passwordHashingService.hash(password);
+
+        User created = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            // Still authoritative: covers a concurrent registration, or one on another instance
+            Long userId = userRepository.insertIfAbsent(email, passwordHash, firstName, lastName, now)
+                .orElseThrow(() -> {
+                    logger.warn("Unique constraint rejected email: {}", email);
+                    statsDClient.incrementCounter("api.user.create.error.existing_email");
+                    emailBloomFilter.put(email);
+                    return new RuntimeException("User with this email already exists");
+                });
+
+            User user = new User();
+            user.setId(userId);
+            user.setEmail(email);
+            user.setFirstName(firstName);
+            user.setLastName(lastName);
+            user.setAccountCreated(now);
+            user.setAccountUpdated(now);
+            user.setEmailVerified(false);
+            logger.info("User created successfully with ID: {}", userId);
+
+            // Written in this transaction; OutboxRelay publishes it to SNS after commit
+            outboxService.enqueueUserRegistration(userId, email);
+            return user;
+        });
+        emailBloomFilter.put(email);
 
         statsDClient.incrementCounter("api.user.create.success");
-        return user;
+        return created;
+    }
+
+    // The filter answers "definitely new" for most signups, which then skip the query
+    private boolean emailAlreadyRegistered(String email) {
+        if (!emailBloomFilter.mightContain(email)) {
+            statsDClient.incrementCounter("registration.bloom.query_skipped");
+            return false;
+        }
+        boolean exists = userRepository.existsByEmail(email);
+        if (!exists) {
+            statsDClient.incrementCounter("registration.bloom.false_positive");
+        }
+        return exists;
     }
 
     public User getAuthenticatedUser(String email) {
         logger.debug("Fetching authenticated user: {}", email);
         statsDClient.incrementCounter("api.user.get.attempt");
 
-        User user = userRepository.findByEmail(email)
+        User user = userCache.findByEmail(email)
                 .orElseThrow(() -> {
                     logger.warn("User not found: {}", email);
                     statsDClient.incrementCounter("api.user.get.error.not_found");
@@ -106,23 +145,31 @@ public class UserManagementService {
         return user;
     }
 
-    @Transactional
-    public void updateUser(UserDTO updatedUserDTO, String email) {
-        logger.debug("Attempting to update user: {}", email);
-        statsDClient.incrementCounter("api.user.update.attempt");
+    public User getAuthenticatedUser(UserPrincipal principal) {
+        logger.debug("Fetching authenticated user from principal: {}", principal.getEmail());
+        statsDClient.incrementCounter("api.user.get.attempt");
 
-        User existingUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    logger.warn("User not found for update: {}", email);
-                    statsDClient.incrementCounter("api.user.update.error.not_found");
-                    return new RuntimeException("User not found");
-                });
+        requireVerified(principal);
 
-        if (!existingUser.isEmailVerified()) {
-            logger.warn("Unverified user attempting update: {}", email);
-            statsDClient.incrementCounter("api.user.update.error.not_verified");
-            throw new RuntimeException("Email not verified. Please verify your email before updating profile.");
+        // The security layer already loaded the row
+        User user = principal.toUser();
+
+        statsDClient.incrementCounter("api.user.get.success");
+        return user;
+    }
+
+    public void requireVerified(UserPrincipal principal) {
+        if (!principal.isEmailVerified()) {
+            logger.warn("Unverified user attempting access: {}", principal.getEmail());
+            statsDClient.incrementCounter("api.user.get.error.not_verified");
+            throw new RuntimeException("Email not verified. Please check your email for verification link.");
         }
+    }
+
+    // Not @Transactional: a new password is hashed before a connection is taken
+    public void updateUser(UserDTO updatedUserDTO, String email) {
+        logger.debug("Attempting to update user: {}", email);
+        statsDClient.incrementCounter("api.user.update.attempt");
 
         if (updatedUserDTO.getEmail() != null ||
             updatedUserDTO.getAccountCreated() != null ||
@@ -132,24 +179,55 @@ public class UserManagementService {
             throw new IllegalArgumentException("Attempted to update disallowed fields");
         }
 
-        updateUserFields(existingUser, updatedUserDTO);
-        existingUser.setAccountUpdated(LocalDateTime.now());
-        userRepository.save(existingUser);
-        
-        statsDClient.incrementCounter("api.user.update.success");
-        logger.info("User updated successfully: {}", email);
-    }
-
-    private void updateUserFields(User existingUser, UserDTO updatedUserDTO) {
-        if (updatedUserDTO.getFirstName() != null) {
-            existingUser.setFirstName(updatedUserDTO.getFirstName());
+        // Cheap rejections first, so they cost no BCrypt hash. A cached "unverified" may predate a
+        // verification handled by another instance, so it is re-read before rejecting.
+        User existing = userCache.findByEmail(email).orElse(null);
+        if (existing != null && !existing.isEmailVerified()) {
+            userCache.invalidate(email);
+            existing = userCache.findByEmail(email).orElse(null);
         }
-        if (updatedUserDTO.getLastName() != null) {
-            existingUser.setLastName(updatedUserDTO.getLastName());
+        if (existing == null) {
+            logger.warn("User not found for update: {}", email);
+            statsDClient.incrementCounter("api.user.update.error.not_found");
+            throw new RuntimeException("User not found");
         }
+        if (!existing.isEmailVerified()) {
+            logger.warn("Unverified user attempting update: {}", email);
+            statsDClient.incrementCounter("api.user.update.error.not_verified");
+            throw new RuntimeException("Email not verified. Please verify your email before updating profile.");
+        }
+
+        String newPasswordHash = null;
         if (updatedUserDTO.getPassword() != null && !updatedUserDTO.getPassword().isEmpty()) {
-            existingUser.setPassword(passwordEncoder.encode(updatedUserDTO.getPassword()));
+            newPasswordHash = passwordHashingService.hash(updatedUserDTO.getPassword());
         }
+        String passwordHash = newPasswordHash;
+
+        transactionTemplate.executeWithoutResult(status -> {
+            int updated = userRepository.updateVerifiedProfile(email,
+                updatedUserDTO.getFirstName(), updatedUserDTO.getLastName(), passwordHash, LocalDateTime.now());
+
+            if (updated == 0) {
+                // The cached row was stale; only this path pays for a second query, to report why
+                boolean exists = userRepository.existsByEmail(email);
+                if (!exists) {
+                    logger.warn("User not found for update: {}", email);
+                    statsDClient.incrementCounter("api.user.update.error.not_found");
+                    throw new RuntimeException("User not found");
+                }
+                logger.warn("Unverified user attempting update: {}", email);
+                statsDClient.incrementCounter("api.user.update.error.not_verified");
+                throw new RuntimeException("Email not verified. Please verify your email before updating profile.");
+            }
+
+            if (passwordHash != null) {
+                authenticationCache.invalidate(email);
+            }
+            userCache.invalidateAfterCommit(email);
+        });
+        
+        statsDClient.incrementCounter("api.user.update.success");
+        logger.info("User updated successfully: {}", email);
     }
 
     @Transactional
@@ -157,16 +235,12 @@ public class UserManagementService {
         logger.debug("Attempting to verify email for user: {}", email);
         statsDClient.incrementCounter("api.user.verify.attempt");
 
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    logger.warn("User not found for verification: {}", email);
-                    statsDClient.incrementCounter("api.user.verify.error.not_found");
-                    return new RuntimeException("User not found");
-                });
-
-        user.setEmailVerified(true);
-        user.setAccountUpdated(LocalDateTime.now());
-        userRepository.save(user);
+        if (userRepository.markEmailVerified(email, LocalDateTime.now()) == 0) {
+            logger.warn("User not found for verification: {}", email);
+            statsDClient.incrementCounter("api.user.verify.error.not_found");
+            throw new RuntimeException("User not found");
+        }
+        userCache.invalidateAfterCommit(email);
 
         statsDClient.incrementCounter("api.user.verify.success");
         logger.info("Email verified successfully for user: {}", email);
@@ -0,0 +1,30 @@
+-- Moves existing tables from IDENTITY / VARCHAR ids to the pooled sequences
+-- and native uuid column the entities now expect.
+--
+-- Run once against the webapp database BEFORE starting the new build:
+--   psql -d webapp -f migrate-pooled-ids.sql
+-- Otherwise ddl-auto=update creates the sequences starting at 1 and the
+-- first batch of inserts collides with existing ids.
+
+BEGIN;
+
+-- Sequences step by 50 to match allocationSize on the entities; Hibernate's
+-- pooled optimizer hands out the 50 ids below each value it fetches.
+CREATE SEQUENCE IF NOT EXISTS users_seq INCREMENT BY 50;
+SELECT setval('users_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM users));
+
+CREATE SEQUENCE IF NOT EXISTS verification_tokens_seq INCREMENT BY 50;
+SELECT setval('verification_tokens_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM verification_tokens));
+
+CREATE SEQUENCE IF NOT EXISTS outbox_events_seq INCREMENT BY 50;
+SELECT setval('outbox_events_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM outbox_events));
+
+-- The old IDENTITY defaults would hand out ids from the serial sequences
+ALTER TABLE users ALTER COLUMN id DROP DEFAULT;
+ALTER TABLE verification_tokens ALTER COLUMN id DROP DEFAULT;
+ALTER TABLE outbox_events ALTER COLUMN id DROP DEFAULT;
+
+-- 16-byte uuid instead of a 36-character string; existing values are valid uuid text
+ALTER TABLE profile_pictures ALTER COLUMN id TYPE uuid USING id::uuid;
+
+COMMIT;
@@ -0,0 +1,331 @@
+package config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * In-process stand-in for S3 covering single puts and multipart uploads.
+ * Each part upload can be slowed down or made to fail, and the stand-in
+ * records how many parts were in flight at once and which uploads were
+ * aborted. Reads (getObject, getObjectMetadata, doesObjectExist) can be
+ * slowed down or made to fail in the same way. A slowed read in request
+ * form behaves like the real client: it ignores interrupts and is only cut
+ * short by the request's SDK client execution timeout.
+ */
+public class InMemoryAmazonS3 extends AbstractAmazonS3 {
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, String> contentTypes = new ConcurrentHashMap<>();
+    private final AtomicInteger getObjectCalls = new AtomicInteger();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final List<String> abortedUploads = new CopyOnWriteArrayList<>();
+    private final Map<Integer, AtomicInteger> partFailures = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> partLatencyMillis = new ConcurrentHashMap<>();
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final AtomicInteger maxPartsInFlight = new AtomicInteger();
+    private final AtomicInteger partAttempts = new AtomicInteger();
+    private volatile long defaultPartLatencyMillis = 0;
+    private final AtomicInteger slowReads = new AtomicInteger();
+    private final AtomicInteger failedReads = new AtomicInteger();
+    private final AtomicInteger readCalls = new AtomicInteger();
+    private final AtomicInteger timedOutReads = new AtomicInteger();
+    private volatile long slowReadMillis = 0;
+
+    public void setPartLatency(long millis) {
+        this.defaultPartLatencyMillis = millis;
+    }
+
+    public void setPartLatency(int partNumber, long millis) {
+        partLatencyMillis.put(partNumber, millis);
+    }
+
+    // The next `times` attempts at this part number fail with a 500
+    public void failPart(int partNumber, int times) {
+        partFailures.put(partNumber, new AtomicInteger(times));
+    }
+
+    // The next `times` reads each take `millis` longer
+    public void slowReads(int times, long millis) {
+        slowReadMillis = millis;
+        slowReads.set(times);
+    }
+
+    // The next `times` reads fail with a 503
+    public void failReads(int times) {
+        failedReads.set(times);
+    }
+
+    public int getReadCalls() {
+        return readCalls.get();
+    }
+
+    // Reads ended by their SDK client execution timeout
+    public int getTimedOutReads() {
+        return timedOutReads.get();
+    }
+
+    public byte[] getObjectBytes(String bucket, String key) {
+        return objects.get(bucket + "/" + key);
+    }
+
+    public List<String> getAbortedUploads() {
+        return abortedUploads;
+    }
+
+    public int getOpenUploads() {
+        return uploads.size();
+    }
+
+    public int getMaxPartsInFlight() {
+        return maxPartsInFlight.get();
+    }
+
+    public int getPartAttempts() {
+        return partAttempts.get();
+    }
+
+    public int getGetObjectCalls() {
+        return getObjectCalls.get();
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucketName, String key, InputStream input, ObjectMetadata metadata) {
+        objects.put(bucketName + "/" + key, readAll(input));
+        if (metadata != null && metadata.getContentType() != null) {
+            contentTypes.put(bucketName + "/" + key, metadata.getContentType());
+        }
+        return new PutObjectResult();
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        getObjectCalls.incrementAndGet();
+        injectReadFaults(null);
+        return read(bucketName, key);
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        getObjectCalls.incrementAndGet();
+        injectReadFaults(request);
+        return read(request.getBucketName(), request.getKey());
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+        injectReadFaults(request);
+        return read(request.getBucketName(), request.getKey()).getObjectMetadata();
+    }
+
+    private S3Object read(String bucketName, String key) {
+        byte[] data = objects.get(bucketName + "/" + key);
+        if (data == null) {
+            AmazonS3Exception notFound = new AmazonS3Exception("The specified key does not exist.");
+            notFound.setStatusCode(404);
+            throw notFound;
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        metadata.setContentType(contentTypes.get(bucketName + "/" + key));
+        metadata.setHeader("ETag", Integer.toHexString(Arrays.hashCode(data)));
+        S3Object object = new S3Object();
+        object.setBucketName(bucketName);
+        object.setKey(key);
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new ByteArrayInputStream(data));
+        return object;
+    }
+
+    @Override
+    public boolean doesObjectExist(String bucketName, String objectName) {
+        injectReadFaults(null);
+        return objects.containsKey(bucketName + "/" + objectName);
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String key) {
+        objects.remove(bucketName + "/" + key);
+    }
+
+    @Override
+    public CopyObjectResult copyObject(String sourceBucketName, String sourceKey,
+            String destinationBucketName, String destinationKey) {
+        byte[] data = objects.get(sourceBucketName + "/" + sourceKey);
+        if (data == null) {
+            throw new AmazonS3Exception("NoSuchKey: " + sourceKey);
+        }
+        objects.put(destinationBucketName + "/" + destinationKey, data);
+        String contentType = contentTypes.get(sourceBucketName + "/" + sourceKey);
+        if (contentType != null) {
+            contentTypes.put(destinationBucketName + "/" + destinationKey, contentType);
+        }
+        return new CopyObjectResult();
+    }
+
+    @Override
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+        List<DeleteObjectsResult.DeletedObject> deleted = new ArrayList<>();
+        for (DeleteObjectsRequest.KeyVersion keyVersion : request.getKeys()) {
+            objects.remove(request.getBucketName() + "/" + keyVersion.getKey());
+            DeleteObjectsResult.DeletedObject object = new DeleteObjectsResult.DeletedObject();
+            object.setKey(keyVersion.getKey());
+            deleted.add(object);
+        }
+        return new DeleteObjectsResult(request.getQuiet() ? new ArrayList<>() : deleted);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public String getRegionName() {
+        return "us-east-1";
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentHashMap<>());
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        partAttempts.incrementAndGet();
+        int inFlight = partsInFlight.incrementAndGet();
+        maxPartsInFlight.accumulateAndGet(inFlight, Math::max);
+        try {
+            long latency = partLatencyMillis.getOrDefault(request.getPartNumber(), defaultPartLatencyMillis);
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            AtomicInteger failures = partFailures.get(request.getPartNumber());
+            if (failures != null && failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                AmazonS3Exception failure = new AmazonS3Exception("Injected part failure");
+                failure.setStatusCode(500);
+                throw failure;
+            }
+            Map<Integer, byte[]> parts = uploads.get(request.getUploadId());
+            if (parts == null) {
+                throw new AmazonS3Exception("NoSuchUpload");
+            }
+            parts.put(request.getPartNumber(), readAll(request.getInputStream()));
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonS3Exception("Interrupted");
+        } finally {
+            partsInFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        Map<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+        if (parts == null) {
+            throw new AmazonS3Exception("NoSuchUpload");
+        }
+        ByteArrayOutputStream object = new ByteArrayOutputStream();
+        List<PartETag> etags = new ArrayList<>(request.getPartETags());
+        for (PartETag etag : etags) {
+            object.writeBytes(parts.get(etag.getPartNumber()));
+        }
+        objects.put(request.getBucketName() + "/" + request.getKey(), object.toByteArray());
+        return new CompleteMultipartUploadResult();
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        uploads.remove(request.getUploadId());
+        abortedUploads.add(request.getUploadId());
+    }
+
+    private void injectReadFaults(AmazonWebServiceRequest request) {
+        readCalls.incrementAndGet();
+        if (slowReads.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            if (request != null) {
+                slowRequest(request.getSdkClientExecutionTimeout());
+            } else {
+                try {
+                    Thread.sleep(slowReadMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AmazonS3Exception("Interrupted");
+                }
+            }
+        }
+        if (failedReads.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            AmazonS3Exception failure = new AmazonS3Exception("Injected read failure");
+            failure.setStatusCode(503);
+            throw failure;
+        }
+    }
+
+    private void slowRequest(Integer timeoutMillis) {
+        long delay = timeoutMillis == null ? slowReadMillis : Math.min(slowReadMillis, timeoutMillis);
+        long until = System.nanoTime() + delay * 1_000_000;
+        boolean interrupted = false;
+        long remaining;
+        while ((remaining = until - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (delay < slowReadMillis) {
+            timedOutReads.incrementAndGet();
+            throw new ClientExecutionTimeoutException("Client execution did not complete before the specified timeout");
+        }
+    }
+
+    private static byte[] readAll(InputStream input) {
+        try {
+            return input.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.sns.AbstractAmazonSNS;
+import com.amazonaws.services.sns.model.AmazonSNSException;
+import com.amazonaws.services.sns.model.BatchResultErrorEntry;
+import com.amazonaws.services.sns.model.PublishBatchRequest;
+import com.amazonaws.services.sns.model.PublishBatchRequestEntry;
+import com.amazonaws.services.sns.model.PublishBatchResult;
+import com.amazonaws.services.sns.model.PublishBatchResultEntry;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+
+/**
+ * In-process stand-in for SNS that records published messages and can be
+ * told to fail the next few messages or to stall the next batch.
+ */
+public class InMemoryAmazonSNS extends AbstractAmazonSNS {
+    private final List<String> published = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failuresRemaining = new AtomicInteger();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicLong stallMillis = new AtomicLong();
+
+    @Override
+    public PublishResult publish(PublishRequest request) {
+        if (failuresRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            throw new AmazonSNSException("Injected failure");
+        }
+        published.add(request.getMessage());
+        return new PublishResult().withMessageId(UUID.randomUUID().toString());
+    }
+
+    // Injected failures apply per entry and are reported as retryable (server-side) errors
+    @Override
+    public PublishBatchResult publishBatch(PublishBatchRequest request) {
+        batchSizes.add(request.getPublishBatchRequestEntries().size());
+        long stall = stallMillis.getAndSet(0);
+        if (stall > 0) {
+            try {
+                Thread.sleep(stall);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonSNSException("Interrupted");
+            }
+        }
+        PublishBatchResult result = new PublishBatchResult()
+            .withSuccessful(new ArrayList<>())
+            .withFailed(new ArrayList<>());
+        for (PublishBatchRequestEntry entry : request.getPublishBatchRequestEntries()) {
+            if (failuresRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                result.getFailed().add(new BatchResultErrorEntry()
+                    .withId(entry.getId())
+                    .withCode("InternalError")
+                    .withMessage("Injected failure")
+                    .withSenderFault(false));
+            } else {
+                published.add(entry.getMessage());
+                result.getSuccessful().add(new PublishBatchResultEntry()
+                    .withId(entry.getId())
+                    .withMessageId(UUID.randomUUID().toString()));
+            }
+        }
+        return result;
+    }
+
+    public void failNext(int calls) {
+        failuresRemaining.set(calls);
+    }
+
+    // The next PublishBatch call takes this long before it succeeds
+    public void stallNext(long millis) {
+        stallMillis.set(millis);
+    }
+
+    public List<String> getPublished() {
+        return published;
+    }
+
+    public List<Integer> getBatchSizes() {
+        return batchSizes;
+    }
+
+    public void reset() {
+        published.clear();
+        batchSizes.clear();
+        failuresRemaining.set(0);
+        stallMillis.set(0);
+    }
+}
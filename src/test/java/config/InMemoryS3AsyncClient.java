@@ -0,0 +1,199 @@
+package config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+import configs.ThreadFactories;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * In-process stand-in for the v2 S3AsyncClient calls AsyncPictureStorage
+ * makes (put, copy, delete, head, get), backed by an InMemoryAmazonS3 so
+ * both clients see the same bucket. Like the SDK, it completes every
+ * future on its own response threads rather than the caller's.
+ */
+public class InMemoryS3AsyncClient implements S3AsyncClient {
+    private final InMemoryAmazonS3 s3;
+    private final ExecutorService responseExecutor =
+        Executors.newCachedThreadPool(ThreadFactories.named("s3-async-response", false));
+
+    public InMemoryS3AsyncClient(InMemoryAmazonS3 s3) {
+        this.s3 = s3;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        responseExecutor.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<PutObjectResponse> putObject(PutObjectRequest request, AsyncRequestBody body) {
+        return readAll(body).thenApplyAsync(content -> {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(content.length);
+            metadata.setContentType(request.contentType());
+            s3.putObject(request.bucket(), request.key(), new ByteArrayInputStream(content), metadata);
+            return PutObjectResponse.builder().eTag(etag(content)).build();
+        }, responseExecutor);
+    }
+
+    @Override
+    public CompletableFuture<CopyObjectResponse> copyObject(CopyObjectRequest request) {
+        return respond(() -> {
+            s3.copyObject(request.sourceBucket(), request.sourceKey(),
+                request.destinationBucket(), request.destinationKey());
+            return CopyObjectResponse.builder().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<DeleteObjectResponse> deleteObject(DeleteObjectRequest request) {
+        return respond(() -> {
+            s3.deleteObject(request.bucket(), request.key());
+            return DeleteObjectResponse.builder().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<HeadObjectResponse> headObject(HeadObjectRequest request) {
+        return respond(() -> {
+            byte[] content = s3.getObjectBytes(request.bucket(), request.key());
+            if (content == null) {
+                throw notFound(request.key());
+            }
+            return HeadObjectResponse.builder().contentLength((long) content.length).eTag(etag(content)).build();
+        });
+    }
+
+    @Override
+    public <ReturnT> CompletableFuture<ReturnT> getObject(GetObjectRequest request,
+            AsyncResponseTransformer<GetObjectResponse, ReturnT> transformer) {
+        CompletableFuture<ReturnT> result = transformer.prepare();
+        responseExecutor.execute(() -> {
+            byte[] content;
+            String contentType;
+            try (S3Object object = s3.getObject(request.bucket(), request.key())) {
+                content = object.getObjectContent().readAllBytes();
+                contentType = object.getObjectMetadata().getContentType();
+            } catch (AmazonS3Exception | IOException e) {
+                Throwable error = e instanceof AmazonS3Exception s3Error ? translate(s3Error) : e;
+                transformer.exceptionOccurred(error);
+                result.completeExceptionally(error);
+                return;
+            }
+            byte[] body = request.range() == null ? content : slice(content, request.range());
+            transformer.onResponse(GetObjectResponse.builder()
+                .contentLength((long) body.length)
+                .contentType(contentType)
+                .eTag(etag(content))
+                .build());
+            transformer.onStream(AsyncRequestBody.fromBytes(body));
+        });
+        return result;
+    }
+
+    private <T> CompletableFuture<T> respond(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        responseExecutor.execute(() -> {
+            try {
+                result.complete(call.get());
+            } catch (AmazonS3Exception e) {
+                result.completeExceptionally(translate(e));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // The whole body of a put, collected as the SDK's HTTP client would stream it
+    private static CompletableFuture<byte[]> readAll(AsyncRequestBody body) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                byte[] chunk = new byte[buffer.remaining()];
+                buffer.get(chunk);
+                out.write(chunk, 0, chunk.length);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.completeExceptionally(error);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(out.toByteArray());
+            }
+        });
+        return result;
+    }
+
+    // "bytes=start-end" as AsyncPictureStorage.readRange sends it
+    private static byte[] slice(byte[] content, String range) {
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int start = (int) Math.min(content.length, Long.parseLong(bounds[0]));
+        int end = (int) Math.min(content.length - 1, Long.parseLong(bounds[1]));
+        return Arrays.copyOfRange(content, start, Math.max(start, end + 1));
+    }
+
+    private static String etag(byte[] content) {
+        return Integer.toHexString(Arrays.hashCode(content));
+    }
+
+    private static S3Exception notFound(String key) {
+        return (S3Exception) S3Exception.builder()
+            .statusCode(404)
+            .message("The specified key does not exist: " + key)
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("NoSuchKey").errorMessage("Not Found").build())
+            .build();
+    }
+
+    private static S3Exception translate(AmazonS3Exception e) {
+        return (S3Exception) S3Exception.builder()
+            .statusCode(e.getStatusCode())
+            .message(e.getMessage())
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode(e.getErrorCode()).errorMessage(e.getErrorMessage()).build())
+            .build();
+    }
+}
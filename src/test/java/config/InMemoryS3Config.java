@@ -0,0 +1,22 @@
+package config;
+
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+@TestConfiguration
+public class InMemoryS3Config {
+
+    @Bean
+    @Primary
+    public InMemoryAmazonS3 inMemoryAmazonS3() {
+        return new InMemoryAmazonS3();
+    }
+
+    // Replaces the Netty client S3Config builds for profile.picture.storage.engine=async
+    @Bean(destroyMethod = "close")
+    @Primary
+    public InMemoryS3AsyncClient inMemoryS3AsyncClient(InMemoryAmazonS3 inMemoryAmazonS3) {
+        return new InMemoryS3AsyncClient(inMemoryAmazonS3);
+    }
+}
@@ -0,0 +1,15 @@
+package config;
+
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+@TestConfiguration
+public class InMemorySnsConfig {
+
+    @Bean
+    @Primary
+    public InMemoryAmazonSNS inMemoryAmazonSNS() {
+        return new InMemoryAmazonSNS();
+    }
+}
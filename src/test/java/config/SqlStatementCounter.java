@@ -0,0 +1,27 @@
+package config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate statement inspector that counts every SQL statement prepared,
+ * so tests can assert how many round trips an endpoint costs.
+ */
+public class SqlStatementCounter implements StatementInspector {
+    private static final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public String inspect(String sql) {
+        count.incrementAndGet();
+        return sql;
+    }
+
+    public static void reset() {
+        count.set(0);
+    }
+
+    public static int get() {
+        return count.get();
+    }
+}
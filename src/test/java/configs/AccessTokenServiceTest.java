@@ -0,0 +1,121 @@
+package configs;
+
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import data.UserCache;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import models.User;
+
+public class AccessTokenServiceTest {
+
+    private static final String SECRET = "test-jwt-secret";
+
+    private final UserCache userCache = mock(UserCache.class);
+    private final AccessTokenService service = new AccessTokenService(
+        userCache, new UserPrincipalFactory(Set.of("partner@example.com")), SECRET, 900);
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        user = new User();
+        user.setId(7L);
+        user.setEmail("a@example.com");
+        user.setPassword("$2a$10$original");
+        user.setFirstName("Jane");
+        user.setLastName("Doe");
+        user.setAccountCreated(LocalDateTime.now());
+        user.setAccountUpdated(LocalDateTime.now());
+        user.setEmailVerified(true);
+        when(userCache.findById(7L)).thenAnswer(invocation -> Optional.of(copy(user)));
+    }
+
+    private static User copy(User source) {
+        User user = new User();
+        user.setId(source.getId());
+        user.setEmail(source.getEmail());
+        user.setPassword(source.getPassword());
+        user.setFirstName(source.getFirstName());
+        user.setLastName(source.getLastName());
+        user.setAccountCreated(source.getAccountCreated());
+        user.setAccountUpdated(source.getAccountUpdated());
+        user.setEmailVerified(source.isEmailVerified());
+        return user;
+    }
+
+    private String issue() {
+        return service.issueToken(UserPrincipal.fromUser(user));
+    }
+
+    @Test
+    public void testTokenResolvesToCurrentUserWithoutPassword() {
+        UserPrincipal principal = service.toPrincipal(service.verifyToken(issue()));
+
+        assertEquals(7L, principal.getId());
+        assertEquals("Jane", principal.toUser().getFirstName());
+        assertTrue(principal.isEmailVerified());
+        assertNull(principal.getPassword());
+    }
+
+    @Test
+    public void testPasswordChangeInvalidatesEarlierTokens() {
+        String token = issue();
+
+        user.setPassword("$2a$10$changed");
+
+        assertThrows(JwtException.class, () -> service.toPrincipal(service.verifyToken(token)));
+        assertEquals(7L, service.toPrincipal(service.verifyToken(issue())).getId());
+    }
+
+    @Test
+    public void testVerifiedFlagComesFromCurrentRow() {
+        user.setEmailVerified(false);
+        String token = issue();
+        assertFalse(service.toPrincipal(service.verifyToken(token)).isEmailVerified());
+
+        user.setEmailVerified(true);
+
+        assertTrue(service.toPrincipal(service.verifyToken(token)).isEmailVerified());
+    }
+
+    @Test
+    public void testDeletedUserAndVerificationLinkAreRejected() {
+        String token = issue();
+        when(userCache.findById(7L)).thenReturn(Optional.empty());
+        assertThrows(JwtException.class, () -> service.toPrincipal(service.verifyToken(token)));
+
+        String verificationLink = Jwts.builder()
+            .setSubject("a@example.com")
+            .setExpiration(new Date(System.currentTimeMillis() + 60000))
+            .signWith(SignatureAlgorithm.HS256, SECRET.getBytes())
+            .compact();
+        assertThrows(JwtException.class, () -> service.verifyToken(verificationLink));
+    }
+
+    @Test
+    public void testPartnerRoleIsGrantedToTokenPrincipals() {
+        assertFalse(hasRole(service.toPrincipal(service.verifyToken(issue())), "ROLE_PARTNER"));
+
+        user.setEmail("partner@example.com");
+
+        assertTrue(hasRole(service.toPrincipal(service.verifyToken(issue())), "ROLE_PARTNER"));
+    }
+
+    private static boolean hasRole(UserPrincipal principal, String role) {
+        return principal.getAuthorities().stream().anyMatch(authority -> role.equals(authority.getAuthority()));
+    }
+}
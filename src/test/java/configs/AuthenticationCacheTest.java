@@ -0,0 +1,70 @@
+package configs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.timgroup.statsd.StatsDClient;
+
+public class AuthenticationCacheTest {
+
+    private StatsDClient statsDClient;
+    private AuthenticationCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        statsDClient = Mockito.mock(StatsDClient.class);
+        cache = new AuthenticationCache(statsDClient, 2, 300);
+    }
+
+    @Test
+    public void testHitAfterPut() {
+        assertFalse(cache.isVerified("a@example.com", "secret", "hash1"));
+        cache.put("a@example.com", "secret", "hash1");
+        assertTrue(cache.isVerified("a@example.com", "secret", "hash1"));
+        verify(statsDClient).incrementCounter("auth.cache.hit");
+    }
+
+    @Test
+    public void testWrongPasswordOrChangedHashMisses() {
+        cache.put("a@example.com", "secret", "hash1");
+        assertFalse(cache.isVerified("a@example.com", "other", "hash1"));
+        assertFalse(cache.isVerified("a@example.com", "secret", "hash2"));
+    }
+
+    @Test
+    public void testInvalidateRemovesUserEntries() {
+        cache.put("a@example.com", "secret", "hash1");
+        cache.put("b@example.com", "secret", "hash2");
+        cache.invalidate("a@example.com");
+        assertFalse(cache.isVerified("a@example.com", "secret", "hash1"));
+        assertTrue(cache.isVerified("b@example.com", "secret", "hash2"));
+    }
+
+    @Test
+    public void testSizeBoundEvictsEldest() {
+        cache.put("a@example.com", "secret", "hash1");
+        cache.put("b@example.com", "secret", "hash2");
+        cache.put("c@example.com", "secret", "hash3");
+        assertEquals(2, cache.size());
+        assertFalse(cache.isVerified("a@example.com", "secret", "hash1"));
+        verify(statsDClient).incrementCounter("auth.cache.eviction");
+    }
+
+    @Test
+    public void testExpiredEntryMisses() {
+        AuthenticationCache expiring = new AuthenticationCache(statsDClient, 10, 0);
+        expiring.put("a@example.com", "secret", "hash1");
+        // ttl of zero means the entry is stale as soon as the clock moves
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() == start) {
+            Thread.onSpinWait();
+        }
+        assertFalse(expiring.isVerified("a@example.com", "secret", "hash1"));
+    }
+}
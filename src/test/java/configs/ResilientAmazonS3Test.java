@@ -0,0 +1,231 @@
+package configs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.timgroup.statsd.StatsDClient;
+
+import config.InMemoryAmazonS3;
+
+public class ResilientAmazonS3Test {
+
+    private final InMemoryAmazonS3 s3 = new InMemoryAmazonS3();
+    private final StatsDClient statsDClient = mock(StatsDClient.class);
+    private S3CircuitBreaker breaker;
+    private AmazonS3 client;
+
+    @BeforeEach
+    public void setUp() {
+        s3.putObject("bucket", "content/abc", new ByteArrayInputStream(new byte[] {1, 2, 3}), new ObjectMetadata());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.shutdown();
+    }
+
+    // 200ms minimum timeout and a 20ms minimum hedge delay; the stand-in answers in well under both
+    private void newClient(double hedgeBudget, long breakerOpenMillis) {
+        newClient(hedgeBudget, breakerOpenMillis, 100);
+    }
+
+    private void newClient(double hedgeBudget, long breakerOpenMillis, int maxConcurrentAttempts) {
+        breaker = new S3CircuitBreaker(statsDClient, 10, 5, 0.5, breakerOpenMillis);
+        client = new ResilientAmazonS3(s3, statsDClient, breaker, 200, 2000, 3.0, 20, hedgeBudget,
+            maxConcurrentAttempts, false).proxy();
+    }
+
+    // Enough fast reads for the percentiles, and so the timeouts, to replace the 2s maximum
+    private void warmUp() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            try (S3Object object = client.getObject("bucket", "content/abc")) {
+                object.getObjectContent().readAllBytes();
+            }
+            client.doesObjectExist("bucket", "content/abc");
+        }
+    }
+
+    @Test
+    public void testSlowReadIsAnsweredByHedge() throws IOException {
+        newClient(1.0, 10_000);
+        warmUp();
+        int readsBefore = s3.getReadCalls();
+        s3.slowReads(1, 1500);
+
+        long startTime = System.currentTimeMillis();
+        try (S3Object object = client.getObject("bucket", "content/abc")) {
+            assertArrayEquals(new byte[] {1, 2, 3}, object.getObjectContent().readAllBytes());
+        }
+
+        assertTrue(System.currentTimeMillis() - startTime < 1000);
+        assertEquals(readsBefore + 2, s3.getReadCalls());
+        verify(statsDClient).incrementCounter("s3.resilience.getObject.hedge");
+        verify(statsDClient).incrementCounter("s3.resilience.getObject.hedge.win");
+    }
+
+    @Test
+    public void testNoHedgeWithoutBudget() throws IOException {
+        newClient(0.0, 10_000);
+        warmUp();
+        int readsBefore = s3.getReadCalls();
+        s3.slowReads(1, 100);
+
+        assertTrue(client.doesObjectExist("bucket", "content/abc"));
+
+        assertEquals(readsBefore + 1, s3.getReadCalls());
+        verify(statsDClient, never()).incrementCounter("s3.resilience.doesObjectExist.hedge");
+    }
+
+    @Test
+    public void testAdaptiveTimeoutTrips() throws IOException {
+        newClient(1.0, 10_000);
+        warmUp();
+        // Both the first attempt and its hedge hang
+        s3.slowReads(2, 1500);
+
+        long startTime = System.currentTimeMillis();
+        SdkClientException e = assertThrows(SdkClientException.class,
+            () -> client.doesObjectExist("bucket", "content/abc"));
+
+        assertTrue(System.currentTimeMillis() - startTime < 1000);
+        assertTrue(e.getMessage().contains("timed out"));
+        verify(statsDClient).incrementCounter("s3.resilience.doesObjectExist.timeout");
+        verify(statsDClient, atLeastOnce()).recordGaugeValue(eq("s3.resilience.doesObjectExist.timeout_ms"), anyLong());
+    }
+
+    @Test
+    public void testTimedOutAttemptsAreAbortedBySdk() throws Exception {
+        newClient(1.0, 10_000);
+        warmUp();
+        // Like the real client, these ignore interrupts and stop only at their SDK timeout
+        s3.slowReads(2, 1500);
+
+        long startTime = System.currentTimeMillis();
+        assertThrows(SdkClientException.class, () -> client.doesObjectExist("bucket", "content/abc"));
+        while (s3.getTimedOutReads() < 2 && System.currentTimeMillis() - startTime < 1000) {
+            Thread.sleep(10);
+        }
+
+        // Both attempts were cut off at the deadline instead of holding their threads for 1.5s
+        assertEquals(2, s3.getTimedOutReads());
+        assertTrue(System.currentTimeMillis() - startTime < 1000);
+    }
+
+    @Test
+    public void testTimeoutsRaiseTheTimeout() throws IOException {
+        newClient(0.0, 10_000);
+        warmUp();
+        s3.slowReads(3, 1500);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(SdkClientException.class, () -> client.doesObjectExist("bucket", "content/abc"));
+        }
+        // Enough further samples for the percentiles to be recomputed with the timeouts in them
+        for (int i = 0; i < 31; i++) {
+            client.doesObjectExist("bucket", "content/abc");
+        }
+
+        verify(statsDClient, atLeastOnce()).recordGaugeValue(eq("s3.resilience.doesObjectExist.timeout_ms"),
+            longThat(timeoutMillis -> timeoutMillis >= 500));
+        // A read slower than the old 200ms timeout now gets through
+        s3.slowReads(1, 400);
+        assertTrue(client.doesObjectExist("bucket", "content/abc"));
+    }
+
+    @Test
+    public void testSaturatedPoolFailsFast() throws Exception {
+        newClient(0.0, 10_000, 1);
+        s3.slowReads(1, 500);
+        CompletableFuture<Boolean> slow = CompletableFuture.supplyAsync(
+            () -> client.doesObjectExist("bucket", "content/abc"));
+        while (s3.getReadCalls() == 0) {
+            Thread.sleep(5);
+        }
+
+        long startTime = System.currentTimeMillis();
+        SdkClientException e = assertThrows(SdkClientException.class,
+            () -> client.doesObjectExist("bucket", "content/abc"));
+
+        assertTrue(System.currentTimeMillis() - startTime < 100);
+        assertTrue(e.getMessage().contains("too many calls in flight"));
+        verify(statsDClient).incrementCounter("s3.resilience.doesObjectExist.rejected");
+        assertTrue(slow.get(5, TimeUnit.SECONDS));
+        // Not a failure of S3, so the breaker does not count it
+        assertEquals(S3CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testNotFoundDoesNotTripBreaker() {
+        newClient(1.0, 10_000);
+
+        for (int i = 0; i < 20; i++) {
+            AmazonS3Exception e = assertThrows(AmazonS3Exception.class, () -> client.getObject("bucket", "gone"));
+            assertEquals(404, e.getStatusCode());
+        }
+
+        assertEquals(S3CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testBreakerOpensAndFailsFast() {
+        newClient(1.0, 10_000);
+        s3.failReads(100);
+        for (int i = 0; i < 5; i++) {
+            AmazonS3Exception e = assertThrows(AmazonS3Exception.class,
+                () -> client.doesObjectExist("bucket", "content/abc"));
+            assertEquals(503, e.getStatusCode());
+        }
+        assertEquals(S3CircuitBreaker.State.OPEN, breaker.getState());
+        int readsBefore = s3.getReadCalls();
+
+        SdkClientException e = assertThrows(SdkClientException.class,
+            () -> client.doesObjectExist("bucket", "content/abc"));
+
+        assertTrue(e.getMessage().contains("circuit breaker open"));
+        assertEquals(readsBefore, s3.getReadCalls());
+        verify(statsDClient).incrementCounter("s3.resilience.breaker.open");
+        verify(statsDClient).incrementCounter("s3.resilience.breaker.rejected");
+        verify(statsDClient).recordGaugeValue("s3.resilience.breaker.state", 1L);
+        // Writes are not guarded
+        client.putObject("bucket", "content/def", new ByteArrayInputStream(new byte[] {4}), new ObjectMetadata());
+        assertArrayEquals(new byte[] {4}, s3.getObjectBytes("bucket", "content/def"));
+    }
+
+    @Test
+    public void testHalfOpenTrialClosesBreaker() throws InterruptedException {
+        newClient(1.0, 100);
+        s3.failReads(5);
+        for (int i = 0; i < 5; i++) {
+            assertThrows(AmazonS3Exception.class, () -> client.doesObjectExist("bucket", "content/abc"));
+        }
+        assertFalse(breaker.tryAcquire());
+
+        Thread.sleep(150);
+
+        assertTrue(client.doesObjectExist("bucket", "content/abc"));
+        assertEquals(S3CircuitBreaker.State.CLOSED, breaker.getState());
+        verify(statsDClient).recordGaugeValue("s3.resilience.breaker.state", 2L);
+    }
+}
@@ -0,0 +1,158 @@
+package controllers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.timgroup.statsd.StatsDClient;
+
+import data.OutboxEventRepository;
+import data.UserCache;
+import data.UserTestRepository;
+import models.User;
+
+@SpringBootTest(classes = com.example.DemoApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"registration.batch.max-size=3", "registration.batch.partner-emails=partner@example.com"})
+@ActiveProfiles("test")
+public class BulkRegistrationTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserTestRepository userTestRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private BCryptPasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UserCache userCache;
+
+    @MockBean
+    private AmazonS3 amazonS3;
+
+    @MockBean
+    private StatsDClient statsDClient;
+
+    @BeforeEach
+    public void setUp() {
+        outboxEventRepository.deleteAll();
+        userTestRepository.deleteAll();
+        saveUser("partner@example.com");
+        saveUser("member@example.com");
+    }
+
+    private void saveUser(String email) {
+        userCache.invalidate(email);
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword(passwordEncoder.encode("password123"));
+        user.setFirstName("Existing");
+        user.setLastName("User");
+        user.setAccountCreated(LocalDateTime.now());
+        user.setAccountUpdated(LocalDateTime.now());
+        user.setEmailVerified(true);
+        userTestRepository.save(user);
+    }
+
+    private ResponseEntity<Map> post(String body, String contentType) {
+        return post(restTemplate.withBasicAuth("partner@example.com", "password123"), body, contentType);
+    }
+
+    private ResponseEntity<Map> post(TestRestTemplate client, String body, String contentType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(contentType));
+        return client.postForEntity("/v1/user/batch", new HttpEntity<>(body, headers), Map.class);
+    }
+
+    @Test
+    public void testRequiresPartnerAccount() {
+        String body = """
+            [{"email":"bulk0@example.com","password":"password123","first_name":"A","last_name":"One"}]
+            """;
+
+        assertEquals(HttpStatus.UNAUTHORIZED, post(restTemplate, body, MediaType.APPLICATION_JSON_VALUE).getStatusCode());
+        assertEquals(HttpStatus.FORBIDDEN, post(restTemplate.withBasicAuth("member@example.com", "password123"),
+            body, MediaType.APPLICATION_JSON_VALUE).getStatusCode());
+        assertEquals(2, userTestRepository.count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNdjsonRowsGetIndividualResults() {
+        String body = """
+            {"email":"bulk1@example.com","password":"password123","first_name":"A","last_name":"One"}
+            {"email":"bulk1@example.com","password":"password123","first_name":"B","last_name":"Two"}
+            {"email":"not-an-email","password":"password123","first_name":"C","last_name":"Three"}
+            """;
+
+        ResponseEntity<Map> response = post(body, "application/x-ndjson");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().get("created"));
+        assertEquals(2, response.getBody().get("failed"));
+        List<Map<String, Object>> results = (List<Map<String, Object>>) response.getBody().get("results");
+        assertEquals("CREATED", results.get(0).get("status"));
+        assertEquals("Duplicate email in request", results.get(1).get("error"));
+        assertEquals("FAILED", results.get(2).get("status"));
+        // The two accounts from setUp plus the one created
+        assertEquals(3, userTestRepository.count());
+        assertEquals(1, outboxEventRepository.count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testJsonArrayRejectsExistingEmails() {
+        String first = """
+            [{"email":"bulk2@example.com","password":"password123","first_name":"A","last_name":"One"}]
+            """;
+        post(first, MediaType.APPLICATION_JSON_VALUE);
+
+        String second = """
+            [{"email":"bulk2@example.com","password":"password123","first_name":"A","last_name":"One"},
+             {"email":"bulk3@example.com","password":"password123","first_name":"B","last_name":"Two"}]
+            """;
+        ResponseEntity<Map> response = post(second, MediaType.APPLICATION_JSON_VALUE);
+
+        List<Map<String, Object>> results = (List<Map<String, Object>>) response.getBody().get("results");
+        assertEquals("User with this email already exists", results.get(0).get("error"));
+        assertEquals("CREATED", results.get(1).get("status"));
+        assertTrue(((Number) results.get(1).get("id")).longValue() > 0);
+        assertEquals(4, userTestRepository.count());
+    }
+
+    @Test
+    public void testRejectsOversizedBatch() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            body.append("{\"email\":\"big").append(i)
+                .append("@example.com\",\"password\":\"p\",\"first_name\":\"A\",\"last_name\":\"B\"}\n");
+        }
+
+        ResponseEntity<Map> response = post(body.toString(), "application/x-ndjson");
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+        assertEquals(2, userTestRepository.count());
+    }
+}
@@ -0,0 +1,108 @@
+package controllers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class MultipartStreamReaderTest {
+
+    private static byte[] body(byte[] fileContent, boolean closed) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--XYZ\r\n"
+            + "Content-Disposition: form-data; name=\"note\"\r\n\r\n"
+            + "hello\r\n"
+            + "--XYZ\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"avatar.png\"\r\n"
+            + "Content-Type: image/png\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.write(fileContent);
+        if (closed) {
+            body.write("\r\n--XYZ--\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        return body.toByteArray();
+    }
+
+    // Hands out at most a few bytes per read so boundaries straddle buffer refills
+    private static InputStream trickle(byte[] data) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] target, int offset, int length) throws IOException {
+                return super.read(target, offset, Math.min(length, 7));
+            }
+        };
+    }
+
+    @Test
+    public void testReadsPartsAcrossSmallReads() throws IOException {
+        byte[] fileContent = new byte[100_000];
+        new Random(42).nextBytes(fileContent);
+        MultipartStreamReader reader = new MultipartStreamReader(trickle(body(fileContent, true)), "XYZ");
+
+        MultipartStreamReader.Part note = reader.nextPart();
+        assertEquals("note", note.getName());
+        assertEquals("hello", new String(note.getBody().readAllBytes(), StandardCharsets.US_ASCII));
+
+        MultipartStreamReader.Part file = reader.nextPart();
+        assertEquals("file", file.getName());
+        assertEquals("avatar.png", file.getFilename());
+        assertEquals("image/png", file.getContentType());
+        assertArrayEquals(fileContent, file.getBody().readAllBytes());
+
+        assertNull(reader.nextPart());
+    }
+
+    @Test
+    public void testSkipsUnreadParts() throws IOException {
+        MultipartStreamReader reader = new MultipartStreamReader(
+            new ByteArrayInputStream(body("png".getBytes(StandardCharsets.US_ASCII), true)), "XYZ");
+
+        reader.nextPart();
+        MultipartStreamReader.Part file = reader.nextPart();
+        assertEquals("png", new String(file.getBody().readAllBytes(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testTruncatedBodyFails() throws IOException {
+        MultipartStreamReader reader = new MultipartStreamReader(
+            new ByteArrayInputStream(body(new byte[1000], false)), "XYZ");
+
+        reader.nextPart();
+        MultipartStreamReader.Part file = reader.nextPart();
+        assertThrows(MultipartStreamReader.MalformedMultipartException.class, () -> file.getBody().readAllBytes());
+    }
+
+    @Test
+    public void testOversizedPreambleIsRejected() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(new byte[10_000]);
+        body.write(body(new byte[10], true));
+        MultipartStreamReader reader = new MultipartStreamReader(
+            new ByteArrayInputStream(body.toByteArray()), "XYZ", 4096);
+
+        assertThrows(MultipartStreamReader.MultipartTooLargeException.class, reader::nextPart);
+    }
+
+    @Test
+    public void testLimitCoversTheWholeBody() throws IOException {
+        byte[] data = body(new byte[1000], true);
+
+        MultipartStreamReader exact = new MultipartStreamReader(new ByteArrayInputStream(data), "XYZ", data.length);
+        exact.nextPart();
+        assertEquals(1000, exact.nextPart().getBody().readAllBytes().length);
+        assertNull(exact.nextPart());
+
+        MultipartStreamReader tooSmall = new MultipartStreamReader(trickle(data), "XYZ", data.length - 100);
+        tooSmall.nextPart();
+        MultipartStreamReader.Part file = tooSmall.nextPart();
+        assertThrows(MultipartStreamReader.MultipartTooLargeException.class, () -> file.getBody().readAllBytes());
+    }
+}
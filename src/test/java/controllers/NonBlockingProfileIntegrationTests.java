@@ -0,0 +1,222 @@
+package controllers;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.timgroup.statsd.StatsDClient;
+
+import config.InMemoryAmazonS3;
+import config.InMemoryS3Config;
+import data.PictureObjectRepository;
+import data.ProfilePictureRepository;
+import data.S3DeleteTaskRepository;
+import data.UserCache;
+import data.UserTestRepository;
+import models.User;
+import services.AsyncPictureStorage;
+import services.PictureStorage;
+
+// /v1/user/self/pic end to end on virtual threads with the async S3 engine, against in-memory S3
+@SpringBootTest(classes = com.example.DemoApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"s3.existence.sample-rate=0", "profile.picture.renditions.sizes=64"})
+@ActiveProfiles({"test", "nonblocking"})
+@Import(InMemoryS3Config.class)
+public class NonBlockingProfileIntegrationTests {
+
+    private static final String BUCKET = "test-bucket";
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserTestRepository userTestRepository;
+
+    @Autowired
+    private ProfilePictureRepository profilePictureRepository;
+
+    @Autowired
+    private PictureObjectRepository pictureObjectRepository;
+
+    @Autowired
+    private S3DeleteTaskRepository s3DeleteTaskRepository;
+
+    @Autowired
+    private BCryptPasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PictureStorage pictureStorage;
+
+    @Autowired
+    private InMemoryAmazonS3 s3;
+
+    @MockBean
+    private StatsDClient statsDClient;
+
+    private HttpHeaders headers;
+
+    @BeforeEach
+    public void setUp() {
+        profilePictureRepository.deleteAll();
+        s3DeleteTaskRepository.deleteAll();
+        pictureObjectRepository.deleteAll();
+        userTestRepository.deleteAll();
+        userCache.invalidate("nonblocking@example.com");
+
+        User user = new User();
+        user.setEmail("nonblocking@example.com");
+        user.setPassword(passwordEncoder.encode("password123"));
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setAccountCreated(LocalDateTime.now());
+        user.setAccountUpdated(LocalDateTime.now());
+        user.setEmailVerified(true);
+        userTestRepository.save(user);
+
+        headers = new HttpHeaders();
+        headers.setBasicAuth("nonblocking@example.com", "password123");
+    }
+
+    private static byte[] png(int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(128, 128, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, rgb);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    private ResponseEntity<String> upload(byte[] picture) {
+        HttpHeaders partHeaders = new HttpHeaders();
+        partHeaders.setContentType(MediaType.IMAGE_PNG);
+        ByteArrayResource file = new ByteArrayResource(picture) {
+            @Override
+            public String getFilename() {
+                return "avatar.png";
+            }
+        };
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("file", new HttpEntity<>(file, partHeaders));
+
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.putAll(headers);
+        requestHeaders.setContentType(MediaType.MULTIPART_FORM_DATA);
+        return restTemplate.exchange("/v1/user/self/pic", HttpMethod.POST,
+            new HttpEntity<>(body, requestHeaders), String.class);
+    }
+
+    private <T> ResponseEntity<T> get(String path, HttpHeaders requestHeaders, Class<T> type) {
+        return restTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(requestHeaders), type);
+    }
+
+    @Test
+    public void testAsyncEngineIsActive() {
+        assertTrue(pictureStorage instanceof AsyncPictureStorage);
+    }
+
+    @Test
+    public void testUploadStoresContentAndIsReturnedByGet() throws Exception {
+        byte[] picture = png(0x336699);
+
+        ResponseEntity<String> created = upload(picture);
+
+        assertEquals(HttpStatus.CREATED, created.getStatusCode());
+        JsonNode uploaded = objectMapper.readTree(created.getBody());
+        assertEquals("avatar.png", uploaded.get("file_name").asText());
+        String contentHash = sha256(picture);
+        assertArrayEquals(picture, s3.getObjectBytes(BUCKET, "content/" + contentHash));
+        assertNotNull(s3.getObjectBytes(BUCKET, "content/" + contentHash + "/64"));
+        assertTrue(pictureObjectRepository.findById(contentHash).orElseThrow().isStored());
+
+        ResponseEntity<String> fetched = get("/v1/user/self/pic", headers, String.class);
+
+        assertEquals(HttpStatus.OK, fetched.getStatusCode());
+        JsonNode fetchedPicture = objectMapper.readTree(fetched.getBody());
+        assertEquals(uploaded.get("id").asText(), fetchedPicture.get("id").asText());
+        assertEquals("avatar.png", fetchedPicture.get("file_name").asText());
+    }
+
+    @Test
+    public void testContentIsDownloadedAndRevalidated() throws Exception {
+        byte[] picture = png(0x993366);
+        assertEquals(HttpStatus.CREATED, upload(picture).getStatusCode());
+
+        ResponseEntity<byte[]> content = get("/v1/user/self/pic/content", headers, byte[].class);
+
+        assertEquals(HttpStatus.OK, content.getStatusCode());
+        assertArrayEquals(picture, content.getBody());
+        assertEquals(MediaType.IMAGE_PNG, content.getHeaders().getContentType());
+        String etag = content.getHeaders().getETag();
+        assertNotNull(etag);
+
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.putAll(headers);
+        conditional.setIfNoneMatch(etag);
+        ResponseEntity<byte[]> notModified = get("/v1/user/self/pic/content", conditional, byte[].class);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+
+        ResponseEntity<byte[]> rendition = get("/v1/user/self/pic/content?size=64", headers, byte[].class);
+        assertEquals(HttpStatus.OK, rendition.getStatusCode());
+        assertNotNull(rendition.getBody());
+        assertTrue(rendition.getBody().length > 0);
+    }
+
+    @Test
+    public void testDeleteRemovesPicture() throws Exception {
+        byte[] picture = png(0x669933);
+        assertEquals(HttpStatus.CREATED, upload(picture).getStatusCode());
+
+        ResponseEntity<Void> deleted = restTemplate.exchange("/v1/user/self/pic", HttpMethod.DELETE,
+            new HttpEntity<>(headers), Void.class);
+
+        assertEquals(HttpStatus.NO_CONTENT, deleted.getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, get("/v1/user/self/pic", headers, String.class).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND,
+            get("/v1/user/self/pic/content", headers, byte[].class).getStatusCode());
+        assertEquals(0, profilePictureRepository.count());
+        // The last reference went, so the original and its rendition are queued for deletion
+        assertNull(pictureObjectRepository.findById(sha256(picture)).orElse(null));
+        assertEquals(2, s3DeleteTaskRepository.count());
+    }
+}
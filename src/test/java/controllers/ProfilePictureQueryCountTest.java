@@ -0,0 +1,126 @@
+package controllers;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.timgroup.statsd.StatsDClient;
+
+import config.SqlStatementCounter;
+import data.ProfilePictureRepository;
+import data.UserCache;
+import data.UserTestRepository;
+import models.ProfilePicture;
+import models.User;
+
+@SpringBootTest(classes = com.example.DemoApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=config.SqlStatementCounter",
+        "s3.existence.sample-rate=0"
+    })
+@ActiveProfiles("test")
+public class ProfilePictureQueryCountTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserTestRepository userTestRepository;
+
+    @Autowired
+    private ProfilePictureRepository profilePictureRepository;
+
+    @Autowired
+    private BCryptPasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UserCache userCache;
+
+    @MockBean
+    private AmazonS3 amazonS3;
+
+    @MockBean
+    private StatsDClient statsDClient;
+
+    private HttpHeaders headers;
+
+    @BeforeEach
+    public void setUp() {
+        profilePictureRepository.deleteAll();
+        userTestRepository.deleteAll();
+        userCache.invalidate("count@example.com");
+
+        User user = new User();
+        user.setEmail("count@example.com");
+        user.setPassword(passwordEncoder.encode("password123"));
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setAccountCreated(LocalDateTime.now());
+        user.setAccountUpdated(LocalDateTime.now());
+        user.setEmailVerified(true);
+        user = userTestRepository.save(user);
+
+        ProfilePicture pic = new ProfilePicture();
+        pic.setUser(user);
+        pic.setFileName("avatar.png");
+        pic.setFileType("image/png");
+        pic.setUrl("https://test-bucket.s3.us-east-1.amazonaws.com/" + user.getId() + "/avatar.png");
+        profilePictureRepository.save(pic);
+
+        headers = new HttpHeaders();
+        headers.setBasicAuth("count@example.com", "password123");
+    }
+
+    @Test
+    public void testGetProfilePictureUsesTwoStatements() {
+        SqlStatementCounter.reset();
+        ResponseEntity<String> response = restTemplate.exchange("/v1/user/self/pic",
+            HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        // One user lookup for authentication, one joined picture + user fetch
+        assertEquals(2, SqlStatementCounter.get());
+        // and no S3 HEAD on the read path
+        verify(amazonS3, never()).doesObjectExist(anyString(), anyString());
+    }
+
+    @Test
+    public void testGetUserUsesOneStatement() {
+        SqlStatementCounter.reset();
+        ResponseEntity<String> response = restTemplate.exchange("/v1/user/self",
+            HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, SqlStatementCounter.get());
+    }
+
+    @Test
+    public void testRepeatGetUserIsServedFromCache() {
+        restTemplate.exchange("/v1/user/self", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        SqlStatementCounter.reset();
+        ResponseEntity<String> response = restTemplate.exchange("/v1/user/self",
+            HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(0, SqlStatementCounter.get());
+    }
+}
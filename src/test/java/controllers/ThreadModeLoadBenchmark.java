@@ -0,0 +1,201 @@
+package controllers;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.timgroup.statsd.StatsDClient;
+
+import data.ProfilePictureRepository;
+import data.UserCache;
+import data.UserTestRepository;
+import models.ProfilePicture;
+import models.User;
+import services.S3ExistenceCache;
+
+/**
+ * GET /v1/user/self/pic under 1,000 concurrent connections, with Tomcat on
+ * its default 200-thread pool and with spring.threads.virtual.enabled. Each
+ * request blocks for a simulated 100ms S3 round trip (the existence check
+ * is stubbed to sleep), so the platform pool caps throughput at roughly
+ * 200 / 0.1s while virtual threads are bounded by the connections.
+ *
+ * Not run by the test suite; start it with
+ * mvn test -Dtest='ThreadModeLoadBenchmark*'
+ * and compare the two "requests/s" lines it prints.
+ */
+public class ThreadModeLoadBenchmark {
+
+    private static final int CONNECTIONS = 1_000;
+    private static final int REQUESTS_PER_CONNECTION = 10;
+    private static final long S3_LATENCY_MILLIS = 100;
+
+    @Nested
+    @SpringBootTest(classes = com.example.DemoApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.threads.virtual.enabled=false", "spring.jpa.show-sql=false"})
+    @ActiveProfiles("test")
+    class PlatformThreads extends Scenario {
+        PlatformThreads() {
+            super("Platform threads");
+        }
+    }
+
+    @Nested
+    @SpringBootTest(classes = com.example.DemoApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.threads.virtual.enabled=true", "spring.jpa.show-sql=false"})
+    @ActiveProfiles("test")
+    class VirtualThreads extends Scenario {
+        VirtualThreads() {
+            super("Virtual threads");
+        }
+    }
+
+    abstract static class Scenario {
+        private final String label;
+
+        @LocalServerPort
+        private int port;
+
+        @Autowired
+        private UserTestRepository userTestRepository;
+
+        @Autowired
+        private ProfilePictureRepository profilePictureRepository;
+
+        @Autowired
+        private BCryptPasswordEncoder passwordEncoder;
+
+        @Autowired
+        private UserCache userCache;
+
+        @MockBean
+        private AmazonS3 amazonS3;
+
+        @MockBean
+        private StatsDClient statsDClient;
+
+        // Stands in for the blocking S3 call on the request path
+        @MockBean
+        private S3ExistenceCache s3ExistenceCache;
+
+        private String authorization;
+
+        Scenario(String label) {
+            this.label = label;
+        }
+
+        @BeforeEach
+        public void setUp() {
+            profilePictureRepository.deleteAll();
+            userTestRepository.deleteAll();
+            userCache.invalidate("load@example.com");
+
+            User user = new User();
+            user.setEmail("load@example.com");
+            user.setPassword(passwordEncoder.encode("password123"));
+            user.setFirstName("John");
+            user.setLastName("Doe");
+            user.setAccountCreated(LocalDateTime.now());
+            user.setAccountUpdated(LocalDateTime.now());
+            user.setEmailVerified(true);
+            user = userTestRepository.save(user);
+
+            ProfilePicture pic = new ProfilePicture();
+            pic.setUser(user);
+            pic.setFileName("avatar.png");
+            pic.setFileType("image/png");
+            pic.setUrl("https://test-bucket.s3.us-east-1.amazonaws.com/" + user.getId() + "/avatar.png");
+            profilePictureRepository.save(pic);
+
+            when(s3ExistenceCache.isKnownMissing(anyString())).thenAnswer(invocation -> {
+                Thread.sleep(S3_LATENCY_MILLIS);
+                return false;
+            });
+            authorization = "Basic " + Base64.getEncoder()
+                .encodeToString("load@example.com:password123".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        public void testThroughputAtOneThousandConnections() throws Exception {
+            HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/v1/user/self/pic"))
+                .header("Authorization", authorization)
+                .timeout(Duration.ofSeconds(60))
+                .GET()
+                .build();
+            // Warms the credential cache so the measured requests skip BCrypt
+            assertEquals(200, client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+
+            List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger failures = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            long startTime;
+            // Clients on virtual threads, so the load generator is not the bottleneck in either mode;
+            // closing the executor waits for every client to finish
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < CONNECTIONS; i++) {
+                    clients.execute(() -> {
+                        try {
+                            start.await();
+                            for (int r = 0; r < REQUESTS_PER_CONNECTION; r++) {
+                                long sent = System.nanoTime();
+                                int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                                latencies.add(System.nanoTime() - sent);
+                                if (status != 200) {
+                                    failures.incrementAndGet();
+                                }
+                            }
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                    });
+                }
+                startTime = System.nanoTime();
+                start.countDown();
+            }
+            long elapsedNanos = System.nanoTime() - startTime;
+
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            System.out.printf("%s: %d connections, %.0f requests/s, p50 %d ms, p99 %d ms, %d failed%n",
+                label, CONNECTIONS, sorted.size() / (elapsedNanos / 1e9),
+                sorted.get(sorted.size() / 2) / 1_000_000,
+                sorted.get((int) (sorted.size() * 0.99)) / 1_000_000,
+                failures.get());
+
+            assertEquals(0, failures.get());
+            assertEquals(CONNECTIONS * REQUESTS_PER_CONNECTION, sorted.size());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package data;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * With 1M registered users, how many existsByEmail queries do 1M new
+ * signups skip, and how long do the lookups take?
+ *
+ * Not run by the test suite; start it with
+ * mvn test -Dtest=EmailBloomFilterBenchmark
+ */
+public class EmailBloomFilterBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    @Test
+    public void testSkipsQueriesAtOneMillionUsers() {
+        EmailBloomFilter filter = EmailBloomFilterTest.loadedFilter(USERS);
+
+        long startTime = System.nanoTime();
+        int skipped = 0;
+        for (int i = 0; i < USERS; i++) {
+            if (!filter.mightContain("signup" + i + "@example.org")) {
+                skipped++;
+            }
+        }
+        long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+        double observedFpp = 1 - (double) skipped / USERS;
+
+        System.out.printf("EmailBloomFilter: %d users, %dKB, %d/%d queries skipped (observed fpp %.4f, expected %.4f) in %dms%n",
+            USERS, filter.memoryBytes() / 1024, skipped, USERS, observedFpp, filter.expectedFalsePositiveRate(), elapsedMillis);
+        assertTrue(observedFpp < 0.02, "false positive rate too high: " + observedFpp);
+    }
+}
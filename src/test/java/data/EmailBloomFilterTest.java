@@ -0,0 +1,64 @@
+package data;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.timgroup.statsd.StatsDClient;
+
+public class EmailBloomFilterTest {
+
+    // Sized for exactly the users loaded, at a 1% target false-positive rate
+    static EmailBloomFilter loadedFilter(int users) {
+        UserRepo userRepo = mock(UserRepo.class);
+        when(userRepo.streamAllEmails()).thenReturn(
+            IntStream.range(0, users).mapToObj(i -> "user" + i + "@example.com"));
+        EmailBloomFilter filter = new EmailBloomFilter(userRepo,
+            new TransactionTemplate(mock(PlatformTransactionManager.class)),
+            mock(StatsDClient.class), users, 0.01);
+        filter.rebuild();
+        return filter;
+    }
+
+    @Test
+    public void testAnswersMaybeUntilLoaded() {
+        UserRepo userRepo = mock(UserRepo.class);
+        when(userRepo.streamAllEmails()).thenReturn(Stream.empty());
+        EmailBloomFilter filter = new EmailBloomFilter(userRepo,
+            new TransactionTemplate(mock(PlatformTransactionManager.class)),
+            mock(StatsDClient.class), 1000, 0.01);
+
+        assertTrue(filter.mightContain("anyone@example.com"));
+        filter.rebuild();
+        assertFalse(filter.mightContain("anyone@example.com"));
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        EmailBloomFilter filter = loadedFilter(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user" + i + "@example.com"));
+        }
+        filter.put("new@example.com");
+        assertTrue(filter.mightContain("new@example.com"));
+    }
+
+    @Test
+    public void testFalsePositiveRateStaysNearTarget() {
+        EmailBloomFilter filter = loadedFilter(10_000);
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("signup" + i + "@example.org")) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+    }
+}
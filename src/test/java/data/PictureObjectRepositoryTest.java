@@ -0,0 +1,146 @@
+package data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.timgroup.statsd.StatsDClient;
+
+import models.PictureObject;
+
+@SpringBootTest(classes = com.example.DemoApplication.class)
+@ActiveProfiles("test")
+public class PictureObjectRepositoryTest {
+
+    private static final String HASH = "a".repeat(64);
+
+    @Autowired
+    private PictureObjectRepository pictureObjectRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private AmazonS3 amazonS3;
+
+    @MockBean
+    private StatsDClient statsDClient;
+
+    @BeforeEach
+    public void setUp() {
+        pictureObjectRepository.deleteAll();
+    }
+
+    // As ProfilePictureService.reserveContent: a lost insert race is retried once
+    private boolean acquire(String hash) {
+        try {
+            return transactionTemplate.execute(status ->
+                pictureObjectRepository.acquire(hash, "image/png", LocalDateTime.now()));
+        } catch (DataIntegrityViolationException e) {
+            return transactionTemplate.execute(status ->
+                pictureObjectRepository.acquire(hash, "image/png", LocalDateTime.now()));
+        }
+    }
+
+    // As ProfilePictureService.releasePendingContent: true when the last reference went
+    private boolean release(String hash) {
+        return transactionTemplate.execute(status -> {
+            pictureObjectRepository.release(hash);
+            return pictureObjectRepository.deleteIfUnreferenced(hash) == 1;
+        });
+    }
+
+    private PictureObject load(String hash) {
+        return pictureObjectRepository.findById(hash).orElseThrow();
+    }
+
+    @Test
+    public void testAcquireCreatesPendingRowThenCounts() {
+        assertFalse(acquire(HASH));
+        PictureObject created = load(HASH);
+        assertEquals(1, created.getRefCount());
+        assertFalse(created.isStored());
+        assertEquals("image/png", created.getContentType());
+
+        transactionTemplate.execute(status -> pictureObjectRepository.markStored(HASH, "64,128"));
+
+        assertTrue(acquire(HASH));
+        assertEquals(2, load(HASH).getRefCount());
+        assertEquals("64,128", pictureObjectRepository.findRenditions(HASH));
+    }
+
+    @Test
+    public void testRowIsDeletedWithLastReference() {
+        acquire(HASH);
+        acquire(HASH);
+
+        assertFalse(release(HASH));
+        assertEquals(1, load(HASH).getRefCount());
+        assertTrue(release(HASH));
+        assertFalse(pictureObjectRepository.existsById(HASH));
+        // Nothing left to release
+        assertFalse(release(HASH));
+    }
+
+    @Test
+    public void testConcurrentFirstAcquiresCountEveryReference() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> acquired = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                acquired.add(executor.submit(() -> acquire(HASH)));
+            }
+            for (Future<Boolean> result : acquired) {
+                assertFalse(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads, load(HASH).getRefCount());
+    }
+
+    @Test
+    public void testConcurrentAcquireAndReleaseKeepHeldContent() throws Exception {
+        // Held throughout, so the row must survive every other release
+        acquire(HASH);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    for (int j = 0; j < 25; j++) {
+                        acquire(HASH);
+                        assertFalse(release(HASH));
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, load(HASH).getRefCount());
+        assertTrue(release(HASH));
+    }
+}
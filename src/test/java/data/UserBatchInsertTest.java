@@ -0,0 +1,98 @@
+package data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.timgroup.statsd.StatsDClient;
+
+import config.SqlStatementCounter;
+import jakarta.persistence.EntityManager;
+import models.User;
+
+// Bulk insert of users: one statement per row (what IDENTITY forced) vs. JDBC batches
+@SpringBootTest(classes = com.example.DemoApplication.class,
+    properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=config.SqlStatementCounter",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_inserts=true",
+        "spring.jpa.show-sql=false"
+    })
+@ActiveProfiles("test")
+public class UserBatchInsertTest {
+
+    private static final int USERS = 1_000;
+
+    @Autowired
+    private UserTestRepository userTestRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private AmazonS3 amazonS3;
+
+    @MockBean
+    private StatsDClient statsDClient;
+
+    @BeforeEach
+    public void setUp() {
+        userTestRepository.deleteAll();
+    }
+
+    private List<User> newUsers(String prefix) {
+        LocalDateTime now = LocalDateTime.now();
+        List<User> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setEmail(prefix + i + "@example.com");
+            user.setPassword("hash");
+            user.setFirstName("Bulk");
+            user.setLastName("User");
+            user.setAccountCreated(now);
+            user.setAccountUpdated(now);
+            user.setEmailVerified(false);
+            users.add(user);
+        }
+        return users;
+    }
+
+    @Test
+    public void testBatchedInsertUsesFewStatements() {
+        List<User> rowByRow = newUsers("row");
+        SqlStatementCounter.reset();
+        transactionTemplate.executeWithoutResult(status -> {
+            // Flushing each entity reproduces the IDENTITY behaviour: an immediate INSERT per row
+            for (User user : rowByRow) {
+                entityManager.persist(user);
+                entityManager.flush();
+            }
+        });
+        int rowByRowStatements = SqlStatementCounter.get();
+
+        List<User> batched = newUsers("batch");
+        SqlStatementCounter.reset();
+        transactionTemplate.executeWithoutResult(status -> userTestRepository.saveAll(batched));
+        int batchedStatements = SqlStatementCounter.get();
+
+        assertEquals(2L * USERS, userTestRepository.count());
+        assertTrue(rowByRowStatements >= USERS);
+        // One INSERT per 50-row batch plus one sequence call per 50 ids
+        assertTrue(batchedStatements <= 2 * (USERS / 50) + 2,
+            "expected batched inserts, saw " + batchedStatements + " statements");
+    }
+}
@@ -0,0 +1,109 @@
+package data;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.timgroup.statsd.StatsDClient;
+
+import models.User;
+
+@SpringBootTest(classes = com.example.DemoApplication.class)
+@ActiveProfiles("test")
+public class UserRepoTest {
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private UserTestRepository userTestRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private AmazonS3 amazonS3;
+
+    @MockBean
+    private StatsDClient statsDClient;
+
+    @BeforeEach
+    public void setUp() {
+        userTestRepository.deleteAll();
+    }
+
+    private Optional<Long> insert(String email, String password) {
+        return transactionTemplate.execute(status -> {
+            Optional<Long> id = userRepo.insertIfAbsent(email, password, "John", "Doe", LocalDateTime.now());
+            if (id.isEmpty()) {
+                status.setRollbackOnly();
+            }
+            return id;
+        });
+    }
+
+    private User load(String email) {
+        return userRepo.findByEmail(email).orElseThrow();
+    }
+
+    @Test
+    public void testInsertIfAbsentReturnsIdThenEmptyForDuplicate() {
+        Optional<Long> first = insert("a@example.com", "hash1");
+        Optional<Long> duplicate = insert("a@example.com", "hash2");
+
+        assertTrue(first.isPresent());
+        assertTrue(duplicate.isEmpty());
+        User stored = load("a@example.com");
+        assertEquals(first.get(), stored.getId());
+        assertEquals("hash1", stored.getPassword());
+        assertFalse(stored.isEmailVerified());
+        assertEquals(1, userTestRepository.count());
+    }
+
+    @Test
+    public void testUpdateVerifiedProfileOnlyTouchesVerifiedUsersAndGivenFields() {
+        insert("a@example.com", "hash1");
+        LocalDateTime later = LocalDateTime.now().plusMinutes(1);
+
+        int unverified = transactionTemplate.execute(status ->
+            userRepo.updateVerifiedProfile("a@example.com", "Jane", null, null, later));
+        assertEquals(0, unverified);
+        assertEquals("John", load("a@example.com").getFirstName());
+
+        transactionTemplate.execute(status -> userRepo.markEmailVerified("a@example.com", later));
+        int updated = transactionTemplate.execute(status ->
+            userRepo.updateVerifiedProfile("a@example.com", "Jane", null, "hash2", later));
+
+        assertEquals(1, updated);
+        User stored = load("a@example.com");
+        assertEquals("Jane", stored.getFirstName());
+        assertEquals("Doe", stored.getLastName());
+        assertEquals("hash2", stored.getPassword());
+        assertEquals(0, (int) transactionTemplate.execute(status ->
+            userRepo.updateVerifiedProfile("missing@example.com", "Jane", null, null, later)));
+    }
+
+    @Test
+    public void testMarkEmailVerified() {
+        insert("a@example.com", "hash1");
+        LocalDateTime later = LocalDateTime.now().plusMinutes(1);
+
+        assertEquals(1, (int) transactionTemplate.execute(status -> userRepo.markEmailVerified("a@example.com", later)));
+        assertEquals(0, (int) transactionTemplate.execute(status -> userRepo.markEmailVerified("missing@example.com", later)));
+
+        User stored = load("a@example.com");
+        assertTrue(stored.isEmailVerified());
+        assertEquals(later.withNano(0), stored.getAccountUpdated().withNano(0));
+    }
+}
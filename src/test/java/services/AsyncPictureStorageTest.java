@@ -0,0 +1,47 @@
+package services;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+public class AsyncPictureStorageTest {
+
+    @Test
+    public void testServiceErrorBecomesAmazonS3Exception() {
+        S3Exception notFound = (S3Exception) S3Exception.builder()
+            .statusCode(404)
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("NoSuchKey").errorMessage("Not Found").build())
+            .build();
+
+        Throwable translated = AsyncPictureStorage.translate(new CompletionException(notFound));
+
+        assertTrue(translated instanceof AmazonS3Exception);
+        assertEquals(404, ((AmazonS3Exception) translated).getStatusCode());
+        assertEquals("NoSuchKey", ((AmazonS3Exception) translated).getErrorCode());
+        assertSame(notFound, translated.getCause());
+    }
+
+    @Test
+    public void testClientErrorBecomesV1ClientException() {
+        Throwable translated = AsyncPictureStorage.translate(
+            new CompletionException(SdkClientException.create("Acquire operation took longer than 10000 ms")));
+
+        assertTrue(translated instanceof com.amazonaws.SdkClientException);
+    }
+
+    @Test
+    public void testOtherErrorsAreUnwrapped() {
+        IllegalStateException failure = new IllegalStateException("closed");
+
+        assertSame(failure, AsyncPictureStorage.translate(new CompletionException(failure)));
+    }
+}
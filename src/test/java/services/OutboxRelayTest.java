@@ -0,0 +1,147 @@
+package services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.timgroup.statsd.StatsDClient;
+
+import config.InMemoryAmazonSNS;
+import config.InMemorySnsConfig;
+import data.OutboxEventRepository;
+import models.OutboxEvent;
+
+@SpringBootTest(classes = com.example.DemoApplication.class, properties = {"outbox.relay.backoff-ms=0", "sns.batch.max-retries=0",
+    "outbox.relay.publish-timeout-ms=500"})
+@ActiveProfiles("test")
+@Import(InMemorySnsConfig.class)
+public class OutboxRelayTest {
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private InMemoryAmazonSNS sns;
+
+    @MockBean
+    private AmazonS3 amazonS3;
+
+    @MockBean
+    private StatsDClient statsDClient;
+
+    @BeforeEach
+    public void setUp() {
+        outboxEventRepository.deleteAll();
+        sns.reset();
+    }
+
+    @Test
+    public void testEventIsPublishedByRelayNotByEnqueue() {
+        transactionTemplate.executeWithoutResult(status ->
+            outboxService.enqueueUserRegistration(1L, "outbox@example.com"));
+        assertEquals(0, sns.getPublished().size());
+
+        assertEquals(1, outboxRelay.drain());
+        assertEquals(1, sns.getPublished().size());
+        assertTrue(sns.getPublished().get(0).contains("outbox@example.com"));
+        assertEquals(0, outboxEventRepository.count());
+    }
+
+    @Test
+    public void testFailedPublishIsRetried() {
+        sns.failNext(1);
+        transactionTemplate.executeWithoutResult(status ->
+            outboxService.enqueueUserRegistration(2L, "retry@example.com"));
+
+        assertEquals(0, outboxRelay.drain());
+        OutboxEvent pending = outboxEventRepository.findAll().get(0);
+        assertEquals(1, pending.getAttempts());
+
+        assertEquals(1, outboxRelay.drain());
+        assertEquals(1, sns.getPublished().size());
+        assertEquals(0, outboxEventRepository.count());
+    }
+
+    @Test
+    public void testEventsAreGroupedIntoBatchesOfTen() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (long i = 0; i < 25; i++) {
+                outboxService.enqueueUserRegistration(100L + i, "batch" + i + "@example.com");
+            }
+        });
+
+        assertEquals(25, outboxRelay.drain());
+        assertEquals(25, sns.getPublished().size());
+        assertTrue(sns.getBatchSizes().stream().allMatch(size -> size <= 10));
+        assertTrue(sns.getBatchSizes().size() >= 3);
+    }
+
+    @Test
+    public void testBacklogIsDrainedInOneScheduledRun() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (long i = 0; i < 25; i++) {
+                outboxService.enqueueUserRegistration(300L + i, "bulk" + i + "@example.com");
+            }
+        });
+        Object batchSize = ReflectionTestUtils.getField(outboxRelay, "batchSize");
+        ReflectionTestUtils.setField(outboxRelay, "batchSize", 10);
+        try {
+            // Three passes: two full ones and the remainder
+            assertEquals(25, outboxRelay.drainBacklog());
+        } finally {
+            ReflectionTestUtils.setField(outboxRelay, "batchSize", batchSize);
+        }
+
+        assertEquals(25, sns.getPublished().size());
+        assertEquals(0, outboxEventRepository.count());
+    }
+
+    @Test
+    public void testStalledPublishIsRescheduledWithinOneDeadline() throws InterruptedException {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (long i = 0; i < 3; i++) {
+                outboxService.enqueueUserRegistration(200L + i, "stall" + i + "@example.com");
+            }
+        });
+        sns.stallNext(2000);
+
+        long startTime = System.currentTimeMillis();
+        assertEquals(0, outboxRelay.drain());
+
+        // One 500ms deadline for the batch, not one per event
+        assertTrue(System.currentTimeMillis() - startTime < 1500);
+        assertEquals(3, outboxEventRepository.count());
+        assertTrue(outboxEventRepository.findAll().stream().allMatch(event -> event.getAttempts() == 1));
+
+        // Let the stalled batch land so it does not leak into the next test
+        while (sns.getPublished().size() < 3 && System.currentTimeMillis() - startTime < 5000) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void testEnqueueRequiresSurroundingTransaction() {
+        assertThrows(IllegalTransactionStateException.class,
+            () -> outboxService.enqueueUserRegistration(3L, "notx@example.com"));
+    }
+}
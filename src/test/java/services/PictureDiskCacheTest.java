@@ -0,0 +1,201 @@
+package services;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.timgroup.statsd.StatsDClient;
+
+import config.InMemoryAmazonS3;
+
+public class PictureDiskCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private InMemoryAmazonS3 s3;
+
+    @BeforeEach
+    public void setUp() {
+        s3 = new InMemoryAmazonS3();
+    }
+
+    private PictureDiskCache newCache(long maxBytes) throws IOException {
+        PictureDiskCache cache = new PictureDiskCache(new BlockingPictureStorage(s3, "bucket"),
+            mock(StatsDClient.class), directory.toString(), maxBytes);
+        cache.start();
+        return cache;
+    }
+
+    private void put(String key, int size, String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        byte[] data = new byte[size];
+        data[0] = (byte) key.hashCode();
+        s3.putObject("bucket", key, new ByteArrayInputStream(data), metadata);
+    }
+
+    @Test
+    public void testMissFillsFromS3AndHitDoesNot() throws IOException {
+        put("content/abc", 1000, "image/png");
+        PictureDiskCache cache = newCache(10_000);
+
+        PictureDiskCache.CachedFile first = cache.get("content/abc");
+        PictureDiskCache.CachedFile second = cache.get("content/abc");
+
+        assertEquals(1, s3.getGetObjectCalls());
+        assertEquals(first.getPath(), second.getPath());
+        assertEquals(1000, second.getSize());
+        assertEquals("image/png", second.getContentType());
+        assertArrayEquals(s3.getObjectBytes("bucket", "content/abc"), Files.readAllBytes(second.getPath()));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        put("a", 400, "image/jpeg");
+        put("b", 400, "image/jpeg");
+        put("c", 400, "image/jpeg");
+        PictureDiskCache cache = newCache(1000);
+
+        PictureDiskCache.CachedFile a = cache.get("a");
+        PictureDiskCache.CachedFile b = cache.get("b");
+        cache.get("a");
+        cache.get("c");
+
+        assertEquals(2, cache.size());
+        assertEquals(800, cache.totalBytes());
+        assertTrue(Files.exists(a.getPath()));
+        assertFalse(Files.exists(b.getPath()));
+    }
+
+    @Test
+    public void testIndexIsRebuiltOnRestart() throws IOException {
+        put("content/abc", 500, "image/png");
+        PictureDiskCache.CachedFile cached = newCache(10_000).get("content/abc");
+        Files.writeString(directory.resolve("partial.tmp"), "left over from a crash");
+
+        PictureDiskCache restarted = newCache(10_000);
+        PictureDiskCache.CachedFile hit = restarted.get("content/abc");
+
+        assertEquals(1, s3.getGetObjectCalls());
+        assertEquals(cached.getPath(), hit.getPath());
+        assertEquals(cached.getEtag(), hit.getEtag());
+        assertEquals("image/png", hit.getContentType());
+        assertFalse(Files.exists(directory.resolve("partial.tmp")));
+        assertEquals(500, restarted.totalBytes());
+    }
+
+    @Test
+    public void testInvalidateDeletesFile() throws IOException {
+        put("1/pic.jpg", 100, "image/jpeg");
+        PictureDiskCache cache = newCache(10_000);
+        PictureDiskCache.CachedFile cached = cache.get("1/pic.jpg");
+
+        cache.invalidate("1/pic.jpg");
+
+        assertEquals(0, cache.size());
+        assertFalse(Files.exists(cached.getPath()));
+    }
+
+    @Test
+    public void testMissingObjectPropagatesAndLeavesNoFile() throws IOException {
+        PictureDiskCache cache = newCache(10_000);
+
+        AmazonS3Exception e = assertThrows(AmazonS3Exception.class, () -> cache.get("content/gone"));
+        assertEquals(404, e.getStatusCode());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneDownload() throws IOException {
+        PictureStorage storage = mock(PictureStorage.class);
+        CompletableFuture<PictureStorage.StoredObject> download = new CompletableFuture<>();
+        when(storage.download(eq("content/abc"), any(Path.class))).thenAnswer(invocation -> {
+            Files.write(invocation.getArgument(1, Path.class), new byte[] {1, 2, 3});
+            return download;
+        });
+        PictureDiskCache cache = new PictureDiskCache(storage, mock(StatsDClient.class), directory.toString(), 10_000);
+        cache.start();
+
+        CompletableFuture<PictureDiskCache.CachedFile> first = cache.getAsync("content/abc");
+        CompletableFuture<PictureDiskCache.CachedFile> second = cache.getAsync("content/abc");
+        assertFalse(first.isDone());
+        download.complete(new PictureStorage.StoredObject("\"abc123\"", "image/png"));
+
+        assertEquals(3, first.join().getSize());
+        assertEquals("abc123", second.join().getEtag());
+        assertTrue(cache.getAsync("content/abc").isDone());
+        verify(storage, times(1)).download(eq("content/abc"), any(Path.class));
+    }
+
+    @Test
+    public void testPinnedFileOutlivesEvictionUntilReleased() throws IOException {
+        put("a", 600, "image/jpeg");
+        put("b", 600, "image/jpeg");
+        PictureDiskCache cache = newCache(1000);
+        PictureDiskCache.CachedFile a = cache.acquireAsync("a").join();
+
+        cache.get("b");
+        cache.invalidate("b");
+
+        // Evicted from the index, but still on disk for the response in flight
+        assertEquals(0, cache.size());
+        assertTrue(Files.exists(a.getPath()));
+        cache.release(a);
+        assertFalse(Files.exists(a.getPath()));
+    }
+
+    @Test
+    public void testLeasedFileIsDeletedByTheSweepOnceExpired() throws Exception {
+        put("1/pic.jpg", 100, "image/jpeg");
+        PictureDiskCache cache = newCache(10_000);
+        PictureDiskCache.CachedFile cached = cache.acquireAsync("1/pic.jpg").join();
+        cache.lease(cached, 50);
+        cache.release(cached);
+
+        cache.invalidate("1/pic.jpg");
+        cache.deleteRetired();
+        assertTrue(Files.exists(cached.getPath()));
+
+        Thread.sleep(60);
+        cache.deleteRetired();
+        assertFalse(Files.exists(cached.getPath()));
+    }
+
+    @Test
+    public void testRefetchUnderSameNameIsNotDeletedByOldRelease() throws IOException {
+        put("1/pic.jpg", 100, "image/jpeg");
+        PictureDiskCache cache = newCache(10_000);
+        PictureDiskCache.CachedFile old = cache.acquireAsync("1/pic.jpg").join();
+        cache.invalidate("1/pic.jpg");
+
+        PictureDiskCache.CachedFile fresh = cache.get("1/pic.jpg");
+        cache.release(old);
+
+        assertEquals(old.getPath(), fresh.getPath());
+        assertTrue(Files.exists(fresh.getPath()));
+        assertEquals(1, cache.size());
+    }
+}
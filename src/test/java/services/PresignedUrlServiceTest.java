@@ -0,0 +1,74 @@
+package services;
+
+import java.net.URL;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.timgroup.statsd.StatsDClient;
+
+public class PresignedUrlServiceTest {
+
+    // Presigning is computed locally, so a real client with dummy credentials needs no network
+    private final AmazonS3 amazonS3 = AmazonS3ClientBuilder.standard()
+        .withRegion("us-east-1")
+        .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("test-key", "test-secret")))
+        .build();
+
+    @Test
+    public void testGetUrlIsReusedUntilRefreshMargin() {
+        PresignedUrlService service = new PresignedUrlService(amazonS3, mock(StatsDClient.class),
+            "test-bucket", true, 900, 60, 100);
+
+        String first = service.presignGet("content/abc");
+        String second = service.presignGet("content/abc");
+
+        assertEquals(first, second);
+        assertTrue(first.contains("content/abc") && first.contains("Signature"));
+        assertNotEquals(first, service.presignGet("content/def"));
+        assertEquals(2, service.size());
+    }
+
+    @Test
+    public void testGetUrlIsResignedInsideRefreshMargin() throws InterruptedException {
+        // A 2s TTL caps the margin at 1s, so the cached URL is only good for the first second
+        PresignedUrlService service = new PresignedUrlService(amazonS3, mock(StatsDClient.class),
+            "test-bucket", true, 2, 60, 100);
+
+        String first = service.presignGet("content/abc");
+        Thread.sleep(1100);
+
+        assertNotEquals(first, service.presignGet("content/abc"));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        PresignedUrlService service = new PresignedUrlService(amazonS3, mock(StatsDClient.class),
+            "test-bucket", true, 900, 60, 2);
+
+        service.presignGet("a");
+        service.presignGet("b");
+        service.presignGet("c");
+
+        assertEquals(2, service.size());
+    }
+
+    @Test
+    public void testPutUrlSignsContentType() {
+        PresignedUrlService service = new PresignedUrlService(amazonS3, mock(StatsDClient.class),
+            "test-bucket", false, 900, 60, 100);
+
+        URL url = service.presignPut("42/upload_avatar.png", "image/png", new Date(System.currentTimeMillis() + 60000));
+
+        assertTrue(url.getPath().endsWith("/42/upload_avatar.png"));
+        assertTrue(url.getQuery().contains("Signature"));
+    }
+}
@@ -0,0 +1,171 @@
+package services;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.timgroup.statsd.StatsDClient;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import configs.UserPrincipal;
+import data.PictureObjectRepository;
+import data.ProfilePictureRepository;
+import data.S3DeleteTaskRepository;
+import data.UserTestRepository;
+import models.User;
+
+@SpringBootTest(classes = com.example.DemoApplication.class,
+    properties = {"s3.existence.sample-rate=0", "profile.picture.renditions.sizes=64"})
+@ActiveProfiles("test")
+public class ProfilePictureConnectionTest {
+
+    @Autowired
+    private ProfilePictureService profilePictureService;
+
+    @Autowired
+    private UserTestRepository userTestRepository;
+
+    @Autowired
+    private ProfilePictureRepository profilePictureRepository;
+
+    @Autowired
+    private S3DeleteTaskRepository s3DeleteTaskRepository;
+
+    @Autowired
+    private PictureObjectRepository pictureObjectRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @MockBean
+    private AmazonS3 amazonS3;
+
+    @MockBean
+    private StatsDClient statsDClient;
+
+    private UserPrincipal principal;
+    private HikariPoolMXBean pool;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        profilePictureRepository.deleteAll();
+        s3DeleteTaskRepository.deleteAll();
+        pictureObjectRepository.deleteAll();
+        userTestRepository.deleteAll();
+
+        User user = new User();
+        user.setEmail("slow@example.com");
+        user.setPassword("unused");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setAccountCreated(LocalDateTime.now());
+        user.setAccountUpdated(LocalDateTime.now());
+        user.setEmailVerified(true);
+        user = userTestRepository.save(user);
+        principal = UserPrincipal.fromUser(user);
+
+        pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+    }
+
+    private static byte[] png() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(128, 128, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testNoConnectionIsHeldWhileS3IsSlow() throws Exception {
+        CountDownLatch inS3 = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(amazonS3.putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class)))
+            .thenAnswer(invocation -> {
+                inS3.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return new PutObjectResult();
+            });
+        byte[] picture = png();
+
+        CompletableFuture<?> upload = CompletableFuture.supplyAsync(() -> profilePictureService.uploadProfilePicture(
+            principal, "avatar.png", "image/png", new ByteArrayInputStream(picture)));
+        assertTrue(inS3.await(10, TimeUnit.SECONDS));
+
+        // Sampled for a while: the upload is parked inside S3 and must not be holding a connection
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, pool.getActiveConnections());
+            Thread.sleep(20);
+        }
+        release.countDown();
+        upload.get(10, TimeUnit.SECONDS);
+
+        assertTrue(profilePictureRepository.findByUserId(principal.getId()).isPresent());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    public void testFailedS3PutIsCompensated() throws Exception {
+        when(amazonS3.putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class)))
+            .thenThrow(new AmazonS3Exception("Slow Down"));
+        byte[] picture = png();
+
+        assertThrows(RuntimeException.class, () -> profilePictureService.uploadProfilePicture(
+            principal, "avatar.png", "image/png", new ByteArrayInputStream(picture)));
+
+        // The reservation is released and whatever may have reached S3 is queued for deletion
+        assertEquals(0, pictureObjectRepository.count());
+        assertEquals(0, profilePictureRepository.count());
+        assertEquals(2, s3DeleteTaskRepository.count());
+    }
+
+    @Test
+    public void testReuploadCancelsQueuedDeletes() throws Exception {
+        AtomicBoolean failPuts = new AtomicBoolean(true);
+        when(amazonS3.putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class)))
+            .thenAnswer(invocation -> {
+                if (failPuts.get()) {
+                    throw new AmazonS3Exception("Slow Down");
+                }
+                return new PutObjectResult();
+            });
+        byte[] picture = png();
+        assertThrows(RuntimeException.class, () -> profilePictureService.uploadProfilePicture(
+            principal, "avatar.png", "image/png", new ByteArrayInputStream(picture)));
+        assertEquals(2, s3DeleteTaskRepository.count());
+
+        failPuts.set(false);
+        profilePictureService.uploadProfilePicture(principal, "avatar.png", "image/png", new ByteArrayInputStream(picture));
+
+        // The queued deletes would otherwise remove the objects just put
+        assertEquals(0, s3DeleteTaskRepository.count());
+        String contentHash = profilePictureRepository.findByUserId(principal.getId()).orElseThrow().getContentHash();
+        assertEquals(1, pictureObjectRepository.findById(contentHash).orElseThrow().getRefCount());
+        assertTrue(pictureObjectRepository.findById(contentHash).orElseThrow().isStored());
+    }
+}
@@ -0,0 +1,159 @@
+package services;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.timgroup.statsd.StatsDClient;
+
+import configs.UserPrincipal;
+import dto.ProfilePictureDTO;
+import dto.ProfilePictureJobDTO;
+import models.User;
+
+public class ProfilePictureJobServiceTest {
+
+    @TempDir
+    Path stagingDir;
+
+    private ProfilePictureService profilePictureService;
+    private ProfilePictureJobService jobService;
+    private final UserPrincipal owner = principal(1L, "owner@example.com");
+
+    private static UserPrincipal principal(Long id, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(email);
+        user.setEmailVerified(true);
+        return UserPrincipal.fromUser(user);
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        profilePictureService = mock(ProfilePictureService.class);
+        jobService = new ProfilePictureJobService(profilePictureService,
+            mock(UserManagementService.class), mock(StatsDClient.class));
+        ReflectionTestUtils.setField(jobService, "workers", 2);
+        ReflectionTestUtils.setField(jobService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(jobService, "stagingDir", stagingDir.toString());
+        ReflectionTestUtils.setField(jobService, "stagingQuotaBytes", 1024L);
+        ReflectionTestUtils.setField(jobService, "jobTtlSeconds", 3600L);
+        ReflectionTestUtils.setField(jobService, "maxSizeBytes", 512L);
+        jobService.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        jobService.stop();
+    }
+
+    private ProfilePictureJobDTO awaitDone(String jobId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            ProfilePictureJobDTO job = jobService.getJob(owner, UUID.fromString(jobId)).get();
+            if (job.getCompletedAt() != null) {
+                return job;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("job did not finish");
+    }
+
+    @Test
+    public void testJobRunsUploadFromStagedFile() throws Exception {
+        ProfilePictureDTO picture = new ProfilePictureDTO();
+        picture.setFileName("avatar.png");
+        when(profilePictureService.uploadProfilePicture(eq(owner), eq("avatar.png"), eq("image/png"), any(InputStream.class)))
+            .thenAnswer(invocation -> {
+                byte[] staged = invocation.getArgument(3, InputStream.class).readAllBytes();
+                assertEquals(100, staged.length);
+                return picture;
+            });
+
+        ProfilePictureJobDTO accepted = jobService.submit(owner, "avatar.png", "image/png",
+            new ByteArrayInputStream(new byte[100]));
+        ProfilePictureJobDTO done = awaitDone(accepted.getJobId());
+
+        assertEquals(ProfilePictureJobService.SUCCEEDED, done.getStatus());
+        assertEquals("avatar.png", done.getPicture().getFileName());
+        try (var files = Files.list(stagingDir)) {
+            assertEquals(0, files.count(), "staged file should be removed");
+        }
+    }
+
+    @Test
+    public void testFailedUploadIsReported() throws Exception {
+        when(profilePictureService.uploadProfilePicture(any(), anyString(), anyString(), any()))
+            .thenThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid file type"));
+
+        ProfilePictureJobDTO accepted = jobService.submit(owner, "a.png", "image/png",
+            new ByteArrayInputStream(new byte[10]));
+        ProfilePictureJobDTO done = awaitDone(accepted.getJobId());
+
+        assertEquals(ProfilePictureJobService.FAILED, done.getStatus());
+        assertEquals("Invalid file type", done.getError());
+    }
+
+    @Test
+    public void testOversizedFileIsRejectedWhileStaging() throws IOException {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+            () -> jobService.submit(owner, "a.png", "image/png", new ByteArrayInputStream(new byte[600])));
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        try (var files = Files.list(stagingDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testStagingQuotaIsEnforced() throws Exception {
+        // Keep the first job's staged file around by blocking its worker
+        Object gate = new Object();
+        when(profilePictureService.uploadProfilePicture(any(), anyString(), anyString(), any()))
+            .thenAnswer(invocation -> {
+                synchronized (gate) {
+                    gate.wait(2000);
+                }
+                return new ProfilePictureDTO();
+            });
+        jobService.submit(owner, "a.png", "image/png", new ByteArrayInputStream(new byte[500]));
+        jobService.submit(owner, "b.png", "image/png", new ByteArrayInputStream(new byte[500]));
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+            () -> jobService.submit(owner, "c.png", "image/png", new ByteArrayInputStream(new byte[500])));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+
+        synchronized (gate) {
+            gate.notifyAll();
+        }
+    }
+
+    @Test
+    public void testOtherUsersCannotSeeJob() throws IOException {
+        when(profilePictureService.uploadProfilePicture(any(), anyString(), anyString(), any()))
+            .thenReturn(new ProfilePictureDTO());
+        ProfilePictureJobDTO accepted = jobService.submit(owner, "a.png", "image/png",
+            new ByteArrayInputStream(new byte[10]));
+
+        UserPrincipal other = principal(2L, "other@example.com");
+        assertTrue(jobService.getJob(other, UUID.fromString(accepted.getJobId())).isEmpty());
+    }
+}
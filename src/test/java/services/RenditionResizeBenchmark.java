@@ -0,0 +1,82 @@
+package services;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Resize + encode throughput of {@link RenditionService}. The single-thread
+ * and all-cores variants report ops/s per thread, so comparing them shows
+ * how well rendering scales across cores.
+ *
+ * Not run by the test suite; start it with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=services.RenditionResizeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenditionResizeBenchmark {
+
+    @Param({"1024", "4096"})
+    public int sourceEdge;
+
+    @Param({"64", "512"})
+    public int targetSize;
+
+    @Param({"image/jpeg", "image/png"})
+    public String contentType;
+
+    private BufferedImage source;
+
+    @Setup
+    public void setUp() {
+        source = new BufferedImage(sourceEdge, sourceEdge * 3 / 4, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = source.createGraphics();
+        try {
+            graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, sourceEdge, sourceEdge, Color.BLUE));
+            graphics.fillRect(0, 0, source.getWidth(), source.getHeight());
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] singleThread() throws IOException {
+        return RenditionService.encode(RenditionService.resizeSquare(source, targetSize), contentType, 0.85f);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] allCores() throws IOException {
+        return RenditionService.encode(RenditionService.resizeSquare(source, targetSize), contentType, 0.85f);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(RenditionResizeBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,126 @@
+package services;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.Mockito.mock;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.timgroup.statsd.StatsDClient;
+
+public class RenditionServiceTest {
+
+    private RenditionService renditionService;
+
+    @BeforeEach
+    public void setUp() {
+        renditionService = new RenditionService(mock(StatsDClient.class), new int[] {128, 64, 512}, 0.85f, 4_000_000, 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        renditionService.stop();
+    }
+
+    private static byte[] image(int width, int height, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            image.setRGB(x, height / 2, 0xff0000);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private Map<Integer, BufferedImage> render(byte[] original, String contentType) throws IOException {
+        Map<Integer, BufferedImage> results = new ConcurrentHashMap<>();
+        renditionService.render(original, contentType, (size, encoded) ->
+            results.put(size, ImageIO.read(new ByteArrayInputStream(encoded))));
+        return results;
+    }
+
+    @Test
+    public void testProducesEverySizeAsSquare() throws IOException {
+        assertArrayEquals(new int[] {64, 128, 512}, renditionService.getSizes());
+
+        Map<Integer, BufferedImage> results = render(image(1600, 1200, "jpg"), "image/jpeg");
+
+        assertEquals(3, results.size());
+        for (int size : renditionService.getSizes()) {
+            assertEquals(size, results.get(size).getWidth());
+            assertEquals(size, results.get(size).getHeight());
+        }
+    }
+
+    @Test
+    public void testSmallSourceIsScaledUpToRequestedSize() throws IOException {
+        Map<Integer, BufferedImage> results = render(image(100, 300, "png"), "image/png");
+
+        assertEquals(512, results.get(512).getWidth());
+        assertEquals(64, results.get(64).getHeight());
+    }
+
+    @Test
+    public void testPngStaysPng() throws IOException {
+        Map<Integer, byte[]> results = new ConcurrentHashMap<>();
+        renditionService.render(image(300, 300, "png"), "image/png", results::put);
+
+        byte[] png = results.get(64);
+        assertTrue(png[0] == (byte) 0x89 && png[1] == 'P' && png[2] == 'N' && png[3] == 'G');
+    }
+
+    @Test
+    public void testUnreadableImageIsBadRequest() {
+        byte[] garbage = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 1, 2, 3, 4, 5};
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+            () -> render(garbage, "image/jpeg"));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+    }
+
+    @Test
+    public void testTooManyPixelsIsRejectedBeforeDecoding() throws IOException {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+            () -> render(image(2500, 2000, "png"), "image/png"));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        assertEquals("Image dimensions are too large", e.getReason());
+    }
+
+    @Test
+    public void testSinkFailureIsPropagated() {
+        assertThrows(IOException.class, () -> renditionService.render(image(200, 200, "png"), "image/png",
+            (size, encoded) -> {
+                throw new IOException("S3 down");
+            }));
+    }
+
+    @Test
+    public void testRendersFromFile(@TempDir Path dir) throws IOException {
+        Path original = dir.resolve("original");
+        Files.write(original, image(1600, 1200, "jpg"));
+        Map<Integer, BufferedImage> results = new ConcurrentHashMap<>();
+
+        renditionService.render(original, "image/jpeg", (size, encoded) ->
+            results.put(size, ImageIO.read(new ByteArrayInputStream(encoded))));
+
+        assertEquals(3, results.size());
+        assertEquals(512, results.get(512).getWidth());
+    }
+}
@@ -0,0 +1,153 @@
+package services;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.timgroup.statsd.StatsDClient;
+
+import data.S3DeleteTaskRepository;
+import models.S3DeleteTask;
+
+@SpringBootTest(classes = com.example.DemoApplication.class,
+    properties = {"s3.delete-queue.backoff-ms=0", "s3.delete-queue.max-attempts=2"})
+@ActiveProfiles("test")
+public class S3DeleteDrainerTest {
+
+    @Autowired
+    private S3DeleteQueue s3DeleteQueue;
+
+    @Autowired
+    private S3DeleteDrainer s3DeleteDrainer;
+
+    @Autowired
+    private S3DeleteTaskRepository s3DeleteTaskRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private AmazonS3 amazonS3;
+
+    @MockBean
+    private StatsDClient statsDClient;
+
+    @BeforeEach
+    public void setUp() {
+        s3DeleteTaskRepository.deleteAll();
+        reset(amazonS3);
+    }
+
+    private void enqueue(String... keys) {
+        transactionTemplate.executeWithoutResult(status -> s3DeleteQueue.enqueue("bucket", List.of(keys)));
+    }
+
+    private static MultiObjectDeleteException failure(String key) {
+        MultiObjectDeleteException.DeleteError error = new MultiObjectDeleteException.DeleteError();
+        error.setKey(key);
+        error.setCode("InternalError");
+        error.setMessage("We encountered an internal error");
+        return new MultiObjectDeleteException(List.of(error), List.of());
+    }
+
+    @Test
+    public void testKeysAreDeletedByDrainerNotByEnqueue() {
+        enqueue("content/abc", "content/abc/64");
+        verify(amazonS3, never()).deleteObjects(any());
+
+        assertEquals(2, s3DeleteDrainer.drain());
+
+        ArgumentCaptor<DeleteObjectsRequest> request = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(amazonS3).deleteObjects(request.capture());
+        assertEquals("bucket", request.getValue().getBucketName());
+        assertEquals(2, request.getValue().getKeys().size());
+        assertEquals(0, s3DeleteTaskRepository.count());
+    }
+
+    @Test
+    public void testRequestsCarryAtMostOneThousandKeys() {
+        enqueue(IntStream.range(0, 2500).mapToObj(i -> "1/" + i + ".png").toArray(String[]::new));
+
+        for (int pass = 0; pass < 3; pass++) {
+            s3DeleteDrainer.drain();
+        }
+        assertEquals(0, s3DeleteDrainer.drain());
+
+        ArgumentCaptor<DeleteObjectsRequest> requests = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(amazonS3, times(3)).deleteObjects(requests.capture());
+        assertEquals(List.of(1000, 1000, 500),
+            requests.getAllValues().stream().map(request -> request.getKeys().size()).toList());
+        assertEquals(0, s3DeleteTaskRepository.count());
+    }
+
+    @Test
+    public void testFailedKeyIsRetriedAndOthersAreDeleted() {
+        when(amazonS3.deleteObjects(any()))
+            .thenThrow(failure("1/b.png"))
+            .thenReturn(new DeleteObjectsResult(List.of()));
+        enqueue("1/a.png", "1/b.png");
+
+        s3DeleteDrainer.drain();
+        S3DeleteTask pending = s3DeleteTaskRepository.findAll().get(0);
+        assertEquals(1, s3DeleteTaskRepository.count());
+        assertEquals("1/b.png", pending.getS3Key());
+        assertEquals(1, pending.getAttempts());
+
+        s3DeleteDrainer.drain();
+        assertEquals(0, s3DeleteTaskRepository.count());
+    }
+
+    @Test
+    public void testKeyIsDeadLetteredAfterMaxAttempts() {
+        when(amazonS3.deleteObjects(any())).thenThrow(failure("1/stuck.png"));
+        enqueue("1/stuck.png");
+
+        s3DeleteDrainer.drain();
+        s3DeleteDrainer.drain();
+        assertEquals(0, s3DeleteDrainer.drain());
+
+        S3DeleteTask dead = s3DeleteTaskRepository.findAll().get(0);
+        assertEquals(2, dead.getAttempts());
+        assertNotNull(dead.getDeadLetteredAt());
+        assertEquals(1, s3DeleteTaskRepository.countDeadLettered());
+        verify(amazonS3, times(2)).deleteObjects(any());
+    }
+
+    @Test
+    public void testCancelDropsKeyAndRenditions() {
+        enqueue("content/abc", "content/abc/64", "content/abcd");
+
+        transactionTemplate.executeWithoutResult(status -> s3DeleteQueue.cancel("bucket", "content/abc"));
+
+        assertEquals("content/abcd", s3DeleteTaskRepository.findAll().get(0).getS3Key());
+        assertEquals(1, s3DeleteTaskRepository.count());
+    }
+
+    @Test
+    public void testEnqueueRequiresSurroundingTransaction() {
+        assertThrows(IllegalTransactionStateException.class,
+            () -> s3DeleteQueue.enqueue("bucket", List.of("1/notx.png")));
+    }
+}
@@ -0,0 +1,116 @@
+package services;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.timgroup.statsd.StatsDClient;
+
+import config.InMemoryAmazonS3;
+
+public class S3ExistenceCacheTest {
+
+    private final InMemoryAmazonS3 s3 = new InMemoryAmazonS3();
+    private S3ExistenceCache cache;
+
+    @AfterEach
+    public void tearDown() {
+        cache.stop();
+    }
+
+    // Waits for the background check to record its answer
+    private void awaitCheck() throws InterruptedException {
+        for (int i = 0; i < 100 && cache.size() == 0; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testUnknownObjectIsNotReportedMissingWithoutSampling() {
+        cache = new S3ExistenceCache(s3, mock(StatsDClient.class), "bucket", 100, 60, 60, 0.0);
+
+        assertFalse(cache.isKnownMissing("1/gone.png"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSampledCheckFindsMissingObjectForLaterReads() throws InterruptedException {
+        cache = new S3ExistenceCache(s3, mock(StatsDClient.class), "bucket", 100, 60, 60, 1.0);
+
+        // The read that triggers the check is still answered without waiting for it
+        assertFalse(cache.isKnownMissing("1/gone.png"));
+        awaitCheck();
+
+        assertTrue(cache.isKnownMissing("1/gone.png"));
+    }
+
+    @Test
+    public void testSampledCheckConfirmsExistingObject() throws InterruptedException {
+        s3.putObject("bucket", "1/here.png", new ByteArrayInputStream(new byte[] {1}), new ObjectMetadata());
+        cache = new S3ExistenceCache(s3, mock(StatsDClient.class), "bucket", 100, 60, 60, 1.0);
+
+        assertFalse(cache.isKnownMissing("1/here.png"));
+        awaitCheck();
+
+        assertEquals(1, cache.size());
+        assertFalse(cache.isKnownMissing("1/here.png"));
+    }
+
+    @Test
+    public void testUploadOverridesMissingAndDeleteForgets() throws InterruptedException {
+        cache = new S3ExistenceCache(s3, mock(StatsDClient.class), "bucket", 100, 60, 60, 1.0);
+        cache.isKnownMissing("content/abc");
+        awaitCheck();
+        assertTrue(cache.isKnownMissing("content/abc"));
+
+        cache.markPresent("content/abc");
+        assertFalse(cache.isKnownMissing("content/abc"));
+
+        cache.invalidate("content/abc");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEntriesExpire() throws InterruptedException {
+        cache = new S3ExistenceCache(s3, mock(StatsDClient.class), "bucket", 100, 0, 0, 0.0);
+        cache.markPresent("1/a.png");
+        Thread.sleep(5);
+
+        assertFalse(cache.isKnownMissing("1/a.png"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testMissingEntriesExpireFirst() throws InterruptedException {
+        cache = new S3ExistenceCache(s3, mock(StatsDClient.class), "bucket", 100, 60, 0, 1.0);
+        cache.isKnownMissing("1/gone.png");
+        awaitCheck();
+        cache.markPresent("1/here.png");
+        Thread.sleep(5);
+
+        // The missing entry is gone and re-sampled; the present one is still served from the cache
+        assertFalse(cache.isKnownMissing("1/gone.png"));
+        assertFalse(cache.isKnownMissing("1/here.png"));
+    }
+
+    @Test
+    public void testConfirmMissingAsksS3() throws InterruptedException {
+        cache = new S3ExistenceCache(s3, mock(StatsDClient.class), "bucket", 100, 60, 60, 1.0);
+        cache.isKnownMissing("content/abc");
+        awaitCheck();
+        assertTrue(cache.isKnownMissing("content/abc"));
+        assertTrue(cache.confirmMissing("content/abc"));
+
+        // Appears after the sampled check, e.g. an upload on another instance
+        s3.putObject("bucket", "content/abc", new ByteArrayInputStream(new byte[] {1}), new ObjectMetadata());
+
+        assertFalse(cache.confirmMissing("content/abc"));
+        assertFalse(cache.isKnownMissing("content/abc"));
+    }
+}
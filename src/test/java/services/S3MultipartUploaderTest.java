@@ -0,0 +1,127 @@
+package services;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.timgroup.statsd.StatsDClient;
+
+import config.InMemoryAmazonS3;
+
+public class S3MultipartUploaderTest {
+
+    private static final int PART = S3MultipartUploader.MIN_PART_SIZE;
+
+    private InMemoryAmazonS3 s3;
+    private S3MultipartUploader uploader;
+
+    @BeforeEach
+    public void setUp() {
+        s3 = new InMemoryAmazonS3();
+        // Threshold = one part; 4 threads, 4 parts in flight, 2 retries per part
+        uploader = new S3MultipartUploader(s3, mock(StatsDClient.class), PART, PART, 4, 4, 2, false);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        uploader.stop();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(7).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testSmallFileUsesSinglePut() throws IOException {
+        byte[] data = randomBytes(1024);
+
+        assertEquals(1024, uploader.upload("bucket", "small", new ByteArrayInputStream(data), "image/png"));
+        assertArrayEquals(data, s3.getObjectBytes("bucket", "small"));
+        assertEquals(0, s3.getPartAttempts());
+    }
+
+    @Test
+    public void testLargeFileUploadsPartsInParallel() throws IOException {
+        byte[] data = randomBytes(PART * 6 + 123);
+        s3.setPartLatency(200);
+
+        long startTime = System.currentTimeMillis();
+        uploader.upload("bucket", "large", new ByteArrayInputStream(data), "image/png");
+        long duration = System.currentTimeMillis() - startTime;
+
+        assertArrayEquals(data, s3.getObjectBytes("bucket", "large"));
+        assertTrue(s3.getMaxPartsInFlight() > 1, "parts should overlap");
+        // 7 parts at 200ms each would take 1.4s one after another
+        assertTrue(duration < 1200, "took " + duration + "ms");
+    }
+
+    @Test
+    public void testSlowPartDoesNotSerializeOthers() throws IOException {
+        byte[] data = randomBytes(PART * 6);
+        s3.setPartLatency(100);
+        s3.setPartLatency(1, 1000);
+
+        long startTime = System.currentTimeMillis();
+        uploader.upload("bucket", "straggler", new ByteArrayInputStream(data), "image/jpeg");
+        long duration = System.currentTimeMillis() - startTime;
+
+        assertArrayEquals(data, s3.getObjectBytes("bucket", "straggler"));
+        // Bounded by the slowest part (1s), not the sum of all parts (1.5s)
+        assertTrue(duration < 1400, "took " + duration + "ms");
+    }
+
+    @Test
+    public void testFailedPartIsRetried() throws IOException {
+        byte[] data = randomBytes(PART * 3);
+        s3.failPart(2, 2);
+
+        uploader.upload("bucket", "retried", new ByteArrayInputStream(data), "image/png");
+
+        assertArrayEquals(data, s3.getObjectBytes("bucket", "retried"));
+        assertEquals(5, s3.getPartAttempts());
+    }
+
+    @Test
+    public void testUploadIsAbortedWhenPartKeepsFailing() {
+        byte[] data = randomBytes(PART * 3);
+        s3.failPart(2, 10);
+
+        assertThrows(AmazonS3Exception.class,
+            () -> uploader.upload("bucket", "failed", new ByteArrayInputStream(data), "image/png"));
+        assertEquals(1, s3.getAbortedUploads().size());
+        assertEquals(0, s3.getOpenUploads());
+        assertEquals(null, s3.getObjectBytes("bucket", "failed"));
+    }
+
+    @Test
+    public void testStreamFailureAbortsUpload() {
+        InputStream failing = new InputStream() {
+            private int served = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (served++ > PART * 2) {
+                    throw new IOException("client went away");
+                }
+                return 1;
+            }
+        };
+
+        assertThrows(IOException.class, () -> uploader.upload("bucket", "broken", failing, "image/png"));
+        assertEquals(1, s3.getAbortedUploads().size());
+        assertEquals(0, s3.getOpenUploads());
+    }
+}
@@ -0,0 +1,71 @@
+package services;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.timgroup.statsd.StatsDClient;
+
+import configs.AuthenticationCache;
+import data.EmailBloomFilter;
+import data.UserCache;
+import data.UserRepo;
+import dto.UserDTO;
+import models.User;
+
+public class UserManagementServiceTest {
+
+    private final UserRepo userRepo = mock(UserRepo.class);
+    private final PasswordHashingService passwordHashingService = mock(PasswordHashingService.class);
+    private final UserCache userCache = mock(UserCache.class);
+    private final EmailBloomFilter emailBloomFilter = mock(EmailBloomFilter.class);
+    private final UserManagementService service = new UserManagementService(userRepo, passwordHashingService,
+        mock(TransactionTemplate.class), mock(OutboxService.class), mock(StatsDClient.class),
+        mock(AuthenticationCache.class), userCache, emailBloomFilter);
+
+    private static UserDTO passwordChange() {
+        UserDTO dto = new UserDTO();
+        dto.setPassword("new-password");
+        return dto;
+    }
+
+    @Test
+    public void testDuplicateEmailIsRejectedBeforeHashing() {
+        when(emailBloomFilter.mightContain("a@example.com")).thenReturn(true);
+        when(userRepo.existsByEmail("a@example.com")).thenReturn(true);
+
+        assertThrows(RuntimeException.class, () -> service.createUser("a@example.com", "password", "A", "B"));
+        verify(passwordHashingService, never()).hash(anyString());
+    }
+
+    @Test
+    public void testDefinitelyNewEmailSkipsTheQuery() {
+        when(emailBloomFilter.mightContain("new@example.com")).thenReturn(false);
+
+        service.createUser("new@example.com", "password", "A", "B");
+
+        verify(userRepo, never()).existsByEmail(anyString());
+        verify(passwordHashingService).hash("password");
+    }
+
+    @Test
+    public void testUpdateOfMissingOrUnverifiedUserIsRejectedBeforeHashing() {
+        when(userCache.findByEmail("missing@example.com")).thenReturn(Optional.empty());
+        User unverified = new User();
+        unverified.setEmail("new@example.com");
+        when(userCache.findByEmail("new@example.com")).thenReturn(Optional.of(unverified));
+
+        assertThrows(RuntimeException.class, () -> service.updateUser(passwordChange(), "missing@example.com"));
+        assertThrows(RuntimeException.class, () -> service.updateUser(passwordChange(), "new@example.com"));
+        verify(passwordHashingService, never()).hash(anyString());
+        // A cached "unverified" is re-read once before rejecting
+        verify(userCache).invalidate("new@example.com");
+    }
+}